@@ -0,0 +1,52 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.internal.StreamHelper;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+class BenchmarkFixtures {
+
+    private static final String BASE64_CHARACTERS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /**
+     * The length of a base64 encoded 2048 bit RSA wrapped key, as sent by Visa Checkout in {@code encKey}.
+     */
+    static final int ENC_KEY_LENGTH = 344;
+
+    static String stringFromFixture(String filename) {
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(System.getProperty("benchmark.fixtures") + filename);
+            return StreamHelper.getString(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * @return a random base64 string of {@code length} characters, seeded with {@code length} so that runs are
+     * repeatable.
+     */
+    static String base64(int length) {
+        return base64(new Random(length), length);
+    }
+
+    private static String base64(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(BASE64_CHARACTERS.charAt(random.nextInt(BASE64_CHARACTERS.length())));
+        }
+
+        return builder.toString();
+    }
+}
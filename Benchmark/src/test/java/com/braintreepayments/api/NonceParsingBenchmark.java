@@ -0,0 +1,47 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.PaymentMethodNonce;
+import com.braintreepayments.api.models.VisaCheckoutNonce;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Parsing of the tokenization response into a {@link VisaCheckoutNonce}.
+ */
+@State(Scope.Benchmark)
+public class NonceParsingBenchmark {
+
+    private String mResponse;
+    private String mGraphQLResponse;
+
+    @Setup
+    public void setup() {
+        mResponse = BenchmarkFixtures.stringFromFixture("payment_methods/visa_checkout_response.json");
+        mGraphQLResponse = BenchmarkFixtures.stringFromFixture(
+                "payment_methods/visa_checkout_graphql_response.json");
+    }
+
+    @Benchmark
+    public VisaCheckoutNonce fromJson() throws JSONException {
+        return VisaCheckoutNonce.fromJson(mResponse);
+    }
+
+    /**
+     * The path taken by {@link TokenizationClient}, which looks the nonce type up before parsing.
+     */
+    @Benchmark
+    public List<PaymentMethodNonce> parsePaymentMethodNonces() throws JSONException {
+        return PaymentMethodNonce.parsePaymentMethodNonces(mResponse, VisaCheckoutNonce.TYPE);
+    }
+
+    @Benchmark
+    public VisaCheckoutNonce parseGraphQLResponse() throws JSONException {
+        return VisaCheckoutTokenizationClient.parseGraphQLResponse(mGraphQLResponse, "benchmarkCallId");
+    }
+}
@@ -0,0 +1,71 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.Configuration;
+import com.visa.checkout.Profile.ProfileBuilder;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Creation of the Braintree flavored {@link ProfileBuilder} from the {@code with_visa_checkout.json} configuration,
+ * as done by {@link VisaCheckout#createProfileBuilder(BraintreeFragment,
+ * com.braintreepayments.api.interfaces.BraintreeResponseListener)}. The {@link BraintreeFragment} is left out, so only
+ * the {@link VisaCheckoutProfileCache} lookup and the {@link VisaCheckoutProfileTemplate} copy are measured.
+ */
+@State(Scope.Benchmark)
+public class ProfileBuilderBenchmark {
+
+    private String mConfigurationJson;
+    private Configuration mConfiguration;
+    private Configuration[] mRefetchedConfigurations;
+    private VisaCheckoutProfileCache mProfileCache;
+    private int mRefetchedIndex;
+
+    @Setup
+    public void setup() throws JSONException {
+        mConfigurationJson = BenchmarkFixtures.stringFromFixture("configuration/with_visa_checkout.json");
+        mConfiguration = Configuration.fromJson(mConfigurationJson);
+        mRefetchedConfigurations = new Configuration[] {
+                Configuration.fromJson(mConfigurationJson),
+                Configuration.fromJson(mConfigurationJson)
+        };
+        mProfileCache = new VisaCheckoutProfileCache(VisaCheckout.DEFAULT_PROFILE_REGISTRY_SIZE);
+        mProfileCache.getOrCreate(mConfiguration);
+    }
+
+    /**
+     * The common case once the configuration was fetched, e.g. after {@link VisaCheckout#prewarm(BraintreeFragment)}.
+     */
+    @Benchmark
+    public ProfileBuilder createProfileBuilder() {
+        return mProfileCache.getOrCreate(mConfiguration).newProfileBuilder();
+    }
+
+    /**
+     * A refetched configuration with the same values, which is matched by its fingerprint.
+     */
+    @Benchmark
+    public ProfileBuilder createProfileBuilder_refetchedConfiguration() {
+        mRefetchedIndex ^= 1;
+        return mProfileCache.getOrCreate(mRefetchedConfigurations[mRefetchedIndex]).newProfileBuilder();
+    }
+
+    /**
+     * Resolving the profile from a configuration that was not seen before.
+     */
+    @Benchmark
+    public ProfileBuilder createProfileBuilder_uncached() {
+        return VisaCheckoutProfileTemplate.fromConfiguration(mConfiguration).newProfileBuilder();
+    }
+
+    /**
+     * Parsing of the configuration fixture itself, for comparison with the profile creation built on it.
+     */
+    @Benchmark
+    public Configuration parseConfiguration() throws JSONException {
+        return Configuration.fromJson(mConfigurationJson);
+    }
+}
@@ -0,0 +1,50 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serialization of the tokenization request body. {@code encPaymentDataLength} covers the range of encrypted
+ * payloads returned by Visa Checkout, from a single card without addresses to a full profile. The body is checked
+ * once before measuring, since this classpath uses the reference org.json, which does not keep the insertion order
+ * of Android's.
+ */
+@State(Scope.Benchmark)
+public class VisaCheckoutBuilderBenchmark {
+
+    @Param({ "2048", "8192", "32768" })
+    public int encPaymentDataLength;
+
+    private VisaCheckoutBuilder mVisaCheckoutBuilder;
+
+    @Setup
+    public void setup() {
+        mVisaCheckoutBuilder = new VisaCheckoutBuilder("benchmarkCallId",
+                BenchmarkFixtures.base64(BenchmarkFixtures.ENC_KEY_LENGTH),
+                BenchmarkFixtures.base64(encPaymentDataLength));
+        mVisaCheckoutBuilder.setSessionId("benchmarkSessionId");
+
+        try {
+            JSONObject body = new JSONObject(mVisaCheckoutBuilder.build());
+            if (!"benchmarkSessionId".equals(body.getJSONObject("_meta").getString("sessionId"))
+                    || body.getJSONObject("visaCheckoutCard").getString("encryptedPaymentData").length()
+                    != encPaymentDataLength) {
+                throw new IllegalStateException("Unexpected request body");
+            }
+        } catch (JSONException e) {
+            throw new IllegalStateException("Request body is not valid JSON", e);
+        }
+    }
+
+    @Benchmark
+    public String build() {
+        return mVisaCheckoutBuilder.build();
+    }
+}
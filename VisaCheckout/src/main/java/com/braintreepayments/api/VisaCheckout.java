@@ -1,26 +1,96 @@
 package com.braintreepayments.api;
 
-import com.braintreepayments.api.exceptions.ConfigurationException;
+import android.content.Context;
+import android.os.CancellationSignal;
+
+import com.braintreepayments.api.exceptions.UnexpectedException;
+import com.braintreepayments.api.exceptions.VisaCheckoutCircuitOpenException;
+import com.braintreepayments.api.exceptions.VisaCheckoutQueuedException;
+import com.braintreepayments.api.exceptions.VisaCheckoutUnsupportedCardBrandException;
+import com.braintreepayments.api.interfaces.BraintreeErrorListener;
 import com.braintreepayments.api.interfaces.BraintreeResponseListener;
 import com.braintreepayments.api.interfaces.ConfigurationListener;
 import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.interfaces.VisaCheckoutBatchListener;
+import com.braintreepayments.api.interfaces.VisaCheckoutConfigurationChangedListener;
+import com.braintreepayments.api.interfaces.VisaCheckoutMetricsListener;
+import com.braintreepayments.api.interfaces.VisaCheckoutSpanSink;
 import com.braintreepayments.api.models.Configuration;
 import com.braintreepayments.api.models.PaymentMethodNonce;
 import com.braintreepayments.api.models.VisaCheckoutBuilder;
-import com.braintreepayments.api.models.VisaCheckoutConfiguration;
-import com.visa.checkout.Environment;
+import com.braintreepayments.api.models.VisaCheckoutCircuitBreakerPolicy;
+import com.braintreepayments.api.models.VisaCheckoutLatencySnapshot;
+import com.braintreepayments.api.models.VisaCheckoutLazyNonce;
+import com.braintreepayments.api.models.VisaCheckoutNonce;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+import com.braintreepayments.api.models.VisaCheckoutRetryPolicy;
 import com.visa.checkout.Profile.DataLevel;
 import com.visa.checkout.Profile.ProfileBuilder;
-import com.visa.checkout.VisaCheckoutSdk;
 import com.visa.checkout.VisaPaymentSummary;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Used to create and tokenize Visa Checkout. For more information see the
  * <a href="https://developer.paypal.com/braintree/docs/guides/secure-remote-commerce/client-side/android/v3">documentation</a>
  */
 public class VisaCheckout {
+
+    /**
+     * The default maximum number of concurrent requests used by
+     * {@link #tokenize(BraintreeFragment, List, VisaCheckoutBatchListener)}.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+    /**
+     * The default interval after which buffered analytics events are sent, see
+     * {@link #setAnalyticsFlushInterval(long)}. Events are not buffered by default.
+     */
+    public static final long DEFAULT_ANALYTICS_FLUSH_INTERVAL_MILLIS = 0;
+
+    /**
+     * The default maximum number of payments kept in the offline queue, see {@link #setOfflineQueueEnabled(boolean)}.
+     */
+    public static final int DEFAULT_OFFLINE_QUEUE_MAX_SIZE = 8;
+
+    /**
+     * The default time after which a payment in the offline queue expires, see
+     * {@link #setOfflineQueueEnabled(boolean)}.
+     */
+    public static final long DEFAULT_OFFLINE_QUEUE_TTL_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * The default number of merchant accounts whose prepared profiles are kept, see {@link #prewarm(List)}.
+     */
+    public static final int DEFAULT_PROFILE_REGISTRY_SIZE = 8;
+
+    /**
+     * The default time after which a persisted configuration snapshot is no longer used, see
+     * {@link #setConfigurationSnapshotTtl(long)}. Snapshots are disabled by default.
+     */
+    public static final long DEFAULT_CONFIGURATION_SNAPSHOT_TTL_MILLIS = 0;
+
+    private static final String VISA_CHECKOUT_SDK_CLASS = "com.visa.checkout.VisaCheckoutSdk";
+
+    static volatile Boolean sVisaCheckoutSdkAvailable;
+    static final VisaCheckoutProfileCache sProfileCache =
+            new VisaCheckoutProfileCache(DEFAULT_PROFILE_REGISTRY_SIZE);
+    static final VisaCheckoutProfileRegistry sProfileRegistry =
+            new VisaCheckoutProfileRegistry(DEFAULT_PROFILE_REGISTRY_SIZE);
+    private static final VisaCheckoutInFlightRequests sInFlightRequests = new VisaCheckoutInFlightRequests();
+    static final VisaCheckoutNonceCache sNonceCache = new VisaCheckoutNonceCache();
+    static final VisaCheckoutBuilderPool sBuilderPool = new VisaCheckoutBuilderPool();
+    private static final AtomicBoolean sSdkCheckRunning = new AtomicBoolean();
+
+    private static volatile VisaCheckoutRetryPolicy sRetryPolicy;
+    private static volatile Executor sTokenizationExecutor;
+    private static volatile VisaCheckoutCircuitBreaker sCircuitBreaker;
+    static volatile VisaCheckoutConfigurationChangedListener sConfigurationChangedListener;
+
     /**
      * Creates a {@link ProfileBuilder} with the merchant API key, environment, and other properties to be used with
      * Visa Checkout.
@@ -48,64 +118,767 @@ public class VisaCheckout {
      */
     public static void createProfileBuilder(final BraintreeFragment fragment, final BraintreeResponseListener<ProfileBuilder>
             profileBuilderResponseListener) {
-        fragment.waitForConfiguration(new ConfigurationListener() {
+        VisaCheckoutSdkBridge.createProfileBuilder(fragment, null, profileBuilderResponseListener,
+                fragmentErrorListener(fragment));
+    }
+
+    /**
+     * Creates a {@link ProfileBuilder} like {@link #createProfileBuilder(BraintreeFragment, BraintreeResponseListener)}
+     * but fails with a {@link TimeoutException} posted to the {@link BraintreeFragment} if the configuration is not
+     * available within {@code timeoutMillis}.
+     *
+     * @param fragment - {@link BraintreeFragment}
+     * @param timeoutMillis the maximum time to wait for the {@link ProfileBuilder}.
+     * @param profileBuilderResponseListener {@link BraintreeResponseListener<ProfileBuilder>} - listens for the
+     * Braintree flavored {@link ProfileBuilder}.
+     * @return a {@link CancellationSignal}. Once canceled, neither the listener nor the {@link BraintreeFragment} are
+     * called.
+     */
+    public static CancellationSignal createProfileBuilder(final BraintreeFragment fragment, final long timeoutMillis,
+            BraintreeResponseListener<ProfileBuilder> profileBuilderResponseListener) {
+        VisaCheckoutCall call = new VisaCheckoutCall(timeoutMillis, new Runnable() {
             @Override
-            public void onConfigurationFetched(Configuration configuration) {
-                VisaCheckoutConfiguration visaCheckoutConfiguration = configuration.getVisaCheckout();
-                boolean enabledAndSdkAvailable = isVisaCheckoutSDKAvailable() && configuration
-                        .getVisaCheckout().isEnabled();
+            public void run() {
+                fragment.postCallback(new TimeoutException("Visa Checkout profile was not created within "
+                        + timeoutMillis + "ms."));
+            }
+        });
 
-                if (!enabledAndSdkAvailable) {
-                    fragment.postCallback(new ConfigurationException("Visa Checkout is not enabled."));
-                    return;
-                }
+        VisaCheckoutSdkBridge.createProfileBuilder(fragment, call, profileBuilderResponseListener,
+                fragmentErrorListener(fragment));
+        return call.getCancellationSignal();
+    }
 
-                String merchantApiKey = visaCheckoutConfiguration.getApiKey();
-                List<String> acceptedCardBrands = visaCheckoutConfiguration.getAcceptedCardBrands();
-                String environment = Environment.SANDBOX;
+    /**
+     * Creates a {@link ProfileBuilder} like {@link #createProfileBuilder(BraintreeFragment, BraintreeResponseListener)}
+     * and returns it as a {@link VisaCheckoutFuture}. Errors fail the future and are not posted to the
+     * {@link BraintreeFragment}.
+     *
+     * @param fragment - {@link BraintreeFragment}
+     * @return a {@link VisaCheckoutFuture} for the Braintree flavored {@link ProfileBuilder}.
+     */
+    public static VisaCheckoutFuture<ProfileBuilder> createProfileBuilderAsync(BraintreeFragment fragment) {
+        final VisaCheckoutFuture<ProfileBuilder> future = new VisaCheckoutFuture<>();
+        VisaCheckoutCall call = new VisaCheckoutCall(0, null);
+        future.setCancellationSignal(call.getCancellationSignal());
 
-                if ("production".equals(configuration.getEnvironment())) {
-                    environment = Environment.PRODUCTION;
+        VisaCheckoutSdkBridge.createProfileBuilder(fragment, call, new BraintreeResponseListener<ProfileBuilder>() {
+            @Override
+            public void onResponse(ProfileBuilder profileBuilder) {
+                future.complete(profileBuilder);
+            }
+        }, new BraintreeErrorListener() {
+            @Override
+            public void onError(Exception error) {
+                future.fail(error);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Creates a {@link ProfileBuilder} like {@link #createProfileBuilderAsync(BraintreeFragment)}, but completes the
+     * returned future on {@code executor} instead of the main thread, so that work chained with
+     * {@link VisaCheckoutFuture#then(VisaCheckoutFuture.AsyncFunction, Executor)} or
+     * {@link VisaCheckoutFuture#map(VisaCheckoutFuture.Function, Executor)} runs there.
+     *
+     * @param fragment - {@link BraintreeFragment}
+     * @param executor the {@link Executor} the future is completed on.
+     * @return a {@link VisaCheckoutFuture} for the Braintree flavored {@link ProfileBuilder}.
+     */
+    public static VisaCheckoutFuture<ProfileBuilder> createProfileBuilderAsync(BraintreeFragment fragment,
+            Executor executor) {
+        return completeOn(createProfileBuilderAsync(fragment), executor);
+    }
+
+    /**
+     * Fetches the configuration, checks that the Visa Checkout SDK is available and prepares the Braintree flavored
+     * {@link ProfileBuilder} ahead of time, so that a later call to
+     * {@link #createProfileBuilder(BraintreeFragment, BraintreeResponseListener)} can respond immediately. Call this
+     * as soon as a Visa Checkout button may be shown, e.g. when the cart screen is created.
+     *
+     * Errors are not posted to the {@link BraintreeFragment}, they are reported by
+     * {@link #createProfileBuilder(BraintreeFragment, BraintreeResponseListener)} instead.
+     *
+     * @param fragment - {@link BraintreeFragment}
+     */
+    public static void prewarm(BraintreeFragment fragment) {
+        prewarm(Collections.singletonList(fragment));
+    }
+
+    /**
+     * Prepares the Braintree flavored {@link ProfileBuilder}s of several merchant accounts like
+     * {@link #prewarm(BraintreeFragment)}. The configurations of all {@link BraintreeFragment}s are fetched at the
+     * same time. The prepared profiles of the most recently used merchant accounts and environments are kept, see
+     * {@link #setProfileRegistrySize(int)}, so that switching between them does not wait for a configuration. Call
+     * this when the merchant accounts of a session are known, e.g. when a marketplace screen is created.
+     *
+     * A prepared profile is only used before the configuration is fetched until it is older than the configuration
+     * snapshot TTL, see {@link #setConfigurationSnapshotTtl(long)}, or 15 minutes while snapshots are disabled. The
+     * configuration is then fetched in the background, and the {@link VisaCheckoutConfigurationChangedListener} is
+     * notified if it differs from the prepared profile.
+     *
+     * The Visa Checkout SDK check runs on the background thread that reads configuration snapshots, and is skipped
+     * if its result is known or an earlier call is still running it.
+     *
+     * @param fragments a {@link BraintreeFragment} for each merchant account.
+     */
+    public static void prewarm(List<BraintreeFragment> fragments) {
+        if (sVisaCheckoutSdkAvailable == null && sSdkCheckRunning.compareAndSet(false, true)) {
+            VisaCheckoutConfigurationSnapshot.getLoadExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        isVisaCheckoutSDKAvailable();
+                    } finally {
+                        sSdkCheckRunning.set(false);
+                    }
                 }
+            });
+        }
 
-                ProfileBuilder profileBuilder = new ProfileBuilder(merchantApiKey, environment);
-                profileBuilder.setCardBrands(acceptedCardBrands.toArray(new String[acceptedCardBrands.size()]));
-                profileBuilder.setDataLevel(DataLevel.FULL);
-                profileBuilder.setExternalClientId(visaCheckoutConfiguration.getExternalClientId());
+        for (final BraintreeFragment fragment : fragments) {
+            fragment.waitForConfiguration(new ConfigurationListener() {
+                @Override
+                public void onConfigurationFetched(Configuration configuration) {
+                    prepareProfile(fragment, configuration);
+                }
+            });
+        }
+    }
 
-                profileBuilderResponseListener.onResponse(profileBuilder);
-            }
-        });
+    static VisaCheckoutProfileTemplate prepareProfile(BraintreeFragment fragment,
+            Configuration configuration) {
+        boolean enabledAndSdkAvailable = isVisaCheckoutSDKAvailable() && configuration
+                .getVisaCheckout().isEnabled();
+
+        String registryKey = VisaCheckoutProfileRegistry.key(fragment.getAuthorization());
+        if (!enabledAndSdkAvailable) {
+            sProfileRegistry.remove(registryKey);
+            VisaCheckoutConfigurationSnapshot.remove(fragment.getApplicationContext(), registryKey);
+            return null;
+        }
+
+        VisaCheckoutProfileTemplate profileTemplate = sProfileCache.getOrCreate(configuration);
+        sProfileRegistry.put(registryKey, configuration, profileTemplate);
+        VisaCheckoutConfigurationSnapshot.save(fragment.getApplicationContext(), registryKey, configuration);
+        return profileTemplate;
     }
 
+    /**
+     * Checks whether the Visa Checkout SDK is on the classpath without initializing it, so that checking does not run
+     * any of the SDK's static initialization. Only {@link VisaCheckoutSdkBridge} calls into Visa Checkout SDK types,
+     * so the SDK is not loaded before a Visa Checkout flow starts.
+     */
     static boolean isVisaCheckoutSDKAvailable() {
+        Boolean sdkAvailable = sVisaCheckoutSdkAvailable;
+        if (sdkAvailable != null) {
+            return sdkAvailable;
+        }
+
         try {
-            Class.forName("com.visa.checkout.VisaCheckoutSdk");
-            return true;
+            Class.forName(VISA_CHECKOUT_SDK_CLASS, false, VisaCheckout.class.getClassLoader());
+            sdkAvailable = true;
         } catch (ClassNotFoundException e) {
-            return false;
+            sdkAvailable = false;
         }
+
+        sVisaCheckoutSdkAvailable = sdkAvailable;
+        return sdkAvailable;
     }
 
     /**
-     * Tokenizes the payment summary of the Visa Checkout flow.
+     * Tokenizes the payment summary of the Visa Checkout flow. If the same payment, identified by
+     * {@link VisaPaymentSummary#getCallId()}, is already being tokenized no new request is sent and the result of the
+     * pending request is posted instead. If the nonce cache is enabled and the same payment was tokenized recently,
+     * the cached nonce is posted, see {@link #setNonceCacheTtl(long)}.
+     *
      * @param fragment {@link BraintreeFragment}
      * @param visaPaymentSummary {@link VisaPaymentSummary} The Visa payment to tokenize.
      */
     public static void tokenize(final BraintreeFragment fragment, final VisaPaymentSummary visaPaymentSummary) {
-        TokenizationClient.tokenize(fragment, new VisaCheckoutBuilder(visaPaymentSummary),
-                new PaymentMethodNonceCallback() {
-                    @Override
-                    public void success(PaymentMethodNonce paymentMethodNonce) {
-                        fragment.postCallback(paymentMethodNonce);
-                        fragment.sendAnalyticsEvent("visacheckout.tokenize.succeeded");
-                    }
+        tokenize(fragment, visaPaymentSummary, new PaymentMethodNonceCallback() {
+            @Override
+            public void success(PaymentMethodNonce paymentMethodNonce) {
+                fragment.postCallback(paymentMethodNonce);
+            }
 
-                    @Override
-                    public void failure(Exception exception) {
-                        fragment.postCallback(exception);
-                        fragment.sendAnalyticsEvent("visacheckout.tokenize.failed");
-                    }
-                });
+            @Override
+            public void failure(Exception exception) {
+                fragment.postCallback(exception);
+            }
+        });
+    }
+
+    /**
+     * Tokenizes the payment summary of the Visa Checkout flow like
+     * {@link #tokenize(BraintreeFragment, VisaPaymentSummary)}, but fails with a {@link TimeoutException} posted to
+     * the {@link BraintreeFragment} if tokenization does not complete within {@code timeoutMillis}.
+     *
+     * When the deadline passes or the call is canceled, requests sent with a {@link VisaCheckoutRetryPolicy} are
+     * aborted. Other requests can not be aborted once sent, but their result is discarded.
+     *
+     * @param fragment {@link BraintreeFragment}
+     * @param visaPaymentSummary {@link VisaPaymentSummary} The Visa payment to tokenize.
+     * @param timeoutMillis the maximum time to wait for the nonce.
+     * @return a {@link CancellationSignal}. Once canceled, nothing is posted to the {@link BraintreeFragment}.
+     */
+    public static CancellationSignal tokenize(final BraintreeFragment fragment, VisaPaymentSummary visaPaymentSummary,
+            final long timeoutMillis) {
+        final VisaCheckoutCall call = new VisaCheckoutCall(timeoutMillis, new Runnable() {
+            @Override
+            public void run() {
+                fragment.postCallback(new TimeoutException("Visa Checkout tokenization did not complete within "
+                        + timeoutMillis + "ms."));
+            }
+        });
+
+        call.setUnderlyingWork(tokenize(fragment, visaPaymentSummary, new PaymentMethodNonceCallback() {
+            @Override
+            public void success(PaymentMethodNonce paymentMethodNonce) {
+                if (call.finish()) {
+                    fragment.postCallback(paymentMethodNonce);
+                }
+            }
+
+            @Override
+            public void failure(Exception exception) {
+                if (call.finish()) {
+                    fragment.postCallback(exception);
+                }
+            }
+        }));
+
+        return call.getCancellationSignal();
+    }
+
+    /**
+     * Tokenizes several payment summaries of the Visa Checkout flow, with at most
+     * {@link #DEFAULT_MAX_CONCURRENT_REQUESTS} requests in flight. Results are delivered to the
+     * {@link VisaCheckoutBatchListener} and are not posted to the {@link BraintreeFragment}'s listeners.
+     *
+     * @param fragment {@link BraintreeFragment}
+     * @param visaPaymentSummaries the {@link VisaPaymentSummary}s to tokenize.
+     * @param listener {@link VisaCheckoutBatchListener} - receives the results in the order of
+     * {@code visaPaymentSummaries}.
+     */
+    public static void tokenize(BraintreeFragment fragment, List<VisaPaymentSummary> visaPaymentSummaries,
+            VisaCheckoutBatchListener listener) {
+        tokenize(fragment, visaPaymentSummaries, DEFAULT_MAX_CONCURRENT_REQUESTS, listener);
+    }
+
+    /**
+     * Tokenizes several payment summaries of the Visa Checkout flow. Results are delivered to the
+     * {@link VisaCheckoutBatchListener} and are not posted to the {@link BraintreeFragment}'s listeners.
+     *
+     * @param fragment {@link BraintreeFragment}
+     * @param visaPaymentSummaries the {@link VisaPaymentSummary}s to tokenize.
+     * @param maxConcurrentRequests the maximum number of tokenization requests in flight at the same time.
+     * @param listener {@link VisaCheckoutBatchListener} - receives the results in the order of
+     * {@code visaPaymentSummaries}.
+     */
+    public static void tokenize(BraintreeFragment fragment, List<VisaPaymentSummary> visaPaymentSummaries,
+            int maxConcurrentRequests, VisaCheckoutBatchListener listener) {
+        new VisaCheckoutBatchTokenizer(fragment, visaPaymentSummaries, maxConcurrentRequests, listener).start();
+    }
+
+    /**
+     * Tokenizes the payment summary of the Visa Checkout flow like
+     * {@link #tokenize(BraintreeFragment, VisaPaymentSummary)} and returns the nonce as a {@link VisaCheckoutFuture}.
+     * The result is not posted to the {@link BraintreeFragment}'s listeners. Canceling the future cancels the request
+     * like the {@link CancellationSignal} of {@link #tokenize(BraintreeFragment, VisaPaymentSummary, long)}.
+     *
+     * @param fragment {@link BraintreeFragment}
+     * @param visaPaymentSummary {@link VisaPaymentSummary} The Visa payment to tokenize.
+     * @return a {@link VisaCheckoutFuture} for the {@link VisaCheckoutNonce}.
+     */
+    public static VisaCheckoutFuture<VisaCheckoutNonce> tokenizeAsync(BraintreeFragment fragment,
+            VisaPaymentSummary visaPaymentSummary) {
+        final VisaCheckoutFuture<VisaCheckoutNonce> future = new VisaCheckoutFuture<>();
+        future.setCancellationSignal(tokenize(fragment, visaPaymentSummary, new PaymentMethodNonceCallback() {
+            @Override
+            public void success(PaymentMethodNonce paymentMethodNonce) {
+                if (paymentMethodNonce instanceof VisaCheckoutNonce) {
+                    future.complete((VisaCheckoutNonce) paymentMethodNonce);
+                } else {
+                    future.fail(new UnexpectedException("Expected a Visa Checkout nonce but received "
+                            + paymentMethodNonce.getTypeLabel() + "."));
+                }
+            }
+
+            @Override
+            public void failure(Exception exception) {
+                future.fail(exception);
+            }
+        }));
+
+        return future;
+    }
+
+    /**
+     * Tokenizes the payment summary like {@link #tokenizeAsync(BraintreeFragment, VisaPaymentSummary)}, but completes
+     * the returned future on {@code executor} instead of the main thread. To also build the request and parse the
+     * response off the main thread, see {@link #setTokenizationExecutor(Executor)}.
+     *
+     * @param fragment {@link BraintreeFragment}
+     * @param visaPaymentSummary {@link VisaPaymentSummary} The Visa payment to tokenize.
+     * @param executor the {@link Executor} the future is completed on.
+     * @return a {@link VisaCheckoutFuture} for the {@link VisaCheckoutNonce}.
+     */
+    public static VisaCheckoutFuture<VisaCheckoutNonce> tokenizeAsync(BraintreeFragment fragment,
+            VisaPaymentSummary visaPaymentSummary, Executor executor) {
+        return completeOn(tokenizeAsync(fragment, visaPaymentSummary), executor);
+    }
+
+    /**
+     * Sets the {@link VisaCheckoutRetryPolicy} used when tokenizing Visa Checkout payments. By default failed
+     * requests are not retried. A retried payment may create more than one nonce, only the first is returned.
+     *
+     * @param retryPolicy the {@link VisaCheckoutRetryPolicy}, or {@code null} to disable retries.
+     */
+    public static void setRetryPolicy(VisaCheckoutRetryPolicy retryPolicy) {
+        sRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the {@link VisaCheckoutCircuitBreakerPolicy} used when tokenizing Visa Checkout payments. While the
+     * tokenization endpoint is degraded, tokenization then fails right away with a
+     * {@link VisaCheckoutCircuitOpenException} instead of waiting for the request to time out, e.g. so that a card
+     * form can be shown instead. Setting a policy starts over with a closed circuit. Disabled by default.
+     *
+     * @param circuitBreakerPolicy the {@link VisaCheckoutCircuitBreakerPolicy}, or {@code null} to always send
+     * requests.
+     */
+    public static void setCircuitBreakerPolicy(VisaCheckoutCircuitBreakerPolicy circuitBreakerPolicy) {
+        sCircuitBreaker = circuitBreakerPolicy == null ? null : new VisaCheckoutCircuitBreaker(circuitBreakerPolicy);
+    }
+
+    /**
+     * Sets the {@link Executor} that builds tokenization requests and parses their responses, so that neither runs on
+     * the main thread. Results are still delivered on the main thread. By default requests are sent with the
+     * {@link BraintreeFragment}'s http client, which parses responses on the main thread.
+     *
+     * Setting an executor also changes how requests are sent: GraphQL requests still go through the
+     * {@link BraintreeFragment}'s GraphQL client, but REST requests, including the fallback from GraphQL, are sent
+     * with the module's own http client instead of {@link TokenizationClient}. Those requests honor
+     * {@link #setCompression(boolean)} and can be aborted when their {@link CancellationSignal} is canceled. This is
+     * why parsing off the main thread is opt-in.
+     *
+     * @param executor the {@link Executor} for serialization and parsing, e.g. a single background thread, or
+     * {@code null} to use the {@link BraintreeFragment}'s http client.
+     */
+    public static void setTokenizationExecutor(Executor executor) {
+        sTokenizationExecutor = executor;
+    }
+
+    /**
+     * Sets whether tokenization responses are parsed into {@link VisaCheckoutLazyNonce}s, which decode the nonce and
+     * card details right away and the addresses, user data and BIN data only when they are first read. Applies to
+     * responses of the REST endpoint. Disabled by default.
+     *
+     * @param lazyNonceParsing {@code true} to parse nonces lazily.
+     */
+    public static void setLazyNonceParsing(boolean lazyNonceParsing) {
+        VisaCheckoutTokenizationClient.setLazyNonceParsing(lazyNonceParsing);
+    }
+
+    /**
+     * Sets whether tokenization requests are sent gzip encoded and accept gzip encoded responses. Compressed requests
+     * always use the REST endpoint. If the endpoint refuses a compressed request it is sent again uncompressed, and
+     * compression is not attempted again for that endpoint. Disabled by default.
+     *
+     * @param compression {@code true} to compress tokenization requests.
+     */
+    public static void setCompression(boolean compression) {
+        VisaCheckoutTokenizationClient.setCompression(compression);
+    }
+
+    /**
+     * Sets how long a tokenized Visa Checkout payment is cached by call id, so that tokenizing the same payment again
+     * posts the nonce that was already created instead of sending a request. Disabled by default.
+     *
+     * Nonces can only be used once. A cached nonce may already have been sent to your server and used, in which case
+     * using it again fails. Only enable the cache if a payment is tokenized again before its nonce is used, and call
+     * {@link #invalidateNonce(String)} once it is.
+     *
+     * @param ttlMillis the time to live of cached nonces in milliseconds, or {@code 0} to disable the cache.
+     */
+    public static void setNonceCacheTtl(long ttlMillis) {
+        sNonceCache.setTtl(ttlMillis);
+    }
+
+    /**
+     * Removes the cached nonce of a Visa Checkout payment, e.g. after the nonce was used on your server.
+     *
+     * @param callId the {@link VisaPaymentSummary#getCallId()} of the payment.
+     */
+    public static void invalidateNonce(String callId) {
+        sNonceCache.invalidate(callId);
+    }
+
+    /**
+     * Removes all cached Visa Checkout nonces.
+     */
+    public static void clearNonceCache() {
+        sNonceCache.clear();
+    }
+
+    /**
+     * Sets how long tokenization analytics events are buffered before they are sent. Buffered events are sent as one
+     * {@code visacheckout.batch} event holding the number of events per name, the error classes of failed
+     * tokenizations and their latency buckets, either after the interval or when the {@link BraintreeFragment}'s
+     * activity is stopped. Buffered events are kept in memory only and are lost if the process is killed before they
+     * are sent. A value of 0 sends every event immediately. Defaults to
+     * {@link #DEFAULT_ANALYTICS_FLUSH_INTERVAL_MILLIS}, so events are not buffered unless a positive interval is set,
+     * which keeps the individual {@code visacheckout.tokenize.*} events existing reports are built on.
+     *
+     * @param flushIntervalMillis the maximum time an event is buffered in milliseconds.
+     */
+    public static void setAnalyticsFlushInterval(long flushIntervalMillis) {
+        VisaCheckoutAnalytics.setFlushInterval(flushIntervalMillis);
+    }
+
+    /**
+     * Sends all buffered tokenization analytics events now.
+     */
+    public static void flushAnalytics() {
+        VisaCheckoutAnalytics.flushAll();
+    }
+
+    /**
+     * Enables the offline queue. When a payment can not be tokenized because Braintree could not be reached, its
+     * encrypted payment data is stored on the device and a {@link VisaCheckoutQueuedException} is posted instead of
+     * the connectivity error. The queued payments are tokenized again when connectivity returns, or when
+     * {@link #replayOfflineQueue(BraintreeFragment)} is called, and each resulting nonce is posted once to the
+     * {@link BraintreeFragment}. Tokenizing a queued payment again removes it from the queue.
+     *
+     * Entries are encrypted with a key held in the Android Keystore. On devices below API 23 nothing is queued.
+     * Disabled by default. Disabling the queue does not remove payments that are already queued, see
+     * {@link #clearOfflineQueue(Context)}.
+     *
+     * @param enabled {@code true} to queue payments that fail with a connectivity error.
+     */
+    public static void setOfflineQueueEnabled(boolean enabled) {
+        VisaCheckoutOfflineQueue.setEnabled(enabled);
+    }
+
+    /**
+     * Sets how many payments the offline queue keeps and how long they are kept. When the queue is full the oldest
+     * payment is dropped. Defaults to {@link #DEFAULT_OFFLINE_QUEUE_MAX_SIZE} and
+     * {@link #DEFAULT_OFFLINE_QUEUE_TTL_MILLIS}.
+     *
+     * @param maxSize the maximum number of queued payments.
+     * @param ttlMillis the time after which a queued payment expires in milliseconds.
+     */
+    public static void setOfflineQueueLimits(int maxSize, long ttlMillis) {
+        VisaCheckoutOfflineQueue.setLimits(maxSize, ttlMillis);
+    }
+
+    /**
+     * Tokenizes the payments in the offline queue now. Nonces and errors are posted to {@code fragment}.
+     *
+     * @param fragment {@link BraintreeFragment}
+     */
+    public static void replayOfflineQueue(BraintreeFragment fragment) {
+        VisaCheckoutOfflineQueue.get(fragment.getApplicationContext()).replay(fragment);
+    }
+
+    /**
+     * Removes all payments from the offline queue, e.g. when the customer signs out.
+     *
+     * @param context {@link Context}
+     */
+    public static void clearOfflineQueue(Context context) {
+        VisaCheckoutOfflineQueue.get(context).clear();
+    }
+
+    /**
+     * Sets the number of merchant accounts and environments whose prepared profiles are kept, see
+     * {@link #prewarm(List)}. Once more are prepared, the least recently used ones are dropped. Defaults to
+     * {@link #DEFAULT_PROFILE_REGISTRY_SIZE}.
+     *
+     * @param maxSize the maximum number of prepared profiles.
+     */
+    public static void setProfileRegistrySize(int maxSize) {
+        sProfileRegistry.setMaxSize(maxSize);
+        sProfileCache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Drops the prepared profiles of all merchant accounts.
+     */
+    public static void clearProfileRegistry() {
+        sProfileRegistry.clear();
+    }
+
+    /**
+     * Sets how long the Visa Checkout values of a fetched configuration are persisted. Until then, on a cold start
+     * {@link #createProfileBuilder(BraintreeFragment, BraintreeResponseListener)} responds right away with a
+     * {@link ProfileBuilder} created from the persisted values, and the configuration is fetched in the background.
+     * If it turns out different, the {@link VisaCheckoutConfigurationChangedListener} is notified, see
+     * {@link #setConfigurationChangedListener(VisaCheckoutConfigurationChangedListener)}. Snapshots are kept per
+     * merchant account and environment, and are only rewritten when their values change or half of the TTL has
+     * passed. Defaults to {@link #DEFAULT_CONFIGURATION_SNAPSHOT_TTL_MILLIS}, so snapshots are disabled unless a
+     * positive TTL is set.
+     *
+     * @param ttlMillis the time after which a snapshot is no longer used, or {@code 0} to always wait for the
+     * configuration.
+     */
+    public static void setConfigurationSnapshotTtl(long ttlMillis) {
+        VisaCheckoutConfigurationSnapshot.setTtl(ttlMillis);
+    }
+
+    /**
+     * Sets a {@link VisaCheckoutConfigurationChangedListener} that is notified when a {@link ProfileBuilder} was
+     * created from a persisted configuration snapshot that turned out to be outdated.
+     *
+     * @param listener the {@link VisaCheckoutConfigurationChangedListener}, or {@code null} to remove it.
+     */
+    public static void setConfigurationChangedListener(VisaCheckoutConfigurationChangedListener listener) {
+        sConfigurationChangedListener = listener;
+    }
+
+    /**
+     * Deletes the persisted configuration snapshots of all merchant accounts.
+     *
+     * @param context {@link Context}
+     */
+    public static void clearConfigurationSnapshots(Context context) {
+        VisaCheckoutConfigurationSnapshot.clear(context);
+    }
+
+    /**
+     * Sets whether Visa Checkout tokenizations are traced. Each tokenization then gets a trace whose id is derived
+     * from the Visa Checkout call id, so it is the same for every attempt to tokenize a payment. The trace is sent
+     * to Braintree in a W3C {@code traceparent} header. When analytics events are buffered, see
+     * {@link #setAnalyticsFlushInterval(long)}, the trace ids are listed in the batched event, so that analytics can
+     * be correlated with traces without putting per payment ids into event names.
+     * <p>
+     * Enabling tracing changes how payments are tokenized: the header can only be sent with the module's own http
+     * client, so traced requests are always sent with it to the REST endpoint, instead of the
+     * {@link BraintreeFragment}'s http clients and the GraphQL API. Finished spans are passed to the
+     * {@link VisaCheckoutSpanSink}, see {@link #setSpanSink(VisaCheckoutSpanSink)}. Disabled by default.
+     *
+     * @param tracingEnabled {@code true} to trace tokenizations.
+     */
+    public static void setTracingEnabled(boolean tracingEnabled) {
+        VisaCheckoutTracing.setEnabled(tracingEnabled);
+    }
+
+    /**
+     * Sets a {@link VisaCheckoutSpanSink} that receives the spans of traced tokenizations, see
+     * {@link #setTracingEnabled(boolean)}.
+     *
+     * @param spanSink the {@link VisaCheckoutSpanSink}, or {@code null} to remove it.
+     */
+    public static void setSpanSink(VisaCheckoutSpanSink spanSink) {
+        VisaCheckoutTracing.setSink(spanSink);
+    }
+
+    /**
+     * Sets a {@link VisaCheckoutMetricsListener} that receives the duration of each {@link VisaCheckoutPhase} of
+     * profile creation and tokenization. Durations are also recorded in latency histograms, see
+     * {@link #getLatencySnapshot(VisaCheckoutPhase)}, whether a listener is set or not.
+     *
+     * @param listener the {@link VisaCheckoutMetricsListener}, or {@code null} to remove it.
+     */
+    public static void setMetricsListener(VisaCheckoutMetricsListener listener) {
+        VisaCheckoutMetrics.setListener(listener);
+    }
+
+    /**
+     * @param phase the {@link VisaCheckoutPhase}.
+     * @return the count and p50, p95 and p99 latencies of {@code phase} since the app started or since
+     * {@link #resetLatencyHistograms()} was called.
+     */
+    public static VisaCheckoutLatencySnapshot getLatencySnapshot(VisaCheckoutPhase phase) {
+        return VisaCheckoutMetrics.snapshot(phase);
+    }
+
+    /**
+     * Clears the latency histograms of all {@link VisaCheckoutPhase}s.
+     */
+    public static void resetLatencyHistograms() {
+        VisaCheckoutMetrics.reset();
+    }
+
+    /**
+     * @return a future completed on {@code executor} with the outcome of {@code future}. Canceling it cancels
+     * {@code future}, which has no other dependents.
+     */
+    private static <T> VisaCheckoutFuture<T> completeOn(VisaCheckoutFuture<T> future, Executor executor) {
+        return future.map(new VisaCheckoutFuture.Function<T, T>() {
+            @Override
+            public T apply(T result) {
+                return result;
+            }
+        }, executor);
+    }
+
+    private static BraintreeErrorListener fragmentErrorListener(final BraintreeFragment fragment) {
+        return new BraintreeErrorListener() {
+            @Override
+            public void onError(Exception error) {
+                fragment.postCallback(error);
+            }
+        };
+    }
+
+    /**
+     * @return a {@link CancellationSignal} that detaches {@code nonceCallback} and releases the request once no other
+     * caller is waiting for it.
+     */
+    static CancellationSignal tokenize(final BraintreeFragment fragment, VisaPaymentSummary visaPaymentSummary,
+            final PaymentMethodNonceCallback nonceCallback) {
+        String callId = VisaCheckoutSdkBridge.getCallId(visaPaymentSummary);
+        VisaCheckoutOfflineQueue.claim(fragment, callId);
+        return tokenize(fragment, callId, visaPaymentSummary, null, nonceCallback);
+    }
+
+    /**
+     * Tokenizes a payment restored from the offline queue like
+     * {@link #tokenize(BraintreeFragment, VisaPaymentSummary, PaymentMethodNonceCallback)}. Payments that fail are not
+     * queued again.
+     */
+    static CancellationSignal tokenize(BraintreeFragment fragment, String callId,
+            VisaCheckoutBuilder visaCheckoutBuilder, PaymentMethodNonceCallback nonceCallback) {
+        return tokenize(fragment, callId, null, visaCheckoutBuilder, nonceCallback);
+    }
+
+    private static CancellationSignal tokenize(final BraintreeFragment fragment, final String callId,
+            VisaPaymentSummary visaPaymentSummary, VisaCheckoutBuilder visaCheckoutBuilder,
+            final PaymentMethodNonceCallback nonceCallback) {
+        PaymentMethodNonce cachedPaymentMethodNonce = sNonceCache.get(callId);
+        if (cachedPaymentMethodNonce != null) {
+            nonceCallback.success(cachedPaymentMethodNonce);
+            VisaCheckoutAnalytics.send(fragment, "visacheckout.tokenize.cached");
+            return new CancellationSignal();
+        }
+
+        final PaymentMethodNonceCallback callback = sInFlightRequests.join(callId, nonceCallback);
+        if (callback != null) {
+            CancellationSignal request = sendTokenizeRequest(fragment, visaPaymentSummary, visaCheckoutBuilder, callId,
+                    callback);
+            if (callId == null) {
+                return request;
+            }
+
+            sInFlightRequests.setRequest(callId, request);
+        }
+
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                sInFlightRequests.leave(callId, nonceCallback);
+            }
+        });
+
+        return cancellationSignal;
+    }
+
+    private static CancellationSignal sendTokenizeRequest(final BraintreeFragment fragment,
+            final VisaPaymentSummary visaPaymentSummary, VisaCheckoutBuilder restoredBuilder, final String callId,
+            final PaymentMethodNonceCallback callback) {
+        final long startNanos = VisaCheckoutMetrics.start();
+        final VisaCheckoutTracing.Trace trace = VisaCheckoutTracing.start(callId);
+
+        // builders restored from the offline queue were not handed out by the pool and are not returned to it
+        final VisaCheckoutBuilder pooledBuilder = restoredBuilder != null ? null
+                : sBuilderPool.acquire(visaPaymentSummary);
+        final VisaCheckoutBuilder visaCheckoutBuilder = restoredBuilder != null ? restoredBuilder : pooledBuilder;
+        final Runnable releaseBuilder = releaseOnce(pooledBuilder);
+        PaymentMethodNonceCallback tokenizeCallback = new PaymentMethodNonceCallback() {
+            @Override
+            public void success(PaymentMethodNonce paymentMethodNonce) {
+                try {
+                    VisaCheckoutMetrics.record(VisaCheckoutPhase.TOKENIZE, callId, startNanos, true);
+                    VisaCheckoutTracing.finish(trace, true);
+                    sNonceCache.put(callId, paymentMethodNonce);
+                    callback.success(paymentMethodNonce);
+                    VisaCheckoutAnalytics.sendOutcome(fragment, "visacheckout.tokenize.succeeded", null, startNanos,
+                            trace == null ? null : trace.getTraceId());
+                } finally {
+                    releaseBuilder.run();
+                }
+            }
+
+            @Override
+            public void failure(final Exception exception) {
+                try {
+                    VisaCheckoutMetrics.record(VisaCheckoutPhase.TOKENIZE, callId, startNanos, false);
+                    VisaCheckoutTracing.finish(trace, false);
+                    VisaCheckoutOfflineQueue.offer(fragment, visaPaymentSummary, exception,
+                            new BraintreeResponseListener<Boolean>() {
+                                @Override
+                                public void onResponse(Boolean queued) {
+                                    if (queued) {
+                                        callback.failure(new VisaCheckoutQueuedException(callId, exception));
+                                    } else {
+                                        callback.failure(exception);
+                                    }
+
+                                    VisaCheckoutAnalytics.sendOutcome(fragment, "visacheckout.tokenize.failed",
+                                            exception, startNanos, trace == null ? null : trace.getTraceId());
+                                }
+                            });
+                } finally {
+                    releaseBuilder.run();
+                }
+            }
+        };
+
+        String cardBrand = VisaCheckoutSdkBridge.getCardBrand(visaPaymentSummary);
+        if (!acceptsCardBrand(fragment.getConfiguration(), cardBrand)) {
+            tokenizeCallback.failure(new VisaCheckoutUnsupportedCardBrandException(cardBrand));
+            return new CancellationSignal();
+        }
+
+        VisaCheckoutCircuitBreaker circuitBreaker = sCircuitBreaker;
+        if (circuitBreaker != null) {
+            PaymentMethodNonceCallback circuitBreakerCallback = circuitBreaker.acquire(tokenizeCallback);
+            if (circuitBreakerCallback == null) {
+                tokenizeCallback.failure(new VisaCheckoutCircuitOpenException(circuitBreaker.getRetryAfterMillis()));
+                return new CancellationSignal();
+            }
+
+            tokenizeCallback = circuitBreakerCallback;
+        }
+
+        // canceled requests, including those past their deadline, never call back and return the builder once the
+        // request stopped reading it
+        return VisaCheckoutTokenizationClient.tokenize(fragment, visaCheckoutBuilder, sRetryPolicy,
+                sTokenizationExecutor, tokenizeCallback, releaseBuilder);
+    }
+
+    /**
+     * @return a {@link Runnable} that returns {@code pooledBuilder} to the pool the first time it is run, so that a
+     * builder is not handed out twice when several completion paths of a request finish.
+     */
+    private static Runnable releaseOnce(final VisaCheckoutBuilder pooledBuilder) {
+        final AtomicBoolean released = new AtomicBoolean();
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (pooledBuilder != null && released.compareAndSet(false, true)) {
+                    sBuilderPool.release(pooledBuilder);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return {@code false} only when {@code configuration} is known and does not accept {@code cardBrand}, so that
+     * unknown brands and unconfigured fragments are left for the gateway to decide. Reads the mask precomputed for
+     * the configuration's fingerprint rather than the profile cache, so that tokenizing does not create or evict
+     * prepared profiles.
+     */
+    private static boolean acceptsCardBrand(Configuration configuration, String cardBrand) {
+        if (configuration == null || cardBrand == null || !configuration.getVisaCheckout().isEnabled()) {
+            return true;
+        }
+
+        return VisaCheckoutCardBrands.accepts(VisaCheckoutCardBrands.mask(configuration), cardBrand);
     }
 }
@@ -0,0 +1,247 @@
+package com.braintreepayments.api;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers the analytics events of a {@link BraintreeFragment} and sends them as a single {@link #BATCH_EVENT}, either
+ * after the flush interval or when the fragment's activity is stopped, instead of writing each event while the
+ * payment request is in flight. The batched event carries the number of events per name, the error classes of
+ * failed tokenizations and their latencies in {@link #LATENCY_BUCKETS_MILLIS} buckets, so no outcome is lost. It also
+ * lists the trace ids of up to {@link #MAX_TRACE_IDS} traced tokenizations, see {@link VisaCheckoutTracing}, which
+ * keeps them out of the event names.
+ * <p>
+ * Buffering is opt-in: buffered events are kept in memory only and are lost if the process dies before they are
+ * sent, and reports built on the individual tokenization events have to read the batched event instead.
+ */
+class VisaCheckoutAnalytics implements Application.ActivityLifecycleCallbacks {
+
+    static final String BATCH_EVENT = "visacheckout.batch";
+    static final long[] LATENCY_BUCKETS_MILLIS = { 100, 250, 500, 1000, 2500, 5000 };
+    static final int MAX_TRACE_IDS = 32;
+
+    private static final Map<BraintreeFragment, VisaCheckoutAnalytics> sBuffers = new WeakHashMap<>();
+    private static volatile long sFlushIntervalMillis = VisaCheckout.DEFAULT_ANALYTICS_FLUSH_INTERVAL_MILLIS;
+
+    private final WeakReference<BraintreeFragment> mFragment;
+    private final Handler mHandler;
+    private final Map<String, Integer> mEventCounts = new LinkedHashMap<>();
+    private final Map<String, Integer> mErrorCounts = new LinkedHashMap<>();
+    private final Map<String, Integer> mLatencyCounts = new LinkedHashMap<>();
+    private final List<String> mTraceIds = new ArrayList<>();
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private Application mApplication;
+    private Activity mActivity;
+    private boolean mFlushScheduled;
+
+    private VisaCheckoutAnalytics(BraintreeFragment fragment) {
+        mFragment = new WeakReference<>(fragment);
+        mHandler = new Handler(Looper.getMainLooper());
+
+        Activity activity = fragment.getActivity();
+        if (activity != null && activity.getApplication() != null) {
+            mActivity = activity;
+            mApplication = activity.getApplication();
+            mApplication.registerActivityLifecycleCallbacks(this);
+        }
+    }
+
+    static void send(BraintreeFragment fragment, String eventName) {
+        if (sFlushIntervalMillis <= 0) {
+            fragment.sendAnalyticsEvent(eventName);
+            return;
+        }
+
+        buffer(fragment).add(eventName, null, -1, null);
+    }
+
+    /**
+     * Sends the outcome of a tokenization started at {@code startNanos}. When buffered, the class of {@code error},
+     * the latency of the tokenization and its trace id are added to the batched event as well.
+     *
+     * @param traceId the trace id of a traced tokenization, or {@code null}.
+     */
+    static void sendOutcome(BraintreeFragment fragment, String eventName, Exception error, long startNanos,
+            String traceId) {
+        if (sFlushIntervalMillis <= 0) {
+            fragment.sendAnalyticsEvent(eventName);
+            return;
+        }
+
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        buffer(fragment).add(eventName, error == null ? null : error.getClass().getSimpleName(), durationMillis,
+                traceId);
+    }
+
+    static String latencyBucket(long durationMillis) {
+        for (long upperBoundMillis : LATENCY_BUCKETS_MILLIS) {
+            if (durationMillis <= upperBoundMillis) {
+                return "le" + upperBoundMillis;
+            }
+        }
+
+        return "gt" + LATENCY_BUCKETS_MILLIS[LATENCY_BUCKETS_MILLIS.length - 1];
+    }
+
+    private static VisaCheckoutAnalytics buffer(BraintreeFragment fragment) {
+        synchronized (sBuffers) {
+            VisaCheckoutAnalytics analytics = sBuffers.get(fragment);
+            if (analytics == null) {
+                analytics = new VisaCheckoutAnalytics(fragment);
+                sBuffers.put(fragment, analytics);
+            }
+
+            return analytics;
+        }
+    }
+
+    static void setFlushInterval(long flushIntervalMillis) {
+        sFlushIntervalMillis = flushIntervalMillis;
+        if (flushIntervalMillis <= 0) {
+            flushAll();
+        }
+    }
+
+    static void flushAll() {
+        List<VisaCheckoutAnalytics> buffers;
+        synchronized (sBuffers) {
+            buffers = new ArrayList<>(sBuffers.values());
+        }
+
+        for (VisaCheckoutAnalytics analytics : buffers) {
+            analytics.flush();
+        }
+    }
+
+    private void add(String eventName, String errorClass, long durationMillis, String traceId) {
+        synchronized (this) {
+            increment(mEventCounts, eventName);
+            if (errorClass != null) {
+                increment(mErrorCounts, errorClass);
+            }
+
+            if (durationMillis >= 0) {
+                increment(mLatencyCounts, latencyBucket(durationMillis));
+            }
+
+            if (traceId != null && mTraceIds.size() < MAX_TRACE_IDS) {
+                mTraceIds.add(traceId);
+            }
+
+            if (mFlushScheduled) {
+                return;
+            }
+
+            mFlushScheduled = true;
+        }
+
+        mHandler.postDelayed(mFlushRunnable, sFlushIntervalMillis);
+    }
+
+    void flush() {
+        JSONObject batch = new JSONObject();
+        synchronized (this) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            mFlushScheduled = false;
+            if (mEventCounts.isEmpty()) {
+                return;
+            }
+
+            try {
+                putCounts(batch, "events", mEventCounts);
+                putCounts(batch, "errors", mErrorCounts);
+                putCounts(batch, "latency", mLatencyCounts);
+                if (!mTraceIds.isEmpty()) {
+                    batch.put("traces", new JSONArray(mTraceIds));
+                }
+            } catch (JSONException ignored) {}
+
+            mEventCounts.clear();
+            mErrorCounts.clear();
+            mLatencyCounts.clear();
+            mTraceIds.clear();
+        }
+
+        BraintreeFragment fragment = mFragment.get();
+        if (fragment != null) {
+            fragment.sendAnalyticsEvent(BATCH_EVENT + ":" + batch.toString());
+        }
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    private static void putCounts(JSONObject batch, String name, Map<String, Integer> counts) throws JSONException {
+        if (counts.isEmpty()) {
+            return;
+        }
+
+        JSONObject countsJson = new JSONObject();
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            countsJson.put(count.getKey(), count.getValue());
+        }
+
+        batch.put(name, countsJson);
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        if (activity == mActivity) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        if (activity != mActivity) {
+            return;
+        }
+
+        flush();
+        mApplication.unregisterActivityLifecycleCallbacks(this);
+        synchronized (sBuffers) {
+            BraintreeFragment fragment = mFragment.get();
+            if (fragment != null && sBuffers.get(fragment) == this) {
+                sBuffers.remove(fragment);
+            }
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+    @Override
+    public void onActivityStarted(Activity activity) {}
+
+    @Override
+    public void onActivityResumed(Activity activity) {}
+
+    @Override
+    public void onActivityPaused(Activity activity) {}
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+}
@@ -0,0 +1,125 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.interfaces.VisaCheckoutBatchListener;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+import com.braintreepayments.api.models.VisaCheckoutTokenizationResult;
+import com.visa.checkout.VisaPaymentSummary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tokenizes a list of {@link VisaPaymentSummary}s with at most {@code maxConcurrentRequests} requests in flight and
+ * reports the results in the order the summaries were given.
+ *
+ * The gateway has no endpoint that accepts several Visa Checkout payments, so each summary is tokenized with its own
+ * request.
+ */
+class VisaCheckoutBatchTokenizer {
+
+    private final BraintreeFragment mFragment;
+    private final List<VisaPaymentSummary> mVisaPaymentSummaries;
+    private final int mMaxConcurrentRequests;
+    private final VisaCheckoutBatchListener mListener;
+    private final VisaCheckoutTokenizationResult[] mResults;
+
+    private int mNextToStart;
+    private int mNextToDeliver;
+    private int mFreeSlots;
+    private boolean mDraining;
+
+    VisaCheckoutBatchTokenizer(BraintreeFragment fragment, List<VisaPaymentSummary> visaPaymentSummaries,
+            int maxConcurrentRequests, VisaCheckoutBatchListener listener) {
+        mFragment = fragment;
+        mVisaPaymentSummaries = new ArrayList<>(visaPaymentSummaries);
+        mMaxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        mListener = listener;
+        mResults = new VisaCheckoutTokenizationResult[mVisaPaymentSummaries.size()];
+    }
+
+    void start() {
+        if (mVisaPaymentSummaries.isEmpty()) {
+            mListener.onComplete(Collections.<VisaCheckoutTokenizationResult>emptyList());
+            return;
+        }
+
+        synchronized (this) {
+            mFreeSlots = mMaxConcurrentRequests;
+        }
+
+        drain();
+    }
+
+    private void tokenize(final int index) {
+        final VisaPaymentSummary visaPaymentSummary = mVisaPaymentSummaries.get(index);
+        VisaCheckout.tokenize(mFragment, visaPaymentSummary, new PaymentMethodNonceCallback() {
+            @Override
+            public void success(PaymentMethodNonce paymentMethodNonce) {
+                onResult(index, VisaCheckoutTokenizationResult.success(visaPaymentSummary, paymentMethodNonce));
+            }
+
+            @Override
+            public void failure(Exception exception) {
+                onResult(index, VisaCheckoutTokenizationResult.failure(visaPaymentSummary, exception));
+            }
+        });
+    }
+
+    private void onResult(int index, VisaCheckoutTokenizationResult result) {
+        synchronized (this) {
+            mResults[index] = result;
+            mFreeSlots++;
+        }
+
+        drain();
+    }
+
+    /**
+     * Delivers the results that are next in order and starts requests for free slots, one at a time and without
+     * holding the lock while the listener or {@link VisaCheckout#tokenize(BraintreeFragment, VisaPaymentSummary)}
+     * runs. Only one thread drains at a time. Results that arrive while it does, including ones delivered
+     * synchronously by a request it just started, are picked up by its loop instead of recursing.
+     */
+    private void drain() {
+        synchronized (this) {
+            if (mDraining) {
+                return;
+            }
+
+            mDraining = true;
+        }
+
+        while (true) {
+            int indexToDeliver = -1;
+            VisaCheckoutTokenizationResult resultToDeliver = null;
+            boolean complete = false;
+            int indexToStart = -1;
+            synchronized (this) {
+                if (mNextToDeliver < mResults.length && mResults[mNextToDeliver] != null) {
+                    indexToDeliver = mNextToDeliver;
+                    resultToDeliver = mResults[mNextToDeliver];
+                    mNextToDeliver++;
+                    complete = mNextToDeliver == mResults.length;
+                } else if (mFreeSlots > 0 && mNextToStart < mResults.length) {
+                    mFreeSlots--;
+                    indexToStart = mNextToStart++;
+                } else {
+                    mDraining = false;
+                    return;
+                }
+            }
+
+            if (indexToDeliver >= 0) {
+                mListener.onResult(indexToDeliver, resultToDeliver);
+                if (complete) {
+                    mListener.onComplete(Collections.unmodifiableList(Arrays.asList(mResults)));
+                }
+            } else {
+                tokenize(indexToStart);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+import com.visa.checkout.VisaPaymentSummary;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of {@link VisaCheckoutBuilder}s, so that back to back tokenizations reuse the same builders. Builders
+ * are scrubbed with {@link VisaCheckoutBuilder#reset(VisaPaymentSummary)} when they are returned to the pool, so no
+ * payment data is retained while they are idle. Reuse only saves creating the builder, every build still allocates
+ * the request body and the metadata added by {@link com.braintreepayments.api.models.PaymentMethodBuilder}.
+ */
+class VisaCheckoutBuilderPool {
+
+    static final int DEFAULT_MAX_SIZE = 4;
+
+    private final int mMaxSize;
+    private final ArrayDeque<VisaCheckoutBuilder> mBuilders;
+
+    VisaCheckoutBuilderPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    VisaCheckoutBuilderPool(int maxSize) {
+        mMaxSize = maxSize;
+        mBuilders = new ArrayDeque<>(maxSize);
+    }
+
+    VisaCheckoutBuilder acquire(VisaPaymentSummary visaPaymentSummary) {
+        VisaCheckoutBuilder visaCheckoutBuilder;
+        synchronized (this) {
+            visaCheckoutBuilder = mBuilders.pollFirst();
+        }
+
+        if (visaCheckoutBuilder == null) {
+            return new VisaCheckoutBuilder(visaPaymentSummary);
+        }
+
+        return visaCheckoutBuilder.reset(visaPaymentSummary);
+    }
+
+    /**
+     * Scrubs {@code visaCheckoutBuilder} and keeps it for reuse. It must not be used by the caller afterwards.
+     */
+    void release(VisaCheckoutBuilder visaCheckoutBuilder) {
+        visaCheckoutBuilder.reset(null);
+
+        synchronized (this) {
+            if (mBuilders.size() < mMaxSize) {
+                mBuilders.offerFirst(visaCheckoutBuilder);
+            }
+        }
+    }
+
+    synchronized int size() {
+        return mBuilders.size();
+    }
+
+    synchronized void clear() {
+        mBuilders.clear();
+    }
+}
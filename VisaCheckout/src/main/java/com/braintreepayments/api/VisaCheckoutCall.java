@@ -0,0 +1,100 @@
+package com.braintreepayments.api;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * A call into {@link VisaCheckout} that can be canceled by the caller or times out after a deadline. Only the first
+ * of completion, cancellation and timeout takes effect; the result of the call must only be delivered if
+ * {@link #finish()} returns {@code true}.
+ */
+class VisaCheckoutCall {
+
+    private final CancellationSignal mCancellationSignal = new CancellationSignal();
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    private boolean mFinished;
+    private boolean mReleased;
+    private CancellationSignal mUnderlyingWork;
+    private Runnable mTimeout;
+
+    /**
+     * @param timeoutMillis the deadline of the call, relative to now. A value of 0 or less means no deadline.
+     * @param onTimeout run on the main thread when the deadline passes before the call finished.
+     */
+    VisaCheckoutCall(long timeoutMillis, final Runnable onTimeout) {
+        mCancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                if (finish()) {
+                    release();
+                }
+            }
+        });
+
+        if (timeoutMillis > 0) {
+            mTimeout = new Runnable() {
+                @Override
+                public void run() {
+                    if (finish()) {
+                        release();
+                        onTimeout.run();
+                    }
+                }
+            };
+            mMainThreadHandler.postDelayed(mTimeout, timeoutMillis);
+        }
+    }
+
+    CancellationSignal getCancellationSignal() {
+        return mCancellationSignal;
+    }
+
+    /**
+     * Sets the {@link CancellationSignal} of the work done for this call, canceled when this call is canceled or
+     * times out.
+     */
+    void setUnderlyingWork(CancellationSignal underlyingWork) {
+        boolean released;
+        synchronized (this) {
+            mUnderlyingWork = underlyingWork;
+            released = mReleased;
+        }
+
+        if (released && underlyingWork != null) {
+            underlyingWork.cancel();
+        }
+    }
+
+    /**
+     * @return {@code true} if the call was not finished, canceled or timed out before.
+     */
+    boolean finish() {
+        synchronized (this) {
+            if (mFinished) {
+                return false;
+            }
+
+            mFinished = true;
+        }
+
+        if (mTimeout != null) {
+            mMainThreadHandler.removeCallbacks(mTimeout);
+        }
+
+        return true;
+    }
+
+    private void release() {
+        CancellationSignal underlyingWork;
+        synchronized (this) {
+            mReleased = true;
+            underlyingWork = mUnderlyingWork;
+        }
+
+        if (underlyingWork != null) {
+            underlyingWork.cancel();
+        }
+    }
+}
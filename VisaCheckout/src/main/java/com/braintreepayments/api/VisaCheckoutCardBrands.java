@@ -0,0 +1,104 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.Configuration;
+import com.visa.checkout.Profile.CardBrand;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps Braintree {@code supportedCardTypes} and Visa Checkout {@link CardBrand}s to bits of a mask, so that a card
+ * brand can be checked against the brands a merchant accepts regardless of which naming either side uses.
+ */
+class VisaCheckoutCardBrands {
+
+    private static final String[] CARD_BRANDS = { CardBrand.VISA, CardBrand.MASTERCARD, CardBrand.AMEX,
+            CardBrand.DISCOVER, CardBrand.ELO, CardBrand.ELECTRON };
+    private static final Map<String, Integer> BITS = new HashMap<>();
+
+    private static Configuration sMaskConfiguration;
+    private static String sMaskFingerprint;
+    private static int sMask;
+
+    static {
+        for (int i = 0; i < CARD_BRANDS.length; i++) {
+            BITS.put(CARD_BRANDS[i], 1 << i);
+            BITS.put(CARD_BRANDS[i].toLowerCase(Locale.US), 1 << i);
+        }
+
+        // Braintree card type names that differ from the Visa Checkout constants
+        BITS.put("american express", BITS.get(CardBrand.AMEX));
+        BITS.put("visa electron", BITS.get(CardBrand.ELECTRON));
+    }
+
+    private VisaCheckoutCardBrands() {}
+
+    /**
+     * @return the bit of a {@link CardBrand} or Braintree card type, or 0 if it is not known.
+     */
+    static int bit(String cardBrand) {
+        if (cardBrand == null) {
+            return 0;
+        }
+
+        Integer bit = BITS.get(cardBrand);
+        if (bit == null) {
+            bit = BITS.get(cardBrand.toLowerCase(Locale.US));
+        }
+
+        return bit == null ? 0 : bit;
+    }
+
+    /**
+     * @return the mask of the card brands {@code configuration} accepts. The mask is computed once per configuration
+     * fingerprint, see {@link VisaCheckoutProfileCache#fingerprint(Configuration)}, so a refetched
+     * {@link Configuration} with the same values reuses it.
+     */
+    static synchronized int mask(Configuration configuration) {
+        if (configuration != sMaskConfiguration) {
+            String fingerprint = VisaCheckoutProfileCache.fingerprint(configuration);
+            if (!fingerprint.equals(sMaskFingerprint)) {
+                sMask = mask(configuration.getVisaCheckout().getAcceptedCardBrands());
+                sMaskFingerprint = fingerprint;
+            }
+
+            sMaskConfiguration = configuration;
+        }
+
+        return sMask;
+    }
+
+    static int mask(List<String> cardBrands) {
+        int mask = 0;
+        for (String cardBrand : cardBrands) {
+            mask |= bit(cardBrand);
+        }
+
+        return mask;
+    }
+
+    /**
+     * @return the {@link CardBrand} constants for {@code cardBrands}, in the same order. Unknown card brands are
+     * passed through unchanged.
+     */
+    static String[] toCardBrands(List<String> cardBrands) {
+        String[] visaCardBrands = new String[cardBrands.size()];
+        for (int i = 0; i < visaCardBrands.length; i++) {
+            int bit = bit(cardBrands.get(i));
+            visaCardBrands[i] = bit == 0 ? cardBrands.get(i) : CARD_BRANDS[Integer.numberOfTrailingZeros(bit)];
+        }
+
+        return visaCardBrands;
+    }
+
+    /**
+     * @return {@code false} only if {@code cardBrand} is known and not part of {@code mask}. Unknown card brands,
+     * and any card brand when the accepted brands are unknown, are left for the gateway to decide.
+     */
+    static boolean accepts(int mask, String cardBrand) {
+        int bit = bit(cardBrand);
+        return mask == 0 || bit == 0 || (mask & bit) != 0;
+    }
+}
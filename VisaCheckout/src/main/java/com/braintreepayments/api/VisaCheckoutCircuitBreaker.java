@@ -0,0 +1,205 @@
+package com.braintreepayments.api;
+
+import android.os.SystemClock;
+
+import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+import com.braintreepayments.api.models.VisaCheckoutCircuitBreakerPolicy;
+
+/**
+ * Stops tokenization requests to a degraded endpoint according to a {@link VisaCheckoutCircuitBreakerPolicy}.
+ *
+ * While closed, the outcomes of requests are counted in a rolling window made of {@link #BUCKETS} time buckets.
+ * Once the window holds enough requests and the failure rate or slow request rate reaches its threshold, the circuit
+ * opens and requests are refused. After the open duration the circuit is half open: a limited number of probe
+ * requests are let through, and the circuit closes if one succeeds or opens again if one fails. A probe that never
+ * completes, e.g. because it was cancelled, is given up after another open duration.
+ */
+class VisaCheckoutCircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    static final int BUCKETS = 10;
+
+    private final VisaCheckoutCircuitBreakerPolicy mPolicy;
+    private final long[] mBucketEpochs = new long[BUCKETS];
+    private final int[] mRequests = new int[BUCKETS];
+    private final int[] mFailures = new int[BUCKETS];
+    private final int[] mSlowRequests = new int[BUCKETS];
+
+    private State mState = State.CLOSED;
+    private long mOpenedAt;
+    private long mLastProbeAt;
+    private int mProbesInFlight;
+    private int mGeneration;
+
+    VisaCheckoutCircuitBreaker(VisaCheckoutCircuitBreakerPolicy policy) {
+        mPolicy = policy;
+        resetWindow();
+    }
+
+    /**
+     * @return a callback that records the outcome of the request before notifying {@code callback}, or {@code null}
+     * if the circuit is open and the request must not be sent.
+     */
+    PaymentMethodNonceCallback acquire(final PaymentMethodNonceCallback callback) {
+        final long startedAt = now();
+        final int generation = tryAcquire(startedAt);
+        if (generation < 0) {
+            return null;
+        }
+
+        return new PaymentMethodNonceCallback() {
+            @Override
+            public void success(PaymentMethodNonce paymentMethodNonce) {
+                long now = now();
+                record(generation, true, now - startedAt, now);
+                callback.success(paymentMethodNonce);
+            }
+
+            @Override
+            public void failure(Exception exception) {
+                long now = now();
+                record(generation, !isFailure(exception), now - startedAt, now);
+                callback.failure(exception);
+            }
+        };
+    }
+
+    /**
+     * @return the generation of the circuit the request belongs to, or {@code -1} if the request must not be sent.
+     */
+    synchronized int tryAcquire(long now) {
+        if (mState == State.OPEN) {
+            if (now - mOpenedAt < mPolicy.getOpenDurationMillis()) {
+                return -1;
+            }
+
+            transition(State.HALF_OPEN, now);
+        }
+
+        if (mState == State.HALF_OPEN) {
+            if (mProbesInFlight >= mPolicy.getHalfOpenProbes()) {
+                if (now - mLastProbeAt < mPolicy.getOpenDurationMillis()) {
+                    return -1;
+                }
+
+                mProbesInFlight = 0;
+            }
+
+            mProbesInFlight++;
+            mLastProbeAt = now;
+        }
+
+        return mGeneration;
+    }
+
+    /**
+     * Records the outcome of a request. Outcomes of requests sent before the circuit last changed state are ignored.
+     */
+    synchronized void record(int generation, boolean success, long durationMillis, long now) {
+        if (generation != mGeneration) {
+            return;
+        }
+
+        boolean slow = durationMillis >= mPolicy.getSlowRequestMillis();
+        if (mState == State.HALF_OPEN) {
+            transition(success && !slow ? State.CLOSED : State.OPEN, now);
+            return;
+        }
+
+        long epoch = now / bucketMillis();
+        int bucket = (int) (epoch % BUCKETS);
+        if (mBucketEpochs[bucket] != epoch) {
+            mBucketEpochs[bucket] = epoch;
+            mRequests[bucket] = 0;
+            mFailures[bucket] = 0;
+            mSlowRequests[bucket] = 0;
+        }
+
+        mRequests[bucket]++;
+        if (!success) {
+            mFailures[bucket]++;
+        }
+        if (slow) {
+            mSlowRequests[bucket]++;
+        }
+
+        int requests = 0;
+        int failures = 0;
+        int slowRequests = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (mBucketEpochs[i] > epoch - BUCKETS) {
+                requests += mRequests[i];
+                failures += mFailures[i];
+                slowRequests += mSlowRequests[i];
+            }
+        }
+
+        if (requests >= mPolicy.getMinimumRequests()
+                && ((failures > 0 && failures >= mPolicy.getFailureRateThreshold() * requests)
+                || (slowRequests > 0 && slowRequests >= mPolicy.getSlowRequestRateThreshold() * requests))) {
+            transition(State.OPEN, now);
+        }
+    }
+
+    synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * @return the time until probe requests are let through, or {@code 0} if the circuit is not open.
+     */
+    long getRetryAfterMillis() {
+        return getRetryAfterMillis(now());
+    }
+
+    synchronized long getRetryAfterMillis(long now) {
+        if (mState != State.OPEN) {
+            return 0;
+        }
+
+        return Math.max(0, mOpenedAt + mPolicy.getOpenDurationMillis() - now);
+    }
+
+    /**
+     * Network errors, timeouts, 5xx responses and rate limiting mean the endpoint is degraded, the same errors that
+     * {@link VisaCheckoutRetryingRequest#isRetryable(Exception)} retries. Authorization, validation and unexpected
+     * response errors do not count as failures.
+     */
+    static boolean isFailure(Exception exception) {
+        return VisaCheckoutRetryingRequest.isRetryable(exception);
+    }
+
+    private void transition(State state, long now) {
+        mState = state;
+        mGeneration++;
+        mProbesInFlight = 0;
+        if (state == State.OPEN) {
+            mOpenedAt = now;
+        } else if (state == State.CLOSED) {
+            resetWindow();
+        }
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mBucketEpochs[i] = Long.MIN_VALUE;
+            mRequests[i] = 0;
+            mFailures[i] = 0;
+            mSlowRequests[i] = 0;
+        }
+    }
+
+    private long bucketMillis() {
+        return Math.max(1, mPolicy.getWindowMillis() / BUCKETS);
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+}
@@ -0,0 +1,221 @@
+package com.braintreepayments.api;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.braintreepayments.api.interfaces.BraintreeResponseListener;
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.models.VisaCheckoutConfiguration;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * The fields of a {@link Configuration} that make up a Visa Checkout profile, persisted so that a profile can be
+ * created on a cold start before the configuration was fetched. Snapshots are stored in {@link SharedPreferences}
+ * keyed by the configuration url of the {@link com.braintreepayments.api.models.Authorization}, see
+ * {@link VisaCheckoutProfileRegistry#key(com.braintreepayments.api.models.Authorization)}, and expire after a TTL.
+ * Snapshots are disabled until a TTL is set. A snapshot is only rewritten when the configuration's Visa Checkout
+ * values change or half of its TTL has passed, so fetching an unchanged configuration does not write to disk.
+ */
+class VisaCheckoutConfigurationSnapshot {
+
+    static final String PREFERENCES_NAME = "com.braintreepayments.api.visacheckout.CONFIGURATION_SNAPSHOTS";
+
+    private static final String API_KEY_KEY = "apikey";
+    private static final String EXTERNAL_CLIENT_ID_KEY = "externalClientId";
+    private static final String SUPPORTED_CARD_TYPES_KEY = "supportedCardTypes";
+    private static final String ENVIRONMENT_KEY = "environment";
+    private static final String SAVED_AT_KEY = "savedAt";
+
+    private static final ConcurrentMap<String, VisaCheckoutConfigurationSnapshot> sKnownSnapshots =
+            new ConcurrentHashMap<>();
+    private static final Executor DEFAULT_LOAD_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static volatile long sTtlMillis = VisaCheckout.DEFAULT_CONFIGURATION_SNAPSHOT_TTL_MILLIS;
+    private static volatile Executor sLoadExecutor = DEFAULT_LOAD_EXECUTOR;
+
+    private final String mApiKey;
+    private final String mExternalClientId;
+    private final List<String> mAcceptedCardBrands;
+    private final String mEnvironment;
+    private final long mSavedAt;
+
+    private VisaCheckoutConfigurationSnapshot(String apiKey, String externalClientId, List<String> acceptedCardBrands,
+            String environment, long savedAt) {
+        mApiKey = apiKey;
+        mExternalClientId = externalClientId;
+        mAcceptedCardBrands = acceptedCardBrands;
+        mEnvironment = environment;
+        mSavedAt = savedAt;
+    }
+
+    /**
+     * @param ttlMillis the time after which a snapshot is no longer used. {@code 0} disables snapshots.
+     */
+    static void setTtl(long ttlMillis) {
+        sTtlMillis = ttlMillis;
+    }
+
+    static boolean isEnabled() {
+        return sTtlMillis > 0;
+    }
+
+    static long getTtl() {
+        return sTtlMillis;
+    }
+
+    static void save(Context context, String key, Configuration configuration) {
+        save(context, key, configuration, System.currentTimeMillis());
+    }
+
+    static void save(Context context, String key, Configuration configuration, long now) {
+        if (key == null || !isEnabled()) {
+            return;
+        }
+
+        VisaCheckoutConfigurationSnapshot knownSnapshot = sKnownSnapshots.get(key);
+        if (knownSnapshot != null && knownSnapshot.matches(configuration) && now >= knownSnapshot.mSavedAt
+                && now - knownSnapshot.mSavedAt < sTtlMillis / 2) {
+            return;
+        }
+
+        VisaCheckoutConfiguration visaCheckoutConfiguration = configuration.getVisaCheckout();
+        VisaCheckoutConfigurationSnapshot snapshot = new VisaCheckoutConfigurationSnapshot(
+                visaCheckoutConfiguration.getApiKey(), visaCheckoutConfiguration.getExternalClientId(),
+                visaCheckoutConfiguration.getAcceptedCardBrands(), configuration.getEnvironment(), now);
+
+        try {
+            preferences(context).edit().putString(key, snapshot.toJson().toString()).apply();
+            sKnownSnapshots.put(key, snapshot);
+        } catch (JSONException ignored) {}
+    }
+
+    /**
+     * Reads the snapshot saved for {@code key} on a background thread, since the first read of the
+     * {@link SharedPreferences} loads them from disk, and passes it to {@code listener} on the main thread.
+     * {@code listener} receives {@code null} if there is no snapshot or it expired.
+     */
+    static void loadInBackground(Context context, final String key,
+            final BraintreeResponseListener<VisaCheckoutConfigurationSnapshot> listener) {
+        final Context applicationContext = context.getApplicationContext();
+        sLoadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final VisaCheckoutConfigurationSnapshot snapshot = load(applicationContext, key,
+                        System.currentTimeMillis());
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onResponse(snapshot);
+                    }
+                });
+            }
+        });
+    }
+
+    static void setLoadExecutor(Executor executor) {
+        sLoadExecutor = executor == null ? DEFAULT_LOAD_EXECUTOR : executor;
+    }
+
+    /**
+     * @return the background executor snapshots are read on, which {@link VisaCheckout#prewarm(List)} shares for
+     * other startup work.
+     */
+    static Executor getLoadExecutor() {
+        return sLoadExecutor;
+    }
+
+    static VisaCheckoutConfigurationSnapshot load(Context context, String key, long now) {
+        if (key == null || !isEnabled()) {
+            return null;
+        }
+
+        SharedPreferences preferences = preferences(context);
+        String json = preferences.getString(key, null);
+        if (json == null) {
+            return null;
+        }
+
+        VisaCheckoutConfigurationSnapshot snapshot;
+        try {
+            snapshot = fromJson(new JSONObject(json));
+        } catch (JSONException e) {
+            snapshot = null;
+        }
+
+        if (snapshot == null || now - snapshot.mSavedAt >= sTtlMillis || snapshot.mSavedAt > now) {
+            remove(context, key);
+            return null;
+        }
+
+        sKnownSnapshots.put(key, snapshot);
+        return snapshot;
+    }
+
+    static void remove(Context context, String key) {
+        if (key != null) {
+            sKnownSnapshots.remove(key);
+            preferences(context).edit().remove(key).apply();
+        }
+    }
+
+    static void clear(Context context) {
+        sKnownSnapshots.clear();
+        preferences(context).edit().clear().apply();
+    }
+
+    VisaCheckoutProfileTemplate toProfileTemplate() {
+        return VisaCheckoutProfileTemplate.fromValues(mApiKey, mEnvironment, mAcceptedCardBrands, mExternalClientId);
+    }
+
+    /**
+     * @return {@code true} if {@code configuration} has the same Visa Checkout profile values as this snapshot.
+     */
+    boolean matches(Configuration configuration) {
+        return VisaCheckoutProfileCache.fingerprint(configuration).equals(fingerprint());
+    }
+
+    /**
+     * @return the fingerprint of the Visa Checkout profile values, see
+     * {@link VisaCheckoutProfileCache#fingerprint(Configuration)}.
+     */
+    String fingerprint() {
+        return VisaCheckoutProfileCache.fingerprint(mApiKey, mEnvironment, mExternalClientId, mAcceptedCardBrands);
+    }
+
+    private JSONObject toJson() throws JSONException {
+        return new JSONObject()
+                .put(API_KEY_KEY, mApiKey)
+                .put(EXTERNAL_CLIENT_ID_KEY, mExternalClientId)
+                .put(SUPPORTED_CARD_TYPES_KEY, new JSONArray(mAcceptedCardBrands))
+                .put(ENVIRONMENT_KEY, mEnvironment)
+                .put(SAVED_AT_KEY, mSavedAt);
+    }
+
+    private static VisaCheckoutConfigurationSnapshot fromJson(JSONObject json) throws JSONException {
+        JSONArray supportedCardTypes = json.getJSONArray(SUPPORTED_CARD_TYPES_KEY);
+        List<String> acceptedCardBrands = new ArrayList<>(supportedCardTypes.length());
+        for (int i = 0; i < supportedCardTypes.length(); i++) {
+            acceptedCardBrands.add(supportedCardTypes.getString(i));
+        }
+
+        return new VisaCheckoutConfigurationSnapshot(json.getString(API_KEY_KEY),
+                json.optString(EXTERNAL_CLIENT_ID_KEY, null), Collections.unmodifiableList(acceptedCardBrands),
+                json.getString(ENVIRONMENT_KEY), json.getLong(SAVED_AT_KEY));
+    }
+
+    private static SharedPreferences preferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+}
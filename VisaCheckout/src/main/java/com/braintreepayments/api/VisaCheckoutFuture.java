@@ -0,0 +1,441 @@
+package com.braintreepayments.api;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The result of an asynchronous Visa Checkout operation, such as
+ * {@link VisaCheckout#createProfileBuilderAsync(BraintreeFragment)} or
+ * {@link VisaCheckout#tokenizeAsync(BraintreeFragment, com.visa.checkout.VisaPaymentSummary)}. Futures can be
+ * chained with {@link #then(AsyncFunction, Executor)} and {@link #map(Function, Executor)}, and combined with
+ * {@link #allOf(List)}. Unlike {@code java.util.concurrent.CompletableFuture} this class is available on all API
+ * levels supported by Braintree.
+ *
+ * A future can also be created and completed by the caller, e.g. to wrap the result of the Visa Checkout SDK in
+ * {@code onActivityResult}, so that it can be chained with the futures returned by {@link VisaCheckout}.
+ *
+ * Canceling a future returned by {@link #map(Function, Executor)}, {@link #then(AsyncFunction, Executor)} or
+ * {@link #allOf(List)} cancels the futures it depends on only once none of their other dependents is still waiting,
+ * so that one chain can not cancel work another chain relies on.
+ *
+ * Operations started by {@link VisaCheckout} complete on the main thread, so {@link #get()} must not be called on
+ * the main thread.
+ *
+ * @param <T> the type of the result.
+ */
+public class VisaCheckoutFuture<T> implements Future<T> {
+
+    /**
+     * Receives the outcome of a {@link VisaCheckoutFuture}.
+     */
+    public interface Listener<T> {
+
+        void onSuccess(T result);
+
+        void onFailure(Exception exception);
+    }
+
+    /**
+     * Transforms the result of a {@link VisaCheckoutFuture}, see {@link #map(Function, Executor)}.
+     */
+    public interface Function<T, R> {
+
+        R apply(T result) throws Exception;
+    }
+
+    /**
+     * Starts an asynchronous operation from the result of a {@link VisaCheckoutFuture}, see
+     * {@link #then(AsyncFunction, Executor)}.
+     */
+    public interface AsyncFunction<T, R> {
+
+        VisaCheckoutFuture<R> apply(T result) throws Exception;
+    }
+
+    private static final Executor MAIN_THREAD_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                runnable.run();
+            } else {
+                new Handler(Looper.getMainLooper()).post(runnable);
+            }
+        }
+    };
+
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private final List<Runnable> mListeners = new ArrayList<>();
+
+    private T mResult;
+    private Exception mException;
+    private boolean mCompleted;
+    private boolean mCanceled;
+    private CancellationSignal mCancellationSignal;
+    private int mDependents;
+
+    public VisaCheckoutFuture() {}
+
+    /**
+     * @return a future that already succeeded with {@code result}.
+     */
+    public static <T> VisaCheckoutFuture<T> completed(T result) {
+        VisaCheckoutFuture<T> future = new VisaCheckoutFuture<>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * @return a future that already failed with {@code exception}.
+     */
+    public static <T> VisaCheckoutFuture<T> failed(Exception exception) {
+        VisaCheckoutFuture<T> future = new VisaCheckoutFuture<>();
+        future.fail(exception);
+        return future;
+    }
+
+    /**
+     * Combines several futures into one that succeeds with all results, in the order of {@code futures}, once every
+     * future succeeded. It fails as soon as one of the futures fails, and canceling it cancels those of them that
+     * have no other dependents.
+     */
+    public static <T> VisaCheckoutFuture<List<T>> allOf(final List<VisaCheckoutFuture<T>> futures) {
+        final VisaCheckoutFuture<List<T>> combined = new VisaCheckoutFuture<>();
+        if (futures.isEmpty()) {
+            combined.complete(Collections.<T>emptyList());
+            return combined;
+        }
+
+        final List<T> results = new ArrayList<>(Collections.<T>nCopies(futures.size(), null));
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            final int index = i;
+            futures.get(i).addListener(new Listener<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    synchronized (results) {
+                        results.set(index, result);
+                    }
+
+                    if (remaining.decrementAndGet() == 0) {
+                        synchronized (results) {
+                            combined.complete(Collections.unmodifiableList(new ArrayList<>(results)));
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception exception) {
+                    combined.fail(exception);
+                }
+            }, DirectExecutor.INSTANCE);
+        }
+
+        final List<CancellationSignal> cancellationSignals = new ArrayList<>(futures.size());
+        for (VisaCheckoutFuture<T> future : futures) {
+            cancellationSignals.add(future.dependentCancellationSignal());
+        }
+
+        combined.setCancellationSignal(cancellationSignal(new Runnable() {
+            @Override
+            public void run() {
+                for (CancellationSignal cancellationSignal : cancellationSignals) {
+                    cancellationSignal.cancel();
+                }
+            }
+        }));
+
+        return combined;
+    }
+
+    /**
+     * Completes this future with {@code result}, unless it is already done.
+     *
+     * @return {@code true} if this call completed the future.
+     */
+    public boolean complete(T result) {
+        return finish(result, null, false);
+    }
+
+    /**
+     * Fails this future with {@code exception}, unless it is already done.
+     *
+     * @return {@code true} if this call completed the future.
+     */
+    public boolean fail(Exception exception) {
+        return finish(null, exception, false);
+    }
+
+    /**
+     * Cancels the operation. Listeners are called with a {@link CancellationException}.
+     *
+     * @param mayInterruptIfRunning ignored, requests in flight are aborted where possible.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!finish(null, new CancellationException("Visa Checkout operation was canceled."), true)) {
+            return false;
+        }
+
+        CancellationSignal cancellationSignal;
+        synchronized (this) {
+            cancellationSignal = mCancellationSignal;
+        }
+
+        if (cancellationSignal != null) {
+            cancellationSignal.cancel();
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mCanceled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mCompleted;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        mDone.await();
+        return getResult();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mDone.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+
+        return getResult();
+    }
+
+    /**
+     * Calls {@code listener} on the main thread once this future is done.
+     */
+    public VisaCheckoutFuture<T> addListener(Listener<? super T> listener) {
+        return addListener(listener, MAIN_THREAD_EXECUTOR);
+    }
+
+    /**
+     * Calls {@code listener} on {@code executor} once this future is done.
+     */
+    public VisaCheckoutFuture<T> addListener(final Listener<? super T> listener, final Executor executor) {
+        Runnable notification = new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        T result;
+                        Exception exception;
+                        synchronized (VisaCheckoutFuture.this) {
+                            result = mResult;
+                            exception = mException;
+                        }
+
+                        if (exception == null) {
+                            listener.onSuccess(result);
+                        } else {
+                            listener.onFailure(exception);
+                        }
+                    }
+                });
+            }
+        };
+
+        synchronized (this) {
+            if (!mCompleted) {
+                mListeners.add(notification);
+                return this;
+            }
+        }
+
+        notification.run();
+        return this;
+    }
+
+    /**
+     * @return a future with the result of {@code function} applied on {@code executor} to the result of this future.
+     * Failures are passed through, as are exceptions thrown by {@code function}. Canceling the returned future
+     * cancels this one if it has no other dependents.
+     */
+    public <R> VisaCheckoutFuture<R> map(final Function<? super T, ? extends R> function, Executor executor) {
+        final VisaCheckoutFuture<R> mapped = new VisaCheckoutFuture<>();
+        mapped.setCancellationSignal(dependentCancellationSignal());
+
+        addListener(new Listener<T>() {
+            @Override
+            public void onSuccess(T result) {
+                try {
+                    mapped.complete(function.apply(result));
+                } catch (Exception e) {
+                    mapped.fail(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                mapped.fail(exception);
+            }
+        }, executor);
+
+        return mapped;
+    }
+
+    /**
+     * @return a future for the operation started by {@code function} on {@code executor} once this future succeeded.
+     * Canceling the returned future cancels whichever of the two operations is running, if it has no other
+     * dependents.
+     */
+    public <R> VisaCheckoutFuture<R> then(final AsyncFunction<? super T, R> function, Executor executor) {
+        final VisaCheckoutFuture<R> chained = new VisaCheckoutFuture<>();
+        chained.setCancellationSignal(dependentCancellationSignal());
+
+        addListener(new Listener<T>() {
+            @Override
+            public void onSuccess(T result) {
+                final VisaCheckoutFuture<R> next;
+                try {
+                    next = function.apply(result);
+                } catch (Exception e) {
+                    chained.fail(e);
+                    return;
+                }
+
+                chained.setCancellationSignal(next.dependentCancellationSignal());
+                next.addListener(new Listener<R>() {
+                    @Override
+                    public void onSuccess(R result) {
+                        chained.complete(result);
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        chained.fail(exception);
+                    }
+                }, DirectExecutor.INSTANCE);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                chained.fail(exception);
+            }
+        }, executor);
+
+        return chained;
+    }
+
+    /**
+     * Sets the signal canceled when this future is canceled. If the future was already canceled the signal is
+     * canceled immediately.
+     */
+    void setCancellationSignal(CancellationSignal cancellationSignal) {
+        synchronized (this) {
+            if (!mCanceled) {
+                mCancellationSignal = cancellationSignal;
+                return;
+            }
+        }
+
+        cancellationSignal.cancel();
+    }
+
+    private boolean finish(T result, Exception exception, boolean canceled) {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (mCompleted) {
+                return false;
+            }
+
+            mCompleted = true;
+            mCanceled = canceled;
+            mResult = result;
+            mException = exception;
+            listeners = new ArrayList<>(mListeners);
+            mListeners.clear();
+        }
+
+        mDone.countDown();
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+
+        return true;
+    }
+
+    private synchronized T getResult() throws ExecutionException {
+        if (mCanceled) {
+            throw (CancellationException) mException;
+        }
+
+        if (mException != null) {
+            throw new ExecutionException(mException);
+        }
+
+        return mResult;
+    }
+
+    /**
+     * Registers a dependent of this future, e.g. a mapped or chained future.
+     *
+     * @return a signal that, when canceled, unregisters the dependent and cancels this future if no other dependent
+     * is left.
+     */
+    private CancellationSignal dependentCancellationSignal() {
+        synchronized (this) {
+            mDependents++;
+        }
+
+        return cancellationSignal(new Runnable() {
+            @Override
+            public void run() {
+                boolean lastDependent;
+                synchronized (VisaCheckoutFuture.this) {
+                    lastDependent = --mDependents == 0;
+                }
+
+                if (lastDependent) {
+                    cancel(false);
+                }
+            }
+        });
+    }
+
+    private static CancellationSignal cancellationSignal(final Runnable onCancel) {
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                onCancel.run();
+            }
+        });
+
+        return cancellationSignal;
+    }
+
+    private enum DirectExecutor implements Executor {
+        INSTANCE;
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.internal.BraintreeHttpClient;
+import com.braintreepayments.api.models.Authorization;
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link BraintreeHttpClient} that can send additional headers with a request, used by the Visa Checkout
+ * tokenization features that need control over the request, such as retries with an idempotency key.
+ *
+ * When compression is enabled, request bodies are sent gzip encoded and gzip encoded responses are accepted. If the
+ * server refuses a gzip encoded body with {@code 415 Unsupported Media Type} the request is sent again uncompressed,
+ * and later requests of the same client are no longer compressed.
+ *
+ * Bodies posted with {@link #post(String, VisaCheckoutBuilder, Request)} are streamed from the
+ * {@link VisaCheckoutBuilder} into the connection instead of being built as a string first.
+ */
+class VisaCheckoutHttpClient extends BraintreeHttpClient {
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String TRACEPARENT_HEADER = "traceparent";
+    static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    static final String GZIP = "gzip";
+
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    private static volatile boolean sCompressionEnabled;
+
+    private static VisaCheckoutHttpClient sHttpClient;
+    private static String sHttpClientKey;
+
+    private final ThreadLocal<Request> mRequest = new ThreadLocal<>();
+    private final ThreadLocal<Boolean> mCompressingBody = new ThreadLocal<>();
+    private final ThreadLocal<VisaCheckoutBuilder> mStreamedBody = new ThreadLocal<>();
+
+    private volatile boolean mCompressionRefused;
+
+    VisaCheckoutHttpClient(Authorization authorization, String baseUrl) {
+        super(authorization);
+        setBaseUrl(baseUrl);
+    }
+
+    /**
+     * @return a {@link VisaCheckoutHttpClient} for the fragment's authorization and the configured client API url.
+     * The same instance is returned as long as neither changes.
+     */
+    static synchronized VisaCheckoutHttpClient get(BraintreeFragment fragment, Configuration configuration) {
+        Authorization authorization = fragment.getAuthorization();
+        String key = authorization + "\n" + configuration.getClientApiUrl();
+        if (sHttpClient == null || !key.equals(sHttpClientKey)) {
+            sHttpClient = new VisaCheckoutHttpClient(authorization, configuration.getClientApiUrl());
+            sHttpClientKey = key;
+        }
+
+        return sHttpClient;
+    }
+
+    static void setCompressionEnabled(boolean compressionEnabled) {
+        sCompressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Makes a synchronous POST request. Must not be called on the main thread.
+     *
+     * @param path the path or url to request.
+     * @param data the request body.
+     * @param request the additional headers to send, can be used to cancel the request from another thread.
+     * @return the response body.
+     * @throws Exception if the request fails or was canceled.
+     */
+    String post(String path, String data, Request request) throws Exception {
+        mRequest.set(request);
+        try {
+            if (request != null && sCompressionEnabled && !mCompressionRefused) {
+                mCompressingBody.set(true);
+                try {
+                    return post(path, data);
+                } catch (CompressionRefusedException e) {
+                    mCompressionRefused = true;
+                } finally {
+                    mCompressingBody.remove();
+                }
+            }
+
+            return post(path, data);
+        } finally {
+            mRequest.remove();
+        }
+    }
+
+    /**
+     * Makes a synchronous POST request like {@link #post(String, String, Request)}, writing the body with
+     * {@link VisaCheckoutBuilder#writeTo(Appendable, JSONObject)} once the connection is open. The builder must not
+     * be changed until this method returns.
+     */
+    String post(String path, VisaCheckoutBuilder body, Request request) throws Exception {
+        mStreamedBody.set(body);
+        try {
+            // BraintreeHttpClient adds the authorization fingerprint of client tokens to this object, which is then
+            // merged into the streamed body
+            return post(path, "{}", request);
+        } finally {
+            mStreamedBody.remove();
+        }
+    }
+
+    @Override
+    protected HttpURLConnection init(String url) throws IOException {
+        Request request = mRequest.get();
+        if (request == null) {
+            return super.init(url);
+        }
+
+        if (request.isCanceled()) {
+            throw new IOException("Request canceled");
+        }
+
+        HttpURLConnection connection = super.init(url);
+        for (Map.Entry<String, String> header : request.mHeaders.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        if (sCompressionEnabled) {
+            connection.setRequestProperty(ACCEPT_ENCODING_HEADER, GZIP);
+        }
+
+        if (isCompressingBody()) {
+            connection.setRequestProperty(CONTENT_ENCODING_HEADER, GZIP);
+        }
+
+        request.mConnection = connection;
+        if (request.isCanceled()) {
+            connection.disconnect();
+        }
+
+        return connection;
+    }
+
+    @Override
+    protected void writeOutputStream(OutputStream outputStream, String data) throws IOException {
+        VisaCheckoutBuilder body = mStreamedBody.get();
+        if (body == null && !isCompressingBody()) {
+            super.writeOutputStream(outputStream, data);
+            return;
+        }
+
+        if (isCompressingBody()) {
+            outputStream = new GZIPOutputStream(outputStream);
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+        if (body == null) {
+            out.write(data, 0, data.length());
+        } else {
+            try {
+                body.writeTo(out, new JSONObject(data));
+            } catch (JSONException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        out.close();
+    }
+
+    @Override
+    protected String parseResponse(HttpURLConnection connection) throws Exception {
+        if (isCompressingBody() && connection.getResponseCode() == HTTP_UNSUPPORTED_MEDIA_TYPE) {
+            throw new CompressionRefusedException();
+        }
+
+        return super.parseResponse(connection);
+    }
+
+    private boolean isCompressingBody() {
+        return Boolean.TRUE.equals(mCompressingBody.get());
+    }
+
+    /**
+     * Thrown when the server does not accept a gzip encoded request body.
+     */
+    private static class CompressionRefusedException extends IOException {}
+
+    /**
+     * A single request made with {@link #post(String, String, Request)}.
+     */
+    static class Request {
+
+        private final Map<String, String> mHeaders;
+        private volatile HttpURLConnection mConnection;
+        private volatile boolean mCanceled;
+
+        Request(Map<String, String> headers) {
+            mHeaders = headers == null ? Collections.<String, String>emptyMap() : headers;
+        }
+
+        /**
+         * Cancels the request, closing its connection if it was already opened.
+         */
+        void cancel() {
+            mCanceled = true;
+
+            HttpURLConnection connection = mConnection;
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        boolean isCanceled() {
+            return mCanceled;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.braintreepayments.api;
+
+import android.os.CancellationSignal;
+
+import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks tokenization requests that are in flight by Visa Checkout call id, so that tokenizing the same payment
+ * again while a request is pending attaches to that request instead of sending a new one.
+ */
+class VisaCheckoutInFlightRequests {
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Registers {@code callback} for the request for {@code callId}.
+     *
+     * @return the callback to pass to the new request, or {@code null} if a request for {@code callId} is already in
+     * flight and {@code callback} will be notified when it completes.
+     */
+    synchronized PaymentMethodNonceCallback join(final String callId, PaymentMethodNonceCallback callback) {
+        if (callId == null) {
+            return callback;
+        }
+
+        Entry entry = mEntries.get(callId);
+        if (entry != null) {
+            entry.mCallbacks.add(callback);
+            return null;
+        }
+
+        entry = new Entry();
+        entry.mCallbacks.add(callback);
+        mEntries.put(callId, entry);
+
+        return new PaymentMethodNonceCallback() {
+            @Override
+            public void success(PaymentMethodNonce paymentMethodNonce) {
+                for (PaymentMethodNonceCallback pendingCallback : complete(callId)) {
+                    pendingCallback.success(paymentMethodNonce);
+                }
+            }
+
+            @Override
+            public void failure(Exception exception) {
+                for (PaymentMethodNonceCallback pendingCallback : complete(callId)) {
+                    pendingCallback.failure(exception);
+                }
+            }
+        };
+    }
+
+    /**
+     * Associates the {@link CancellationSignal} of the request for {@code callId}, so the request can be released
+     * once every caller has left, see {@link #leave(String, PaymentMethodNonceCallback)}.
+     */
+    synchronized void setRequest(String callId, CancellationSignal request) {
+        Entry entry = mEntries.get(callId);
+        if (entry != null) {
+            entry.mRequest = request;
+        }
+    }
+
+    /**
+     * Unregisters {@code callback}. When no callbacks remain the request for {@code callId} is canceled.
+     */
+    void leave(String callId, PaymentMethodNonceCallback callback) {
+        CancellationSignal request;
+        synchronized (this) {
+            Entry entry = mEntries.get(callId);
+            if (entry == null) {
+                return;
+            }
+
+            entry.mCallbacks.remove(callback);
+            if (!entry.mCallbacks.isEmpty()) {
+                return;
+            }
+
+            mEntries.remove(callId);
+            request = entry.mRequest;
+        }
+
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    synchronized boolean isInFlight(String callId) {
+        return mEntries.containsKey(callId);
+    }
+
+    private synchronized List<PaymentMethodNonceCallback> complete(String callId) {
+        Entry entry = mEntries.remove(callId);
+        if (entry == null) {
+            return new ArrayList<>();
+        }
+
+        return entry.mCallbacks;
+    }
+
+    private static class Entry {
+        private final List<PaymentMethodNonceCallback> mCallbacks = new ArrayList<>();
+        private CancellationSignal mRequest;
+    }
+}
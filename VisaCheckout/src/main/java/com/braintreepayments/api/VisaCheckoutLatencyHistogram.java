@@ -0,0 +1,98 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.VisaCheckoutLatencySnapshot;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free, fixed size latency histogram. Durations are recorded in microseconds into log-linear buckets, four per
+ * power of two, which keeps recording to a few atomic increments and bounds the relative error to 25%.
+ */
+class VisaCheckoutLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 40 * SUB_BUCKETS;
+
+    private final VisaCheckoutPhase mPhase;
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    VisaCheckoutLatencyHistogram(VisaCheckoutPhase phase) {
+        mPhase = phase;
+    }
+
+    void record(long durationNanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(durationNanos));
+        mCounts.incrementAndGet(bucketIndex(micros));
+
+        long max = mMaxMicros.get();
+        while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+            max = mMaxMicros.get();
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+        mMaxMicros.set(0);
+    }
+
+    VisaCheckoutLatencySnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mCounts.get(i);
+            total += counts[i];
+        }
+
+        double maxMillis = mMaxMicros.get() / 1000d;
+        return new VisaCheckoutLatencySnapshot(mPhase, total, percentile(counts, total, 0.50, maxMillis),
+                percentile(counts, total, 0.95, maxMillis), percentile(counts, total, 0.99, maxMillis), maxMillis);
+    }
+
+    private static double percentile(long[] counts, long total, double percentile, double maxMillis) {
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBoundMicros(i) / 1000d, maxMillis);
+            }
+        }
+
+        return maxMillis;
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        int index = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    static long bucketUpperBoundMicros(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lowerBound = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,68 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.interfaces.VisaCheckoutMetricsListener;
+import com.braintreepayments.api.models.VisaCheckoutLatencySnapshot;
+import com.braintreepayments.api.models.VisaCheckoutMetricEvent;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the duration of each {@link VisaCheckoutPhase} into a {@link VisaCheckoutLatencyHistogram} and forwards it
+ * to the {@link VisaCheckoutMetricsListener}, if one is set, and to {@link VisaCheckoutTracing} for traced payments.
+ */
+class VisaCheckoutMetrics {
+
+    private static final Map<VisaCheckoutPhase, VisaCheckoutLatencyHistogram> sHistograms = createHistograms();
+    private static volatile VisaCheckoutMetricsListener sListener;
+
+    static void setListener(VisaCheckoutMetricsListener listener) {
+        sListener = listener;
+    }
+
+    static long start() {
+        return System.nanoTime();
+    }
+
+    static void record(VisaCheckoutPhase phase, String callId, long startNanos, boolean success) {
+        long durationNanos = System.nanoTime() - startNanos;
+        sHistograms.get(phase).record(durationNanos);
+
+        VisaCheckoutMetricsListener listener = sListener;
+        boolean traced = VisaCheckoutTracing.get(callId) != null;
+        if (listener == null && !traced) {
+            return;
+        }
+
+        long startTimeMillis = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        if (listener != null) {
+            listener.onMetricEvent(new VisaCheckoutMetricEvent(phase, callId, startTimeMillis, durationNanos,
+                    success));
+        }
+
+        if (traced) {
+            VisaCheckoutTracing.recordPhase(phase, callId, startTimeMillis, durationNanos, success);
+        }
+    }
+
+    static VisaCheckoutLatencySnapshot snapshot(VisaCheckoutPhase phase) {
+        return sHistograms.get(phase).snapshot();
+    }
+
+    static void reset() {
+        for (VisaCheckoutLatencyHistogram histogram : sHistograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    private static Map<VisaCheckoutPhase, VisaCheckoutLatencyHistogram> createHistograms() {
+        Map<VisaCheckoutPhase, VisaCheckoutLatencyHistogram> histograms = new EnumMap<>(VisaCheckoutPhase.class);
+        for (VisaCheckoutPhase phase : VisaCheckoutPhase.values()) {
+            histograms.put(phase, new VisaCheckoutLatencyHistogram(phase));
+        }
+
+        return histograms;
+    }
+}
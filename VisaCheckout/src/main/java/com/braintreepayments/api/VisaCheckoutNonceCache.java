@@ -0,0 +1,94 @@
+package com.braintreepayments.api;
+
+import android.os.SystemClock;
+
+import com.braintreepayments.api.models.PaymentMethodNonce;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, in-memory cache of recently tokenized Visa Checkout payments keyed by call id. Entries expire after a
+ * time to live and the least recently used entry is evicted when the cache is full. Disabled until a time to live is
+ * set, since a cached nonce may already have been used.
+ */
+class VisaCheckoutNonceCache {
+
+    static final long DEFAULT_TTL_MILLIS = 0;
+    static final int DEFAULT_MAX_SIZE = 16;
+
+    private final Map<String, Entry> mEntries;
+    private long mTtlMillis;
+
+    VisaCheckoutNonceCache() {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_MAX_SIZE);
+    }
+
+    VisaCheckoutNonceCache(long ttlMillis, final int maxSize) {
+        mTtlMillis = ttlMillis;
+        mEntries = new LinkedHashMap<String, Entry>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized void setTtl(long ttlMillis) {
+        mTtlMillis = ttlMillis;
+        if (ttlMillis <= 0) {
+            mEntries.clear();
+        }
+    }
+
+    /**
+     * @return the cached nonce for {@code callId}, or {@code null} if there is none or it expired.
+     */
+    synchronized PaymentMethodNonce get(String callId) {
+        if (callId == null) {
+            return null;
+        }
+
+        Entry entry = mEntries.get(callId);
+        if (entry == null) {
+            return null;
+        }
+
+        if (now() - entry.mCreatedAt >= mTtlMillis) {
+            mEntries.remove(callId);
+            return null;
+        }
+
+        return entry.mPaymentMethodNonce;
+    }
+
+    synchronized void put(String callId, PaymentMethodNonce paymentMethodNonce) {
+        if (callId == null || mTtlMillis <= 0) {
+            return;
+        }
+
+        mEntries.put(callId, new Entry(paymentMethodNonce, now()));
+    }
+
+    synchronized void invalidate(String callId) {
+        mEntries.remove(callId);
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+    long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    private static class Entry {
+        private final PaymentMethodNonce mPaymentMethodNonce;
+        private final long mCreatedAt;
+
+        Entry(PaymentMethodNonce paymentMethodNonce, long createdAt) {
+            mPaymentMethodNonce = paymentMethodNonce;
+            mCreatedAt = createdAt;
+        }
+    }
+}
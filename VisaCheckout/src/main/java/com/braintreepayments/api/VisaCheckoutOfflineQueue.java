@@ -0,0 +1,476 @@
+package com.braintreepayments.api;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.braintreepayments.api.exceptions.BraintreeException;
+import com.braintreepayments.api.interfaces.BraintreeResponseListener;
+import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+import com.visa.checkout.VisaPaymentSummary;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the encrypted payment data of Visa Checkout payments that could not be tokenized because Braintree could not
+ * be reached, and tokenizes them again once connectivity returns. Entries are encrypted with a
+ * {@link VisaCheckoutQueueCipher} and stored in {@link SharedPreferences} keyed by call id, so that a payment is
+ * queued at most once and its nonce is posted at most once: whoever removes the entry delivers the result.
+ *
+ * Adding and claiming entries encrypts them and touches {@link SharedPreferences}, which may load them from disk, so
+ * both run on a background executor rather than on the main thread that delivers tokenization results.
+ */
+class VisaCheckoutOfflineQueue {
+
+    static final String PREFERENCES_NAME = "com.braintreepayments.api.visacheckout.OFFLINE_QUEUE";
+
+    private static final String CALL_ID_KEY = "callId";
+    private static final String ENCRYPTED_KEY_KEY = "encKey";
+    private static final String ENCRYPTED_PAYMENT_DATA_KEY = "encPaymentData";
+    private static final String QUEUED_AT_KEY = "queuedAt";
+
+    private static final Executor DEFAULT_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static volatile boolean sEnabled;
+    private static volatile int sMaxSize = VisaCheckout.DEFAULT_OFFLINE_QUEUE_MAX_SIZE;
+    private static volatile long sTtlMillis = VisaCheckout.DEFAULT_OFFLINE_QUEUE_TTL_MILLIS;
+    private static volatile Executor sExecutor = DEFAULT_EXECUTOR;
+    private static VisaCheckoutOfflineQueue sInstance;
+
+    private final Context mContext;
+    private final SharedPreferences mPreferences;
+    private final Set<String> mReplaying = new HashSet<>();
+
+    private VisaCheckoutQueueCipher mCipher;
+    private boolean mCipherResolved;
+    private WeakReference<BraintreeFragment> mReplayFragment;
+    private Object mNetworkCallback;
+
+    VisaCheckoutOfflineQueue(Context context, VisaCheckoutQueueCipher cipher) {
+        mContext = context.getApplicationContext();
+        mPreferences = mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mCipher = cipher;
+        mCipherResolved = cipher != null;
+    }
+
+    static synchronized VisaCheckoutOfflineQueue get(Context context) {
+        if (sInstance == null) {
+            sInstance = new VisaCheckoutOfflineQueue(context, null);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Replaces the shared queue, e.g. with one that uses a software key in tests.
+     */
+    static synchronized void setInstance(VisaCheckoutOfflineQueue queue) {
+        sInstance = queue;
+    }
+
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    static void setLimits(int maxSize, long ttlMillis) {
+        sMaxSize = Math.max(1, maxSize);
+        sTtlMillis = ttlMillis;
+    }
+
+    /**
+     * Replaces the executor that adds and claims entries, e.g. with one that runs them synchronously in tests.
+     * {@code null} restores the default single background thread.
+     */
+    static void setExecutor(Executor executor) {
+        sExecutor = executor == null ? DEFAULT_EXECUTOR : executor;
+    }
+
+    /**
+     * @return {@code true} if {@code exception} means Braintree could not be reached, as opposed to an error response.
+     */
+    static boolean isConnectivityError(Exception exception) {
+        return exception instanceof IOException && !(exception instanceof BraintreeException);
+    }
+
+    /**
+     * Queues {@code visaPaymentSummary} on a background thread if the queue is enabled and {@code exception} is a
+     * connectivity error. {@code listener} receives {@code true} on the main thread if the payment was queued.
+     */
+    static void offer(final BraintreeFragment fragment, final VisaPaymentSummary visaPaymentSummary,
+            Exception exception, final BraintreeResponseListener<Boolean> listener) {
+        if (!sEnabled || visaPaymentSummary == null || visaPaymentSummary.getCallId() == null
+                || !isConnectivityError(exception)) {
+            listener.onResponse(false);
+            return;
+        }
+
+        final VisaCheckoutOfflineQueue queue = get(fragment.getApplicationContext());
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean queued = queue.add(visaPaymentSummary.getCallId(), visaPaymentSummary.getEncKey(),
+                        visaPaymentSummary.getEncPaymentData());
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (queued) {
+                            queue.watchConnectivity(fragment);
+                            VisaCheckoutAnalytics.send(fragment, "visacheckout.offline.queued");
+                        }
+
+                        listener.onResponse(queued);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Removes {@code callId} from the queue on a background thread because the payment is tokenized by the caller
+     * again, who then receives the result instead of the queue. Claims and additions run in order on the same
+     * executor.
+     */
+    static void claim(BraintreeFragment fragment, final String callId) {
+        if (sEnabled && callId != null) {
+            final VisaCheckoutOfflineQueue queue = get(fragment.getApplicationContext());
+            sExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    queue.remove(callId);
+                }
+            });
+        }
+    }
+
+    boolean add(String callId, String encryptedKey, String encryptedPaymentData) {
+        VisaCheckoutQueueCipher cipher = getCipher();
+        if (cipher == null) {
+            return false;
+        }
+
+        String encryptedEntry;
+        try {
+            encryptedEntry = cipher.encrypt(new JSONObject()
+                    .put(CALL_ID_KEY, callId)
+                    .put(ENCRYPTED_KEY_KEY, encryptedKey)
+                    .put(ENCRYPTED_PAYMENT_DATA_KEY, encryptedPaymentData)
+                    .put(QUEUED_AT_KEY, now())
+                    .toString());
+        } catch (GeneralSecurityException | JSONException e) {
+            return false;
+        }
+
+        List<Entry> entries = pending();
+        synchronized (this) {
+            List<String> queuedCallIds = new ArrayList<>();
+            for (Entry entry : entries) {
+                if (!entry.mCallId.equals(callId) && mPreferences.contains(entry.mCallId)) {
+                    queuedCallIds.add(entry.mCallId);
+                }
+            }
+
+            SharedPreferences.Editor editor = mPreferences.edit();
+            while (queuedCallIds.size() >= sMaxSize) {
+                editor.remove(queuedCallIds.remove(0));
+            }
+
+            editor.putString(callId, encryptedEntry).apply();
+        }
+
+        return true;
+    }
+
+    /**
+     * Decrypts the queued payments without holding the queue's lock, since decryption can block on the Android
+     * Keystore. Entries that can not be decrypted or have expired are removed, unless they were replaced meanwhile.
+     *
+     * @return the queued payments that have not expired, oldest first.
+     */
+    List<Entry> pending() {
+        List<Entry> entries = new ArrayList<>();
+        Map<String, Object> invalidEntries = new HashMap<>();
+        VisaCheckoutQueueCipher cipher = getCipher();
+        long now = now();
+        for (Map.Entry<String, ?> preference : mPreferences.getAll().entrySet()) {
+            Entry entry = cipher == null ? null : Entry.decrypt(cipher, preference.getValue());
+            if (entry == null || now - entry.mQueuedAt >= sTtlMillis || now < entry.mQueuedAt) {
+                invalidEntries.put(preference.getKey(), preference.getValue());
+            } else {
+                entries.add(entry);
+            }
+        }
+
+        if (!invalidEntries.isEmpty()) {
+            removeUnchanged(invalidEntries);
+        }
+
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                return lhs.mQueuedAt < rhs.mQueuedAt ? -1 : (lhs.mQueuedAt == rhs.mQueuedAt ? 0 : 1);
+            }
+        });
+
+        return entries;
+    }
+
+    /**
+     * Removes {@code callId}. The in-memory preferences change before this returns, so exactly one caller in the
+     * process removes an entry and delivers its result. The change is written to disk asynchronously.
+     *
+     * @return {@code true} if {@code callId} was queued.
+     */
+    synchronized boolean remove(String callId) {
+        if (!mPreferences.contains(callId)) {
+            return false;
+        }
+
+        mPreferences.edit().remove(callId).apply();
+        return true;
+    }
+
+    synchronized void clear() {
+        mPreferences.edit().clear().apply();
+    }
+
+    /**
+     * Tokenizes the queued payments with at most {@link VisaCheckout#DEFAULT_MAX_CONCURRENT_REQUESTS} requests in
+     * flight. Nonces and errors other than connectivity errors are posted to {@code fragment}. The replay stops at the
+     * first connectivity error and resumes when connectivity returns.
+     */
+    void replay(BraintreeFragment fragment) {
+        List<Entry> pending = pending();
+        Deque<Entry> entries = new ArrayDeque<>();
+        synchronized (this) {
+            for (Entry entry : pending) {
+                // skip entries claimed while the queue was decrypted
+                if (mPreferences.contains(entry.mCallId) && mReplaying.add(entry.mCallId)) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        if (!entries.isEmpty()) {
+            new Replay(fragment, entries).start();
+        }
+    }
+
+    /**
+     * @return the wall clock time, since queued entries outlive the process and device restarts.
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private synchronized VisaCheckoutQueueCipher getCipher() {
+        if (!mCipherResolved) {
+            mCipher = VisaCheckoutQueueCipher.fromAndroidKeyStore();
+            mCipherResolved = true;
+        }
+
+        return mCipher;
+    }
+
+    private synchronized void removeUnchanged(Map<String, ?> preferences) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (Map.Entry<String, ?> preference : preferences.entrySet()) {
+            if (preference.getValue().equals(mPreferences.getString(preference.getKey(), null))) {
+                editor.remove(preference.getKey());
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * Replays the queue once a network with internet access is available. Entries are only queued on devices that
+     * have the Android Keystore, see {@link VisaCheckoutQueueCipher}, so the network callback is always available.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private synchronized void watchConnectivity(BraintreeFragment fragment) {
+        mReplayFragment = new WeakReference<>(fragment);
+        if (mNetworkCallback != null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+
+        ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        BraintreeFragment replayFragment = mReplayFragment == null ? null : mReplayFragment.get();
+                        if (replayFragment != null) {
+                            replay(replayFragment);
+                        }
+                    }
+                });
+            }
+        };
+        connectivityManager().registerNetworkCallback(new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build(), networkCallback);
+        mNetworkCallback = networkCallback;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private synchronized void stopWatchingConnectivityIfEmpty() {
+        if (mNetworkCallback != null && mReplaying.isEmpty() && mPreferences.getAll().isEmpty()) {
+            connectivityManager().unregisterNetworkCallback((ConnectivityManager.NetworkCallback) mNetworkCallback);
+            mNetworkCallback = null;
+        }
+    }
+
+    private ConnectivityManager connectivityManager() {
+        return (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    private synchronized void finished(String callId) {
+        mReplaying.remove(callId);
+    }
+
+    private class Replay {
+
+        private final BraintreeFragment mFragment;
+        private final Deque<Entry> mEntries;
+        private int mInFlight;
+        private boolean mStopped;
+
+        Replay(BraintreeFragment fragment, Deque<Entry> entries) {
+            mFragment = fragment;
+            mEntries = entries;
+        }
+
+        void start() {
+            VisaCheckoutAnalytics.send(mFragment, "visacheckout.offline.replay.started");
+            for (int i = 0; i < VisaCheckout.DEFAULT_MAX_CONCURRENT_REQUESTS; i++) {
+                startNext();
+            }
+        }
+
+        private void startNext() {
+            final Entry entry;
+            synchronized (this) {
+                if (mStopped || mEntries.isEmpty()) {
+                    if (mInFlight == 0) {
+                        stopWatchingConnectivityIfEmpty();
+                    }
+
+                    return;
+                }
+
+                entry = mEntries.poll();
+                mInFlight++;
+            }
+
+            VisaCheckout.tokenize(mFragment, entry.mCallId, entry.toBuilder(), new PaymentMethodNonceCallback() {
+                @Override
+                public void success(PaymentMethodNonce paymentMethodNonce) {
+                    onFinished(entry);
+                    if (remove(entry.mCallId)) {
+                        mFragment.postCallback(paymentMethodNonce);
+                        VisaCheckoutAnalytics.send(mFragment, "visacheckout.offline.replay.succeeded");
+                    }
+
+                    startNext();
+                }
+
+                @Override
+                public void failure(Exception exception) {
+                    onFinished(entry);
+                    if (isConnectivityError(exception)) {
+                        stop();
+                        return;
+                    }
+
+                    if (remove(entry.mCallId)) {
+                        mFragment.postCallback(exception);
+                        VisaCheckoutAnalytics.send(mFragment, "visacheckout.offline.replay.failed");
+                    }
+
+                    startNext();
+                }
+            });
+        }
+
+        private void onFinished(Entry entry) {
+            synchronized (this) {
+                mInFlight--;
+            }
+
+            finished(entry.mCallId);
+        }
+
+        private void stop() {
+            List<Entry> remaining;
+            synchronized (this) {
+                mStopped = true;
+                remaining = new ArrayList<>(mEntries);
+                mEntries.clear();
+            }
+
+            for (Entry entry : remaining) {
+                finished(entry.mCallId);
+            }
+
+            watchConnectivity(mFragment);
+        }
+    }
+
+    static class Entry {
+
+        final String mCallId;
+        final String mEncryptedKey;
+        final String mEncryptedPaymentData;
+        final long mQueuedAt;
+
+        private Entry(String callId, String encryptedKey, String encryptedPaymentData, long queuedAt) {
+            mCallId = callId;
+            mEncryptedKey = encryptedKey;
+            mEncryptedPaymentData = encryptedPaymentData;
+            mQueuedAt = queuedAt;
+        }
+
+        static Entry decrypt(VisaCheckoutQueueCipher cipher, Object value) {
+            if (!(value instanceof String)) {
+                return null;
+            }
+
+            try {
+                JSONObject json = new JSONObject(cipher.decrypt((String) value));
+                return new Entry(json.getString(CALL_ID_KEY), json.optString(ENCRYPTED_KEY_KEY, null),
+                        json.optString(ENCRYPTED_PAYMENT_DATA_KEY, null), json.getLong(QUEUED_AT_KEY));
+            } catch (GeneralSecurityException | JSONException e) {
+                return null;
+            }
+        }
+
+        VisaCheckoutBuilder toBuilder() {
+            return new VisaCheckoutBuilder(mCallId, mEncryptedKey, mEncryptedPaymentData);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.models.VisaCheckoutConfiguration;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the {@link VisaCheckoutProfileTemplate}s of the most recently used {@link Configuration}s. Templates are keyed
+ * by a fingerprint of the fields that make up a Visa Checkout profile, so a refetched {@link Configuration} with the
+ * same values reuses the existing template, and switching between a few merchant accounts does not rebuild theirs.
+ * The cache is bounded, once it holds more than its maximum size the least recently used template is evicted.
+ */
+class VisaCheckoutProfileCache {
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > mMaxSize;
+        }
+    };
+
+    private int mMaxSize;
+
+    VisaCheckoutProfileCache(int maxSize) {
+        mMaxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * @return the cached template if it was prepared for this exact {@link Configuration}, {@code null} otherwise.
+     */
+    synchronized VisaCheckoutProfileTemplate get(Configuration configuration) {
+        Entry entry = find(configuration);
+        return entry == null ? null : entry.mTemplate;
+    }
+
+    /**
+     * @return the cached template for the {@link Configuration}, creating it if no template has its fingerprint.
+     */
+    synchronized VisaCheckoutProfileTemplate getOrCreate(Configuration configuration) {
+        Entry entry = find(configuration);
+        if (entry != null) {
+            return entry.mTemplate;
+        }
+
+        String fingerprint = fingerprint(configuration);
+        entry = mEntries.get(fingerprint);
+        if (entry == null) {
+            entry = new Entry(fingerprint, VisaCheckoutProfileTemplate.fromConfiguration(configuration));
+            mEntries.put(fingerprint, entry);
+        }
+
+        entry.mConfiguration = configuration;
+        return entry.mTemplate;
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        mMaxSize = Math.max(1, maxSize);
+        while (mEntries.size() > mMaxSize) {
+            mEntries.remove(mEntries.keySet().iterator().next());
+        }
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * Compares references only, the cache holds few templates so this is cheaper than computing the fingerprint. A
+     * match counts as a use of the template.
+     */
+    private Entry find(Configuration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+
+        for (Entry entry : mEntries.values()) {
+            if (entry.mConfiguration == configuration) {
+                return mEntries.get(entry.mFingerprint);
+            }
+        }
+
+        return null;
+    }
+
+    static String fingerprint(Configuration configuration) {
+        VisaCheckoutConfiguration visaCheckoutConfiguration = configuration.getVisaCheckout();
+        return fingerprint(visaCheckoutConfiguration.getApiKey(), configuration.getEnvironment(),
+                visaCheckoutConfiguration.getExternalClientId(), visaCheckoutConfiguration.getAcceptedCardBrands());
+    }
+
+    static String fingerprint(String apiKey, String environment, String externalClientId,
+            List<String> acceptedCardBrands) {
+        StringBuilder fingerprint = new StringBuilder()
+                .append(apiKey).append('\n')
+                .append(environment).append('\n')
+                .append(externalClientId);
+
+        for (String cardBrand : acceptedCardBrands) {
+            fingerprint.append('\n').append(cardBrand);
+        }
+
+        return fingerprint.toString();
+    }
+
+    private static class Entry {
+
+        private final String mFingerprint;
+        private final VisaCheckoutProfileTemplate mTemplate;
+        private Configuration mConfiguration;
+
+        Entry(String fingerprint, VisaCheckoutProfileTemplate template) {
+            mFingerprint = fingerprint;
+            mTemplate = template;
+        }
+    }
+}
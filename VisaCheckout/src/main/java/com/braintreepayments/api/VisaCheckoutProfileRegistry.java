@@ -0,0 +1,152 @@
+package com.braintreepayments.api;
+
+import android.os.SystemClock;
+
+import com.braintreepayments.api.models.Authorization;
+import com.braintreepayments.api.models.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the {@link VisaCheckoutProfileTemplate}s of several merchant accounts at the same time, so that a
+ * {@link BraintreeFragment} of another merchant account can be handed a profile builder before its configuration
+ * was fetched.
+ *
+ * Templates are keyed by the configuration url of the {@link Authorization}, which identifies the merchant and the
+ * environment and is the same for every client token of a merchant. The registry is bounded, once it holds more than
+ * its maximum size the least recently used template is evicted. A template is only handed out without a
+ * configuration until it is older than the configuration snapshot TTL, or {@link #DEFAULT_TTL_MILLIS} while
+ * snapshots are disabled, and its fingerprint is checked once the configuration arrives.
+ */
+class VisaCheckoutProfileRegistry {
+
+    /**
+     * How long a template is handed out without a configuration while configuration snapshots are disabled.
+     */
+    static final long DEFAULT_TTL_MILLIS = 15 * 60 * 1000;
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > mMaxSize;
+        }
+    };
+
+    private int mMaxSize;
+
+    VisaCheckoutProfileRegistry(int maxSize) {
+        mMaxSize = Math.max(0, maxSize);
+    }
+
+    static String key(Authorization authorization) {
+        return authorization == null ? null : authorization.getConfigUrl();
+    }
+
+    /**
+     * @param configuration the {@link Configuration} of the caller, or {@code null} if it was not fetched yet.
+     * @return the template registered for {@code key}, or {@code null} if there is none, it was prepared for a
+     * different {@link Configuration} than {@code configuration}, or {@code configuration} is {@code null} and the
+     * template expired.
+     */
+    VisaCheckoutProfileTemplate get(String key, Configuration configuration) {
+        return get(key, configuration, SystemClock.elapsedRealtime());
+    }
+
+    synchronized VisaCheckoutProfileTemplate get(String key, Configuration configuration, long now) {
+        Entry entry = find(key, configuration, now);
+        return entry == null ? null : entry.mTemplate;
+    }
+
+    /**
+     * @return the fingerprint of the {@link Configuration} the template for {@code key} was prepared from, see
+     * {@link VisaCheckoutProfileCache#fingerprint(Configuration)}, or {@code null} if there is none.
+     */
+    synchronized String getFingerprint(String key) {
+        Entry entry = key == null ? null : mEntries.get(key);
+        return entry == null ? null : entry.mFingerprint;
+    }
+
+    /**
+     * Registers the template prepared from {@code configuration} for {@code key}, replacing the previous one, and
+     * evicts the least recently used template if the registry is full.
+     */
+    void put(String key, Configuration configuration, VisaCheckoutProfileTemplate template) {
+        put(key, configuration, template, SystemClock.elapsedRealtime());
+    }
+
+    synchronized void put(String key, Configuration configuration, VisaCheckoutProfileTemplate template, long now) {
+        if (key == null || template == null) {
+            return;
+        }
+
+        Entry previous = mEntries.get(key);
+        if (previous != null && previous.mConfiguration == configuration && previous.mTemplate == template) {
+            return;
+        }
+
+        mEntries.put(key, new Entry(configuration, template, VisaCheckoutProfileCache.fingerprint(configuration),
+                now));
+    }
+
+    synchronized void remove(String key) {
+        if (key != null) {
+            mEntries.remove(key);
+        }
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        mMaxSize = Math.max(0, maxSize);
+        while (mEntries.size() > mMaxSize) {
+            mEntries.remove(mEntries.keySet().iterator().next());
+        }
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+    private Entry find(String key, Configuration configuration, long now) {
+        if (key == null) {
+            return null;
+        }
+
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (configuration != null) {
+            return configuration == entry.mConfiguration ? entry : null;
+        }
+
+        long ttlMillis = VisaCheckoutConfigurationSnapshot.isEnabled() ? VisaCheckoutConfigurationSnapshot.getTtl()
+                : DEFAULT_TTL_MILLIS;
+        if (now - entry.mRegisteredAt >= ttlMillis || now < entry.mRegisteredAt) {
+            mEntries.remove(key);
+            return null;
+        }
+
+        return entry;
+    }
+
+    private static class Entry {
+
+        private final Configuration mConfiguration;
+        private final VisaCheckoutProfileTemplate mTemplate;
+        private final String mFingerprint;
+        private final long mRegisteredAt;
+
+        Entry(Configuration configuration, VisaCheckoutProfileTemplate template, String fingerprint,
+                long registeredAt) {
+            mConfiguration = configuration;
+            mTemplate = template;
+            mFingerprint = fingerprint;
+            mRegisteredAt = registeredAt;
+        }
+    }
+}
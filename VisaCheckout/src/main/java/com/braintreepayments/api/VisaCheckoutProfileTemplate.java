@@ -0,0 +1,60 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.models.VisaCheckoutConfiguration;
+import com.visa.checkout.Environment;
+import com.visa.checkout.Profile.DataLevel;
+import com.visa.checkout.Profile.ProfileBuilder;
+
+import java.util.List;
+
+/**
+ * The Braintree owned values of a Visa Checkout {@link ProfileBuilder}, resolved once from a {@link Configuration}
+ * so that new {@link ProfileBuilder}s can be handed out without re-reading the configuration. Instances are
+ * immutable and safe to share, each call to {@link #newProfileBuilder()} returns an independent copy.
+ */
+class VisaCheckoutProfileTemplate {
+
+    private final String mMerchantApiKey;
+    private final String mEnvironment;
+    private final String[] mCardBrands;
+    private final String mExternalClientId;
+
+    private VisaCheckoutProfileTemplate(String merchantApiKey, String environment, String[] cardBrands,
+            String externalClientId) {
+        mMerchantApiKey = merchantApiKey;
+        mEnvironment = environment;
+        mCardBrands = cardBrands;
+        mExternalClientId = externalClientId;
+    }
+
+    static VisaCheckoutProfileTemplate fromConfiguration(Configuration configuration) {
+        VisaCheckoutConfiguration visaCheckoutConfiguration = configuration.getVisaCheckout();
+        return fromValues(visaCheckoutConfiguration.getApiKey(), configuration.getEnvironment(),
+                visaCheckoutConfiguration.getAcceptedCardBrands(), visaCheckoutConfiguration.getExternalClientId());
+    }
+
+    /**
+     * @param braintreeEnvironment the Braintree environment, e.g. {@code production}.
+     */
+    static VisaCheckoutProfileTemplate fromValues(String merchantApiKey, String braintreeEnvironment,
+            List<String> acceptedCardBrands, String externalClientId) {
+        String environment = Environment.SANDBOX;
+
+        if ("production".equals(braintreeEnvironment)) {
+            environment = Environment.PRODUCTION;
+        }
+
+        return new VisaCheckoutProfileTemplate(merchantApiKey, environment,
+                VisaCheckoutCardBrands.toCardBrands(acceptedCardBrands), externalClientId);
+    }
+
+    ProfileBuilder newProfileBuilder() {
+        ProfileBuilder profileBuilder = new ProfileBuilder(mMerchantApiKey, mEnvironment);
+        profileBuilder.setCardBrands(mCardBrands.clone());
+        profileBuilder.setDataLevel(DataLevel.FULL);
+        profileBuilder.setExternalClientId(mExternalClientId);
+
+        return profileBuilder;
+    }
+}
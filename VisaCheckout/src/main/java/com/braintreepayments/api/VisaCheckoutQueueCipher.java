@@ -0,0 +1,106 @@
+package com.braintreepayments.api;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Encrypts the entries of the {@link VisaCheckoutOfflineQueue} with AES-GCM. The key is generated in and never leaves
+ * the Android Keystore, so the stored entries can not be read by copying the app's data.
+ */
+class VisaCheckoutQueueCipher {
+
+    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "com.braintreepayments.api.visacheckout.OFFLINE_QUEUE";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SecretKey mKey;
+
+    VisaCheckoutQueueCipher(SecretKey key) {
+        mKey = key;
+    }
+
+    /**
+     * @return a {@link VisaCheckoutQueueCipher} backed by the Android Keystore, or {@code null} if the device does
+     * not support AES keys in the Android Keystore. Nothing is queued without a cipher.
+     */
+    static VisaCheckoutQueueCipher fromAndroidKeyStore() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return null;
+        }
+
+        try {
+            return new VisaCheckoutQueueCipher(getOrCreateKey());
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            // some devices fail Keystore operations with a ProviderException
+            return null;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static SecretKey getOrCreateKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
+        keyStore.load(null);
+        if (keyStore.containsAlias(KEY_ALIAS)) {
+            return (SecretKey) keyStore.getKey(KEY_ALIAS, null);
+        }
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEY_STORE);
+        keyGenerator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return keyGenerator.generateKey();
+    }
+
+    /**
+     * @return the Base64 encoded IV followed by the ciphertext of {@code plaintext}.
+     */
+    String encrypt(String plaintext) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, mKey);
+
+        byte[] iv = cipher.getIV();
+        byte[] ciphertext = cipher.doFinal(plaintext.getBytes(UTF_8));
+        byte[] output = Arrays.copyOf(iv, iv.length + ciphertext.length);
+        System.arraycopy(ciphertext, 0, output, iv.length, ciphertext.length);
+
+        return Base64.encodeToString(output, Base64.NO_WRAP);
+    }
+
+    String decrypt(String encrypted) throws GeneralSecurityException {
+        byte[] input;
+        try {
+            input = Base64.decode(encrypted, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException(e);
+        }
+
+        if (input.length <= IV_LENGTH) {
+            throw new GeneralSecurityException("Encrypted entry is too short.");
+        }
+
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, mKey, new GCMParameterSpec(TAG_LENGTH_BITS, input, 0, IV_LENGTH));
+
+        return new String(cipher.doFinal(input, IV_LENGTH, input.length - IV_LENGTH), UTF_8);
+    }
+}
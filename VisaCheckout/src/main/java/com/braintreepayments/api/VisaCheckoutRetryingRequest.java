@@ -0,0 +1,383 @@
+package com.braintreepayments.api;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.braintreepayments.api.exceptions.BraintreeException;
+import com.braintreepayments.api.exceptions.DownForMaintenanceException;
+import com.braintreepayments.api.exceptions.RateLimitException;
+import com.braintreepayments.api.exceptions.ServerException;
+import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+import com.braintreepayments.api.models.VisaCheckoutRetryPolicy;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tokenizes a Visa Checkout payment against the REST endpoint, retrying according to a
+ * {@link VisaCheckoutRetryPolicy}. Every attempt sends the same idempotency key, derived from the Visa Checkout call
+ * id, so that retried and hedged requests for the same payment can be correlated. Traced payments also send
+ * a {@code traceparent} header, see {@link VisaCheckoutTracing}.
+ *
+ * The request body is built and the response parsed off the main thread, on the stage executor if one is given.
+ * Only the result is posted to the main thread. When the policy allows a single attempt the body is streamed from the
+ * {@link VisaCheckoutBuilder} into the connection. Otherwise it is built once before the first attempt and shared by
+ * all attempts, so the builder can be reused once the callback was called even if a hedged attempt is still in
+ * flight. A canceled request reports when it stopped reading the builder, see {@link #cancel(Runnable)}.
+ */
+class VisaCheckoutRetryingRequest {
+
+    // attempts block on the network, so each gets its own thread and a stalled attempt cannot delay the timers
+    private static final ExecutorService IO_EXECUTOR = Executors.newCachedThreadPool(
+            new DaemonThreadFactory("VisaCheckoutRequest"));
+    // only schedules hedges and retries, which hand the attempt over to IO_EXECUTOR
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            new DaemonThreadFactory("VisaCheckoutRequestTimer"));
+
+    private final VisaCheckoutHttpClient mHttpClient;
+    private final String mPath;
+    private final VisaCheckoutBuilder mVisaCheckoutBuilder;
+    private final String mCallId;
+    private final String mResponsePaymentMethodType;
+    private final VisaCheckoutRetryPolicy mRetryPolicy;
+    private final PaymentMethodNonceCallback mCallback;
+    private final Executor mStageExecutor;
+    private final Map<String, String> mHeaders;
+    private final Handler mMainThreadHandler;
+    private final Random mRandom;
+
+    private final List<VisaCheckoutHttpClient.Request> mRequestsInFlight = new ArrayList<>();
+
+    private int mAttemptsStarted;
+    private int mAttemptsInFlight;
+    private int mBuilderReaders;
+    private boolean mCompleted;
+    private Runnable mOnCanceled;
+
+    VisaCheckoutRetryingRequest(VisaCheckoutHttpClient httpClient, String path, VisaCheckoutBuilder visaCheckoutBuilder,
+            VisaCheckoutRetryPolicy retryPolicy, PaymentMethodNonceCallback callback) {
+        this(httpClient, path, visaCheckoutBuilder, retryPolicy, null, callback);
+    }
+
+    /**
+     * @param stageExecutor runs serialization and parsing, or {@code null} to run them on the request threads.
+     */
+    VisaCheckoutRetryingRequest(VisaCheckoutHttpClient httpClient, String path, VisaCheckoutBuilder visaCheckoutBuilder,
+            VisaCheckoutRetryPolicy retryPolicy, Executor stageExecutor, PaymentMethodNonceCallback callback) {
+        mHttpClient = httpClient;
+        mPath = path;
+        mVisaCheckoutBuilder = visaCheckoutBuilder;
+        mCallId = visaCheckoutBuilder.getCallId();
+        mResponsePaymentMethodType = visaCheckoutBuilder.getResponsePaymentMethodType();
+        mRetryPolicy = retryPolicy;
+        mCallback = callback;
+        mStageExecutor = stageExecutor;
+        mMainThreadHandler = new Handler(Looper.getMainLooper());
+        mRandom = new Random();
+
+        mHeaders = new HashMap<>();
+        mHeaders.put(VisaCheckoutHttpClient.IDEMPOTENCY_KEY_HEADER, idempotencyKey(mCallId));
+
+        VisaCheckoutTracing.Trace trace = VisaCheckoutTracing.get(mCallId);
+        if (trace != null) {
+            mHeaders.put(VisaCheckoutHttpClient.TRACEPARENT_HEADER, trace.getTraceparent());
+        }
+    }
+
+    void start() {
+        Executor executor = mStageExecutor == null ? IO_EXECUTOR : mStageExecutor;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mRetryPolicy.getMaxAttempts() <= 1 && mRetryPolicy.getHedgeDelayMillis() <= 0) {
+                    startAttempt(null);
+                    return;
+                }
+
+                synchronized (VisaCheckoutRetryingRequest.this) {
+                    if (mCompleted) {
+                        return;
+                    }
+
+                    mBuilderReaders++;
+                }
+
+                String body;
+                long serializationStartNanos = VisaCheckoutMetrics.start();
+                try {
+                    body = mVisaCheckoutBuilder.build();
+                } finally {
+                    releaseBuilder();
+                }
+                VisaCheckoutMetrics.record(VisaCheckoutPhase.REQUEST_SERIALIZATION, mCallId, serializationStartNanos,
+                        true);
+
+                startAttempt(body);
+                scheduleHedge(body);
+            }
+        });
+    }
+
+    /**
+     * Stops all further attempts and closes the connections of attempts in flight. The callback will not be called.
+     */
+    void cancel() {
+        cancel(null);
+    }
+
+    /**
+     * Like {@link #cancel()}, but runs {@code onCanceled} instead of the callback once the
+     * {@link VisaCheckoutBuilder} is no longer read, which may be after a streamed attempt's connection was closed.
+     * {@code onCanceled} is not run if the request already completed, the callback is then called as usual.
+     */
+    void cancel(Runnable onCanceled) {
+        List<VisaCheckoutHttpClient.Request> requestsInFlight;
+        synchronized (this) {
+            if (mCompleted) {
+                return;
+            }
+
+            mCompleted = true;
+            requestsInFlight = new ArrayList<>(mRequestsInFlight);
+            if (mBuilderReaders > 0) {
+                mOnCanceled = onCanceled;
+                onCanceled = null;
+            }
+        }
+
+        for (VisaCheckoutHttpClient.Request request : requestsInFlight) {
+            request.cancel();
+        }
+
+        if (onCanceled != null) {
+            onCanceled.run();
+        }
+    }
+
+    /**
+     * Called when serializing or streaming the body stopped reading the {@link VisaCheckoutBuilder}, runs the pending
+     * {@code onCanceled} of {@link #cancel(Runnable)} once nothing reads it any more.
+     */
+    private void releaseBuilder() {
+        Runnable onCanceled;
+        synchronized (this) {
+            mBuilderReaders--;
+            if (mBuilderReaders > 0 || mOnCanceled == null) {
+                return;
+            }
+
+            onCanceled = mOnCanceled;
+            mOnCanceled = null;
+        }
+
+        onCanceled.run();
+    }
+
+    /**
+     * @param body the request body shared by all attempts, or {@code null} to stream it from the builder.
+     */
+    private void startAttempt(final String body) {
+        final VisaCheckoutHttpClient.Request request = new VisaCheckoutHttpClient.Request(mHeaders);
+        synchronized (this) {
+            if (mCompleted || mAttemptsStarted >= mRetryPolicy.getMaxAttempts()) {
+                return;
+            }
+
+            mAttemptsStarted++;
+            mAttemptsInFlight++;
+            mRequestsInFlight.add(request);
+            if (body == null) {
+                mBuilderReaders++;
+            }
+        }
+
+        IO_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                String callId = mCallId;
+                String responseBody;
+                long networkStartNanos = VisaCheckoutMetrics.start();
+                try {
+                    if (body == null) {
+                        try {
+                            responseBody = mHttpClient.post(mPath, mVisaCheckoutBuilder, request);
+                        } finally {
+                            releaseBuilder();
+                        }
+                    } else {
+                        responseBody = mHttpClient.post(mPath, body, request);
+                    }
+                    VisaCheckoutMetrics.record(VisaCheckoutPhase.NETWORK, callId, networkStartNanos, true);
+                } catch (Exception e) {
+                    VisaCheckoutMetrics.record(VisaCheckoutPhase.NETWORK, callId, networkStartNanos, false);
+                    onFailure(request, body, e);
+                    return;
+                }
+
+                if (mStageExecutor == null) {
+                    parse(request, body, responseBody);
+                    return;
+                }
+
+                final String response = responseBody;
+                mStageExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        parse(request, body, response);
+                    }
+                });
+            }
+        });
+    }
+
+    private void parse(VisaCheckoutHttpClient.Request request, String body, String responseBody) {
+        String callId = mCallId;
+        long parsingStartNanos = VisaCheckoutMetrics.start();
+        try {
+            PaymentMethodNonce paymentMethodNonce = VisaCheckoutTokenizationClient.parseRestResponse(responseBody,
+                    mResponsePaymentMethodType);
+            VisaCheckoutMetrics.record(VisaCheckoutPhase.RESPONSE_PARSING, callId, parsingStartNanos, true);
+            onSuccess(request, paymentMethodNonce);
+        } catch (Exception e) {
+            VisaCheckoutMetrics.record(VisaCheckoutPhase.RESPONSE_PARSING, callId, parsingStartNanos, false);
+            onFailure(request, body, e);
+        }
+    }
+
+    private void scheduleHedge(final String body) {
+        if (mRetryPolicy.getHedgeDelayMillis() <= 0) {
+            return;
+        }
+
+        TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (VisaCheckoutRetryingRequest.this) {
+                    if (mCompleted || mAttemptsInFlight == 0) {
+                        return;
+                    }
+                }
+
+                startAttempt(body);
+                scheduleHedge(body);
+            }
+        }, mRetryPolicy.getHedgeDelayMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void onSuccess(VisaCheckoutHttpClient.Request request, final PaymentMethodNonce paymentMethodNonce) {
+        synchronized (this) {
+            mAttemptsInFlight--;
+            mRequestsInFlight.remove(request);
+            if (mCompleted) {
+                return;
+            }
+
+            mCompleted = true;
+        }
+
+        mMainThreadHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.success(paymentMethodNonce);
+            }
+        });
+    }
+
+    private void onFailure(VisaCheckoutHttpClient.Request request, final String body, final Exception exception) {
+        int retry;
+        synchronized (this) {
+            mAttemptsInFlight--;
+            mRequestsInFlight.remove(request);
+            if (mCompleted || mAttemptsInFlight > 0) {
+                // another attempt is still in flight and will decide the outcome
+                return;
+            }
+
+            if (!isRetryable(exception) || mAttemptsStarted >= mRetryPolicy.getMaxAttempts()) {
+                mCompleted = true;
+                retry = 0;
+            } else {
+                retry = mAttemptsStarted;
+            }
+        }
+
+        if (retry > 0) {
+            TIMER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    startAttempt(body);
+                    scheduleHedge(body);
+                }
+            }, mRetryPolicy.getBackoffMillis(retry, mRandom), TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        mMainThreadHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.failure(exception);
+            }
+        });
+    }
+
+    /**
+     * Network errors, timeouts, 5xx responses and rate limiting are retried. Authorization and validation errors
+     * are not, and neither are unexpected responses, which are usually not transient.
+     */
+    static boolean isRetryable(Exception exception) {
+        if (exception instanceof ServerException || exception instanceof DownForMaintenanceException
+                || exception instanceof RateLimitException) {
+            return true;
+        }
+
+        return exception instanceof IOException && !(exception instanceof BraintreeException);
+    }
+
+    static String idempotencyKey(String callId) {
+        if (callId == null) {
+            return UUID.randomUUID().toString();
+        }
+
+        try {
+            return UUID.nameUUIDFromBytes(("visacheckout:" + callId).getBytes("UTF-8")).toString();
+        } catch (UnsupportedEncodingException e) {
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    /**
+     * Creates daemon threads, so that idle request threads do not keep the process alive.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, mName + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
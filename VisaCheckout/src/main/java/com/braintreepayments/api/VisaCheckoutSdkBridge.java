@@ -0,0 +1,148 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.exceptions.ConfigurationException;
+import com.braintreepayments.api.interfaces.BraintreeErrorListener;
+import com.braintreepayments.api.interfaces.BraintreeResponseListener;
+import com.braintreepayments.api.interfaces.ConfigurationListener;
+import com.braintreepayments.api.interfaces.VisaCheckoutConfigurationChangedListener;
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+import com.visa.checkout.Profile.ProfileBuilder;
+import com.visa.checkout.VisaPaymentSummary;
+
+/**
+ * The code of {@link VisaCheckout} that calls into the Visa Checkout SDK, i.e. creates {@link ProfileBuilder}s and
+ * reads {@link VisaPaymentSummary}s. {@link VisaCheckout} only passes SDK types through, so that loading and
+ * verifying it, e.g. to configure the module when the app starts, does not load any Visa Checkout SDK class. This
+ * class is loaded when the first profile is created or the first payment is tokenized.
+ */
+class VisaCheckoutSdkBridge {
+
+    static void createProfileBuilder(final BraintreeFragment fragment, final VisaCheckoutCall call,
+            final BraintreeResponseListener<ProfileBuilder> profileBuilderResponseListener,
+            final BraintreeErrorListener errorListener) {
+        final long startNanos = VisaCheckoutMetrics.start();
+        Configuration currentConfiguration = fragment.getConfiguration();
+        String registryKey = VisaCheckoutProfileRegistry.key(fragment.getAuthorization());
+        VisaCheckoutProfileTemplate preparedProfile = VisaCheckout.sProfileCache.get(currentConfiguration);
+        if (preparedProfile == null) {
+            preparedProfile = VisaCheckout.sProfileRegistry.get(registryKey, currentConfiguration);
+        }
+
+        if (preparedProfile != null) {
+            if (call == null || call.finish()) {
+                profileBuilderResponseListener.onResponse(newProfileBuilder(preparedProfile, startNanos));
+            }
+
+            // a template handed out before the configuration was fetched may be outdated
+            if (currentConfiguration == null) {
+                revalidate(fragment, VisaCheckout.sProfileRegistry.getFingerprint(registryKey));
+            }
+            return;
+        }
+
+        if (currentConfiguration == null && registryKey != null && VisaCheckoutConfigurationSnapshot.isEnabled()) {
+            VisaCheckoutConfigurationSnapshot.loadInBackground(fragment.getApplicationContext(), registryKey,
+                    new BraintreeResponseListener<VisaCheckoutConfigurationSnapshot>() {
+                        @Override
+                        public void onResponse(VisaCheckoutConfigurationSnapshot snapshot) {
+                            // the configuration may have been fetched while the snapshot was read
+                            if (fragment.getConfiguration() != null) {
+                                snapshot = null;
+                            }
+
+                            createProfileBuilderWithSnapshot(fragment, call, snapshot, startNanos,
+                                    profileBuilderResponseListener, errorListener);
+                        }
+                    });
+            return;
+        }
+
+        createProfileBuilderWithSnapshot(fragment, call, null, startNanos, profileBuilderResponseListener,
+                errorListener);
+    }
+
+    private static void createProfileBuilderWithSnapshot(final BraintreeFragment fragment,
+            final VisaCheckoutCall call, VisaCheckoutConfigurationSnapshot snapshot, final long startNanos,
+            final BraintreeResponseListener<ProfileBuilder> profileBuilderResponseListener,
+            final BraintreeErrorListener errorListener) {
+        if (snapshot != null && VisaCheckout.isVisaCheckoutSDKAvailable()) {
+            if (call == null || call.finish()) {
+                profileBuilderResponseListener.onResponse(newProfileBuilder(snapshot.toProfileTemplate(),
+                        startNanos));
+            }
+
+            revalidate(fragment, snapshot.fingerprint());
+            return;
+        }
+
+        fragment.waitForConfiguration(new ConfigurationListener() {
+            @Override
+            public void onConfigurationFetched(Configuration configuration) {
+                VisaCheckoutMetrics.record(VisaCheckoutPhase.CONFIGURATION_WAIT, null, startNanos, true);
+                if (call != null && !call.finish()) {
+                    return;
+                }
+
+                long sdkProbeStartNanos = VisaCheckoutMetrics.start();
+                boolean sdkAvailable = VisaCheckout.isVisaCheckoutSDKAvailable();
+                VisaCheckoutMetrics.record(VisaCheckoutPhase.SDK_PROBE, null, sdkProbeStartNanos, sdkAvailable);
+
+                long profileStartNanos = VisaCheckoutMetrics.start();
+                VisaCheckoutProfileTemplate profileTemplate = VisaCheckout.prepareProfile(fragment, configuration);
+                if (profileTemplate == null) {
+                    VisaCheckoutMetrics.record(VisaCheckoutPhase.CREATE_PROFILE_BUILDER, null, startNanos, false);
+                    errorListener.onError(new ConfigurationException("Visa Checkout is not enabled."));
+                    return;
+                }
+
+                ProfileBuilder profileBuilder = profileTemplate.newProfileBuilder();
+                VisaCheckoutMetrics.record(VisaCheckoutPhase.PROFILE_CONSTRUCTION, null, profileStartNanos, true);
+                VisaCheckoutMetrics.record(VisaCheckoutPhase.CREATE_PROFILE_BUILDER, null, startNanos, true);
+
+                profileBuilderResponseListener.onResponse(profileBuilder);
+            }
+        });
+    }
+
+    private static ProfileBuilder newProfileBuilder(VisaCheckoutProfileTemplate profileTemplate, long startNanos) {
+        long profileStartNanos = VisaCheckoutMetrics.start();
+        ProfileBuilder profileBuilder = profileTemplate.newProfileBuilder();
+        VisaCheckoutMetrics.record(VisaCheckoutPhase.PROFILE_CONSTRUCTION, null, profileStartNanos, true);
+        VisaCheckoutMetrics.record(VisaCheckoutPhase.CREATE_PROFILE_BUILDER, null, startNanos, true);
+
+        return profileBuilder;
+    }
+
+    /**
+     * Fetches the configuration after a {@link ProfileBuilder} was created before it was known, from a snapshot or a
+     * registered template, and notifies the {@link VisaCheckoutConfigurationChangedListener} if its Visa Checkout
+     * values differ from {@code fingerprint}.
+     */
+    private static void revalidate(final BraintreeFragment fragment, final String fingerprint) {
+        fragment.waitForConfiguration(new ConfigurationListener() {
+            @Override
+            public void onConfigurationFetched(Configuration configuration) {
+                VisaCheckoutProfileTemplate profileTemplate = VisaCheckout.prepareProfile(fragment, configuration);
+                if (profileTemplate != null
+                        && VisaCheckoutProfileCache.fingerprint(configuration).equals(fingerprint)) {
+                    return;
+                }
+
+                VisaCheckoutConfigurationChangedListener listener = VisaCheckout.sConfigurationChangedListener;
+                if (listener != null) {
+                    listener.onConfigurationChanged(profileTemplate == null ? null
+                            : profileTemplate.newProfileBuilder());
+                }
+            }
+        });
+    }
+
+    static String getCallId(VisaPaymentSummary visaPaymentSummary) {
+        return visaPaymentSummary == null ? null : visaPaymentSummary.getCallId();
+    }
+
+    static String getCardBrand(VisaPaymentSummary visaPaymentSummary) {
+        return visaPaymentSummary == null ? null : visaPaymentSummary.getCardBrand();
+    }
+}
@@ -0,0 +1,396 @@
+package com.braintreepayments.api;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.braintreepayments.api.exceptions.BraintreeException;
+import com.braintreepayments.api.exceptions.ErrorWithResponse;
+import com.braintreepayments.api.interfaces.ConfigurationListener;
+import com.braintreepayments.api.interfaces.HttpResponseCallback;
+import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+import com.braintreepayments.api.models.VisaCheckoutLazyNonce;
+import com.braintreepayments.api.models.VisaCheckoutNonce;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+import com.braintreepayments.api.models.VisaCheckoutRetryPolicy;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tokenizes Visa Checkout payments. Uses the Braintree GraphQL API when the gateway enables it for Visa Checkout and
+ * falls back to the REST endpoint used by {@link TokenizationClient} otherwise, or when the GraphQL request fails
+ * for a reason other than a validation error. When a {@link VisaCheckoutRetryPolicy} is set, the REST endpoint is
+ * always used so that every attempt can carry the same idempotency key. When a stage executor is set, serialization
+ * and parsing run on it instead of the main thread. With lazy nonce parsing enabled, REST responses are parsed into
+ * {@link VisaCheckoutLazyNonce}s, so {@link TokenizationClient} is not used. With compression enabled, requests are
+ * always sent gzip encoded to the REST endpoint with the module's own http client. The same applies with tracing
+ * enabled, since only that client can send the {@code traceparent} header.
+ */
+class VisaCheckoutTokenizationClient {
+
+    static final String GRAPHQL_TOKENIZE_FEATURE = "tokenize_visa_checkout_cards";
+
+    private static final String DATA_KEY = "data";
+    private static final String TOKENIZE_KEY = "tokenizeVisaCheckoutCard";
+    private static final String TOKEN_KEY = "token";
+    private static final String CREDIT_CARD_KEY = "creditCard";
+    private static final String BRAND_KEY = "brand";
+    private static final String LAST_FOUR_KEY = "last4";
+    private static final String BIN_DATA_KEY = "binData";
+    private static final String BILLING_ADDRESS_KEY = "billingAddress";
+    private static final String SHIPPING_ADDRESS_KEY = "shippingAddress";
+    private static final String USER_DATA_KEY = "userData";
+    private static final String CALL_ID_KEY = "callId";
+    private static final String API_RESOURCE_KEY = "visaCheckoutCards";
+    private static final String PAYMENT_METHOD_ENDPOINT = "/v1/payment_methods/";
+
+    private static final VisaCheckoutRetryPolicy SINGLE_ATTEMPT = new VisaCheckoutRetryPolicy().maxAttempts(1);
+
+    private static volatile boolean sLazyNonceParsing;
+    private static volatile boolean sCompression;
+
+    static void setLazyNonceParsing(boolean lazyNonceParsing) {
+        sLazyNonceParsing = lazyNonceParsing;
+    }
+
+    /**
+     * Compressed requests are sent to the REST endpoint with the module's {@link VisaCheckoutHttpClient}, since
+     * neither {@link TokenizationClient} nor the GraphQL client compress request bodies.
+     */
+    static void setCompression(boolean compression) {
+        sCompression = compression;
+        VisaCheckoutHttpClient.setCompressionEnabled(compression);
+    }
+
+    /**
+     * @return {@code true} if requests need headers or body encodings that only {@link VisaCheckoutHttpClient}
+     * supports.
+     */
+    private static boolean usesOwnHttpClient() {
+        return sCompression || VisaCheckoutTracing.isEnabled();
+    }
+
+    static void tokenize(final BraintreeFragment fragment, final VisaCheckoutBuilder visaCheckoutBuilder,
+            final PaymentMethodNonceCallback callback) {
+        tokenize(fragment, visaCheckoutBuilder, null, null, callback, null);
+    }
+
+    /**
+     * @param retryPolicy if not {@code null}, the payment is tokenized with the REST endpoint and retried according to
+     * the {@link VisaCheckoutRetryPolicy}, with an idempotency key sent on every attempt.
+     * @param stageExecutor if not {@code null}, the request is built and the response parsed on this executor and
+     * only the result is delivered on the main thread. REST requests are then sent with the module's own http client
+     * instead of {@link TokenizationClient}, which parses on the main thread.
+     * @param onCanceled if not {@code null}, run instead of {@code callback} once a canceled tokenization no longer
+     * reads {@code visaCheckoutBuilder}. It is not run when {@code callback} is still going to be called.
+     * @return a {@link CancellationSignal} that stops the request from being sent. Requests made with a
+     * {@link VisaCheckoutRetryPolicy} or a stage executor are also aborted if they are in flight. {@code callback}
+     * may still be called for requests that were already sent with the {@link BraintreeFragment}'s http clients.
+     */
+    static CancellationSignal tokenize(final BraintreeFragment fragment, final VisaCheckoutBuilder visaCheckoutBuilder,
+            final VisaCheckoutRetryPolicy retryPolicy, final Executor stageExecutor,
+            final PaymentMethodNonceCallback callback, final Runnable onCanceled) {
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        // decides whether a cancel stopped the tokenization before it started or is left to the started request
+        final AtomicBoolean started = new AtomicBoolean();
+        cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                if (started.compareAndSet(false, true) && onCanceled != null) {
+                    onCanceled.run();
+                }
+            }
+        });
+        fragment.waitForConfiguration(new ConfigurationListener() {
+            @Override
+            public void onConfigurationFetched(Configuration configuration) {
+                if (!started.compareAndSet(false, true)) {
+                    return;
+                }
+
+                if (retryPolicy != null) {
+                    tokenizeWithRequest(fragment, configuration, visaCheckoutBuilder, retryPolicy, stageExecutor,
+                            cancellationSignal, callback, onCanceled);
+                } else if (!usesOwnHttpClient()
+                        && configuration.getGraphQL().isFeatureEnabled(GRAPHQL_TOKENIZE_FEATURE)) {
+                    tokenizeGraphQL(fragment, configuration, visaCheckoutBuilder, stageExecutor, cancellationSignal,
+                            callback, onCanceled);
+                } else {
+                    tokenizeRest(fragment, configuration, visaCheckoutBuilder, stageExecutor, cancellationSignal,
+                            callback, onCanceled);
+                }
+            }
+        });
+
+        return cancellationSignal;
+    }
+
+    private static void tokenizeGraphQL(final BraintreeFragment fragment, final Configuration configuration,
+            final VisaCheckoutBuilder visaCheckoutBuilder, final Executor stageExecutor,
+            final CancellationSignal cancellationSignal, final PaymentMethodNonceCallback callback,
+            final Runnable onCanceled) {
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.graphql.tokenization.started");
+
+        final String callId = visaCheckoutBuilder.getCallId();
+        runOnStage(stageExecutor, new Runnable() {
+            @Override
+            public void run() {
+                String payload;
+                long serializationStartNanos = VisaCheckoutMetrics.start();
+                try {
+                    payload = visaCheckoutBuilder.buildGraphQL(fragment.getApplicationContext(),
+                            fragment.getAuthorization());
+                    VisaCheckoutMetrics.record(VisaCheckoutPhase.REQUEST_SERIALIZATION, callId,
+                            serializationStartNanos, true);
+                } catch (BraintreeException e) {
+                    VisaCheckoutMetrics.record(VisaCheckoutPhase.REQUEST_SERIALIZATION, callId,
+                            serializationStartNanos, false);
+                    runOnMainThread(stageExecutor, new Runnable() {
+                        @Override
+                        public void run() {
+                            fallBackToRest(fragment, configuration, visaCheckoutBuilder, stageExecutor,
+                                    cancellationSignal, callback, onCanceled);
+                        }
+                    });
+                    return;
+                }
+
+                postGraphQL(fragment, configuration, visaCheckoutBuilder, payload, stageExecutor, cancellationSignal,
+                        callback, onCanceled);
+            }
+        });
+    }
+
+    private static void postGraphQL(final BraintreeFragment fragment, final Configuration configuration,
+            final VisaCheckoutBuilder visaCheckoutBuilder, String payload, final Executor stageExecutor,
+            final CancellationSignal cancellationSignal, final PaymentMethodNonceCallback callback,
+            final Runnable onCanceled) {
+        final String callId = visaCheckoutBuilder.getCallId();
+        final long networkStartNanos = VisaCheckoutMetrics.start();
+        fragment.getGraphQLHttpClient().post(payload, new HttpResponseCallback() {
+            @Override
+            public void success(final String responseBody) {
+                VisaCheckoutMetrics.record(VisaCheckoutPhase.NETWORK, callId, networkStartNanos, true);
+
+                runOnStage(stageExecutor, new Runnable() {
+                    @Override
+                    public void run() {
+                        final VisaCheckoutNonce visaCheckoutNonce;
+                        long parsingStartNanos = VisaCheckoutMetrics.start();
+                        try {
+                            visaCheckoutNonce = parseGraphQLResponse(responseBody, callId);
+                            VisaCheckoutMetrics.record(VisaCheckoutPhase.RESPONSE_PARSING, callId, parsingStartNanos,
+                                    true);
+                        } catch (JSONException e) {
+                            VisaCheckoutMetrics.record(VisaCheckoutPhase.RESPONSE_PARSING, callId, parsingStartNanos,
+                                    false);
+                            runOnMainThread(stageExecutor, new Runnable() {
+                                @Override
+                                public void run() {
+                                    fallBackToRest(fragment, configuration, visaCheckoutBuilder, stageExecutor,
+                                            cancellationSignal, callback, onCanceled);
+                                }
+                            });
+                            return;
+                        }
+
+                        runOnMainThread(stageExecutor, new Runnable() {
+                            @Override
+                            public void run() {
+                                VisaCheckoutAnalytics.send(fragment, "visacheckout.graphql.tokenization.success");
+                                callback.success(visaCheckoutNonce);
+                            }
+                        });
+                    }
+                });
+            }
+
+            @Override
+            public void failure(Exception exception) {
+                VisaCheckoutMetrics.record(VisaCheckoutPhase.NETWORK, callId, networkStartNanos, false);
+                if (exception instanceof ErrorWithResponse) {
+                    VisaCheckoutAnalytics.send(fragment, "visacheckout.graphql.tokenization.failure");
+                    callback.failure(exception);
+                    return;
+                }
+
+                fallBackToRest(fragment, configuration, visaCheckoutBuilder, stageExecutor, cancellationSignal,
+                        callback, onCanceled);
+            }
+        });
+    }
+
+    private static void fallBackToRest(BraintreeFragment fragment, Configuration configuration,
+            VisaCheckoutBuilder visaCheckoutBuilder, Executor stageExecutor, CancellationSignal cancellationSignal,
+            PaymentMethodNonceCallback callback, Runnable onCanceled) {
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.graphql.tokenization.fallback");
+        tokenizeRest(fragment, configuration, visaCheckoutBuilder, stageExecutor, cancellationSignal, callback,
+                onCanceled);
+    }
+
+    private static void tokenizeRest(BraintreeFragment fragment, Configuration configuration,
+            VisaCheckoutBuilder visaCheckoutBuilder, Executor stageExecutor, CancellationSignal cancellationSignal,
+            PaymentMethodNonceCallback callback, Runnable onCanceled) {
+        if (stageExecutor != null || usesOwnHttpClient()) {
+            tokenizeWithRequest(fragment, configuration, visaCheckoutBuilder, SINGLE_ATTEMPT, stageExecutor,
+                    cancellationSignal, callback, onCanceled);
+        } else if (sLazyNonceParsing) {
+            tokenizeWithHttpClient(fragment, visaCheckoutBuilder, callback);
+        } else {
+            tokenizeWithTokenizationClient(fragment, visaCheckoutBuilder, callback);
+        }
+    }
+
+    private static void tokenizeWithRequest(BraintreeFragment fragment, Configuration configuration,
+            VisaCheckoutBuilder visaCheckoutBuilder, VisaCheckoutRetryPolicy retryPolicy, Executor stageExecutor,
+            CancellationSignal cancellationSignal, PaymentMethodNonceCallback callback, final Runnable onCanceled) {
+        visaCheckoutBuilder.setSessionId(fragment.getSessionId());
+        final VisaCheckoutRetryingRequest request = new VisaCheckoutRetryingRequest(
+                VisaCheckoutHttpClient.get(fragment, configuration), versionedPath(visaCheckoutBuilder),
+                visaCheckoutBuilder, retryPolicy, stageExecutor, callback);
+        cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                request.cancel(onCanceled);
+            }
+        });
+        request.start();
+    }
+
+    /**
+     * Serialization and parsing happen inside {@link TokenizationClient}, so they are reported as part of the
+     * {@link VisaCheckoutPhase#NETWORK} phase.
+     */
+    private static void tokenizeWithTokenizationClient(BraintreeFragment fragment,
+            VisaCheckoutBuilder visaCheckoutBuilder, final PaymentMethodNonceCallback callback) {
+        final String callId = visaCheckoutBuilder.getCallId();
+        final long startNanos = VisaCheckoutMetrics.start();
+        TokenizationClient.tokenize(fragment, visaCheckoutBuilder, new PaymentMethodNonceCallback() {
+            @Override
+            public void success(PaymentMethodNonce paymentMethodNonce) {
+                VisaCheckoutMetrics.record(VisaCheckoutPhase.NETWORK, callId, startNanos, true);
+                callback.success(paymentMethodNonce);
+            }
+
+            @Override
+            public void failure(Exception exception) {
+                VisaCheckoutMetrics.record(VisaCheckoutPhase.NETWORK, callId, startNanos, false);
+                callback.failure(exception);
+            }
+        });
+    }
+
+    /**
+     * Sends the same request as {@link TokenizationClient} with the {@link BraintreeFragment}'s http client, but parses
+     * the response with {@link #parseRestResponse(String, String)}.
+     */
+    private static void tokenizeWithHttpClient(BraintreeFragment fragment,
+            final VisaCheckoutBuilder visaCheckoutBuilder, final PaymentMethodNonceCallback callback) {
+        final String callId = visaCheckoutBuilder.getCallId();
+        visaCheckoutBuilder.setSessionId(fragment.getSessionId());
+
+        final long networkStartNanos = VisaCheckoutMetrics.start();
+        fragment.getHttpClient().post(versionedPath(visaCheckoutBuilder), visaCheckoutBuilder.build(),
+                new HttpResponseCallback() {
+                    @Override
+                    public void success(String responseBody) {
+                        VisaCheckoutMetrics.record(VisaCheckoutPhase.NETWORK, callId, networkStartNanos, true);
+
+                        PaymentMethodNonce paymentMethodNonce;
+                        long parsingStartNanos = VisaCheckoutMetrics.start();
+                        try {
+                            paymentMethodNonce = parseRestResponse(responseBody,
+                                    visaCheckoutBuilder.getResponsePaymentMethodType());
+                            VisaCheckoutMetrics.record(VisaCheckoutPhase.RESPONSE_PARSING, callId, parsingStartNanos,
+                                    true);
+                        } catch (JSONException e) {
+                            VisaCheckoutMetrics.record(VisaCheckoutPhase.RESPONSE_PARSING, callId, parsingStartNanos,
+                                    false);
+                            callback.failure(e);
+                            return;
+                        }
+
+                        callback.success(paymentMethodNonce);
+                    }
+
+                    @Override
+                    public void failure(Exception exception) {
+                        VisaCheckoutMetrics.record(VisaCheckoutPhase.NETWORK, callId, networkStartNanos, false);
+                        callback.failure(exception);
+                    }
+                });
+    }
+
+    /**
+     * Parses a response of the REST endpoint, into a {@link VisaCheckoutLazyNonce} if lazy nonce parsing is enabled.
+     */
+    static PaymentMethodNonce parseRestResponse(String responseBody, String responsePaymentMethodType)
+            throws JSONException {
+        if (sLazyNonceParsing) {
+            return VisaCheckoutLazyNonce.fromJson(responseBody);
+        }
+
+        return PaymentMethodNonce.parsePaymentMethodNonces(responseBody, responsePaymentMethodType);
+    }
+
+    private static void runOnStage(Executor stageExecutor, Runnable runnable) {
+        if (stageExecutor == null) {
+            runnable.run();
+        } else {
+            stageExecutor.execute(runnable);
+        }
+    }
+
+    private static void runOnMainThread(Executor stageExecutor, Runnable runnable) {
+        if (stageExecutor == null) {
+            runnable.run();
+        } else {
+            new Handler(Looper.getMainLooper()).post(runnable);
+        }
+    }
+
+    static String versionedPath(VisaCheckoutBuilder visaCheckoutBuilder) {
+        return PAYMENT_METHOD_ENDPOINT + visaCheckoutBuilder.getApiPath();
+    }
+
+    /**
+     * Maps a {@code tokenizeVisaCheckoutCard} response onto the REST response format so the resulting
+     * {@link VisaCheckoutNonce} is the same regardless of the API used. Fields the gateway returns as {@code null} are
+     * left out, as in REST responses.
+     */
+    static VisaCheckoutNonce parseGraphQLResponse(String responseBody, String callId) throws JSONException {
+        JSONObject tokenizeResponse = new JSONObject(responseBody)
+                .getJSONObject(DATA_KEY)
+                .getJSONObject(TOKENIZE_KEY);
+        JSONObject creditCard = tokenizeResponse.getJSONObject(CREDIT_CARD_KEY);
+
+        String lastFour = creditCard.getString(LAST_FOUR_KEY);
+        String lastTwo = lastFour.length() > 2 ? lastFour.substring(lastFour.length() - 2) : lastFour;
+        String responseCallId = tokenizeResponse.isNull(CALL_ID_KEY) ? callId : tokenizeResponse.getString(CALL_ID_KEY);
+
+        JSONObject visaCheckoutCard = new JSONObject()
+                .put("type", VisaCheckoutNonce.TYPE)
+                .put("nonce", tokenizeResponse.getString(TOKEN_KEY))
+                .put("description", "ending in ••" + lastTwo)
+                .put("details", new JSONObject()
+                        .put("cardType", creditCard.getString(BRAND_KEY))
+                        .put("lastTwo", lastTwo))
+                .putOpt(BILLING_ADDRESS_KEY, tokenizeResponse.optJSONObject(BILLING_ADDRESS_KEY))
+                .putOpt(SHIPPING_ADDRESS_KEY, tokenizeResponse.optJSONObject(SHIPPING_ADDRESS_KEY))
+                .putOpt(USER_DATA_KEY, tokenizeResponse.optJSONObject(USER_DATA_KEY))
+                .putOpt(BIN_DATA_KEY, creditCard.optJSONObject(BIN_DATA_KEY))
+                .put(CALL_ID_KEY, responseCallId);
+
+        return VisaCheckoutNonce.fromJson(new JSONObject()
+                .put(API_RESOURCE_KEY, new JSONArray().put(visaCheckoutCard))
+                .toString());
+    }
+}
@@ -0,0 +1,181 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.interfaces.VisaCheckoutSpanSink;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+import com.braintreepayments.api.models.VisaCheckoutSpan;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Traces Visa Checkout tokenizations. Each tokenization gets a {@link Trace} whose id is derived from the Visa
+ * Checkout call id, so that retries, offline replays and the gateway's logs of the same payment can be correlated.
+ * The trace of a call id is sent in a W3C {@code traceparent} header, which only {@link VisaCheckoutHttpClient} can
+ * send, so traced tokenizations always use it. Its phases, as reported to {@link VisaCheckoutMetrics}, are exported
+ * as child spans to the {@link VisaCheckoutSpanSink}, if one is set. Trace ids are reported with the batched
+ * analytics event of {@link VisaCheckoutAnalytics}.
+ */
+class VisaCheckoutTracing {
+
+    static final String ROOT_SPAN_NAME = "visacheckout.tokenize";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ConcurrentMap<String, Trace> sTraces = new ConcurrentHashMap<>();
+    private static final Random sRandom = new Random();
+
+    private static volatile boolean sEnabled;
+    private static volatile VisaCheckoutSpanSink sSink;
+
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+        if (!enabled) {
+            sTraces.clear();
+        }
+    }
+
+    static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    static void setSink(VisaCheckoutSpanSink sink) {
+        sSink = sink;
+    }
+
+    /**
+     * Starts the trace of a tokenization. Until it is finished, it is returned by {@link #get(String)} for
+     * {@code callId}.
+     *
+     * @return the {@link Trace}, or {@code null} if tracing is disabled.
+     */
+    static Trace start(String callId) {
+        if (!sEnabled) {
+            return null;
+        }
+
+        Trace trace = new Trace(traceId(callId), spanId(), callId);
+        if (callId != null) {
+            sTraces.put(callId, trace);
+        }
+
+        return trace;
+    }
+
+    /**
+     * @return the unfinished {@link Trace} of {@code callId}, or {@code null} if there is none.
+     */
+    static Trace get(String callId) {
+        return callId == null ? null : sTraces.get(callId);
+    }
+
+    /**
+     * Ends the root span of {@code trace} and exports it.
+     */
+    static void finish(Trace trace, boolean success) {
+        if (trace == null) {
+            return;
+        }
+
+        if (trace.mCallId != null) {
+            sTraces.remove(trace.mCallId, trace);
+        }
+
+        export(new VisaCheckoutSpan(trace.mTraceId, trace.mSpanId, null, ROOT_SPAN_NAME, trace.mCallId,
+                trace.mStartTimeMillis, System.nanoTime() - trace.mStartNanos, success));
+    }
+
+    /**
+     * Exports a phase of the tokenization of {@code callId} as a child span of its trace, if it is traced.
+     */
+    static void recordPhase(VisaCheckoutPhase phase, String callId, long startTimeMillis, long durationNanos,
+            boolean success) {
+        Trace trace = get(callId);
+        if (trace == null || phase == VisaCheckoutPhase.TOKENIZE) {
+            return;
+        }
+
+        export(new VisaCheckoutSpan(trace.mTraceId, spanId(), trace.mSpanId, spanName(phase), callId,
+                startTimeMillis, durationNanos, success));
+    }
+
+    static String spanName(VisaCheckoutPhase phase) {
+        return "visacheckout." + phase.name().toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return a 32 character trace id, derived from {@code callId} or random if it is {@code null}.
+     */
+    static String traceId(String callId) {
+        long mostSignificantBits;
+        long leastSignificantBits;
+        if (callId != null) {
+            UUID uuid = UUID.nameUUIDFromBytes(("visacheckout-trace:" + callId).getBytes(UTF_8));
+            mostSignificantBits = uuid.getMostSignificantBits();
+            leastSignificantBits = uuid.getLeastSignificantBits();
+        } else {
+            mostSignificantBits = sRandom.nextLong();
+            leastSignificantBits = nonZeroRandomLong();
+        }
+
+        return String.format(Locale.US, "%016x%016x", mostSignificantBits, leastSignificantBits);
+    }
+
+    private static String spanId() {
+        return String.format(Locale.US, "%016x", nonZeroRandomLong());
+    }
+
+    // all zero ids are invalid in a traceparent header
+    private static long nonZeroRandomLong() {
+        long value;
+        do {
+            value = sRandom.nextLong();
+        } while (value == 0);
+
+        return value;
+    }
+
+    private static void export(VisaCheckoutSpan span) {
+        VisaCheckoutSpanSink sink = sSink;
+        if (sink != null) {
+            sink.onSpanFinished(span);
+        }
+    }
+
+    /**
+     * The trace of one tokenization and its root span.
+     */
+    static class Trace {
+
+        private final String mTraceId;
+        private final String mSpanId;
+        private final String mCallId;
+        private final long mStartTimeMillis;
+        private final long mStartNanos;
+
+        Trace(String traceId, String spanId, String callId) {
+            mTraceId = traceId;
+            mSpanId = spanId;
+            mCallId = callId;
+            mStartTimeMillis = System.currentTimeMillis();
+            mStartNanos = System.nanoTime();
+        }
+
+        String getTraceId() {
+            return mTraceId;
+        }
+
+        String getSpanId() {
+            return mSpanId;
+        }
+
+        /**
+         * @return the value of the {@code traceparent} header, with the root span as the parent of the request.
+         */
+        String getTraceparent() {
+            return "00-" + mTraceId + "-" + mSpanId + "-01";
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.braintreepayments.api.exceptions;
+
+/**
+ * Error class thrown when Visa Checkout tokenization fails fast because the tokenization endpoint is degraded, see
+ * {@link com.braintreepayments.api.models.VisaCheckoutCircuitBreakerPolicy}. The payment was not sent to Braintree.
+ */
+public class VisaCheckoutCircuitOpenException extends BraintreeException {
+
+    private final long mRetryAfterMillis;
+
+    public VisaCheckoutCircuitOpenException(long retryAfterMillis) {
+        super("Visa Checkout tokenization is unavailable, retry in " + retryAfterMillis + "ms.");
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return the time until the endpoint is probed again, or 0 if a probe is already in flight.
+     */
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+}
@@ -0,0 +1,25 @@
+package com.braintreepayments.api.exceptions;
+
+/**
+ * Error class thrown when a Visa Checkout payment could not be tokenized because Braintree could not be reached and
+ * the payment was stored in the offline queue instead. The nonce is posted to the
+ * {@link com.braintreepayments.api.interfaces.PaymentMethodNonceCreatedListener} once the queued payment is
+ * tokenized. The original error is available from {@link #getCause()}.
+ */
+public class VisaCheckoutQueuedException extends BraintreeException {
+
+    private final String mCallId;
+
+    public VisaCheckoutQueuedException(String callId, Exception cause) {
+        super("Visa Checkout payment " + callId + " was queued and will be tokenized when Braintree can be reached.");
+        mCallId = callId;
+        initCause(cause);
+    }
+
+    /**
+     * @return the {@link com.visa.checkout.VisaPaymentSummary#getCallId()} of the queued payment.
+     */
+    public String getCallId() {
+        return mCallId;
+    }
+}
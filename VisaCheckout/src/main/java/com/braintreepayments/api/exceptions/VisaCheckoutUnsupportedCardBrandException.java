@@ -0,0 +1,22 @@
+package com.braintreepayments.api.exceptions;
+
+/**
+ * Error class thrown when a Visa Checkout payment uses a card brand the merchant account can not transact. The
+ * payment is rejected before it is sent to Braintree.
+ */
+public class VisaCheckoutUnsupportedCardBrandException extends BraintreeException {
+
+    private final String mCardBrand;
+
+    public VisaCheckoutUnsupportedCardBrandException(String cardBrand) {
+        super("Visa Checkout card brand " + cardBrand + " is not accepted by this merchant account.");
+        mCardBrand = cardBrand;
+    }
+
+    /**
+     * @return the {@link com.visa.checkout.Profile.CardBrand} of the rejected payment.
+     */
+    public String getCardBrand() {
+        return mCardBrand;
+    }
+}
@@ -0,0 +1,27 @@
+package com.braintreepayments.api.interfaces;
+
+import com.braintreepayments.api.models.VisaCheckoutTokenizationResult;
+
+import java.util.List;
+
+/**
+ * Interface that defines callbacks for tokenizing several Visa Checkout payments at once.
+ */
+public interface VisaCheckoutBatchListener {
+
+    /**
+     * Called once per payment, in the order the payments were given, as soon as the payment and all payments before
+     * it have been tokenized.
+     *
+     * @param index the position of the payment in the batch.
+     * @param result the {@link VisaCheckoutTokenizationResult} of the payment.
+     */
+    void onResult(int index, VisaCheckoutTokenizationResult result);
+
+    /**
+     * Called once after every payment in the batch has been tokenized.
+     *
+     * @param results the {@link VisaCheckoutTokenizationResult}s in the order the payments were given.
+     */
+    void onComplete(List<VisaCheckoutTokenizationResult> results);
+}
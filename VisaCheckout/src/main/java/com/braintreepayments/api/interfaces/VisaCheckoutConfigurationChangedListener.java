@@ -0,0 +1,21 @@
+package com.braintreepayments.api.interfaces;
+
+import com.visa.checkout.Profile.ProfileBuilder;
+
+/**
+ * Interface that defines a callback for a Visa Checkout profile that was created before the configuration was fetched,
+ * from a persisted configuration snapshot or a profile prepared by {@code VisaCheckout.prewarm}, and turned out to be
+ * outdated once the configuration was fetched.
+ */
+public interface VisaCheckoutConfigurationChangedListener {
+
+    /**
+     * Called on the main thread when the fetched configuration differs from the snapshot or prepared profile a
+     * {@link ProfileBuilder} was created from. Visa Checkout flows that have not started yet should use the new
+     * {@link ProfileBuilder}.
+     *
+     * @param profileBuilder a {@link ProfileBuilder} for the fetched configuration, or {@code null} if Visa Checkout
+     * is no longer enabled.
+     */
+    void onConfigurationChanged(ProfileBuilder profileBuilder);
+}
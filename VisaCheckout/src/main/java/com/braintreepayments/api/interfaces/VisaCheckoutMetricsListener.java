@@ -0,0 +1,16 @@
+package com.braintreepayments.api.interfaces;
+
+import com.braintreepayments.api.models.VisaCheckoutMetricEvent;
+
+/**
+ * Interface that defines a callback for the timing of each phase of the Visa Checkout flow.
+ */
+public interface VisaCheckoutMetricsListener {
+
+    /**
+     * Called when a phase of the Visa Checkout flow ends. May be called on any thread and should return quickly.
+     *
+     * @param event the {@link VisaCheckoutMetricEvent}.
+     */
+    void onMetricEvent(VisaCheckoutMetricEvent event);
+}
@@ -0,0 +1,18 @@
+package com.braintreepayments.api.interfaces;
+
+import com.braintreepayments.api.models.VisaCheckoutSpan;
+
+/**
+ * Interface that defines a local destination for the spans of traced Visa Checkout tokenizations, e.g. a log or an
+ * exporter of the app's tracing library.
+ */
+public interface VisaCheckoutSpanSink {
+
+    /**
+     * Called when a span ends. Phase spans end before their root span. May be called on any thread and should return
+     * quickly.
+     *
+     * @param span the finished {@link VisaCheckoutSpan}.
+     */
+    void onSpanFinished(VisaCheckoutSpan span);
+}
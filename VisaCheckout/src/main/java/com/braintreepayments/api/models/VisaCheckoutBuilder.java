@@ -7,6 +7,9 @@ import com.visa.checkout.VisaPaymentSummary;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.util.Iterator;
+
 /**
  * Builder used to construct a Visa Checkout tokenization request.
  */
@@ -16,15 +19,102 @@ public class VisaCheckoutBuilder extends PaymentMethodBuilder<VisaCheckoutBuilde
     private static final String ENCRYPTED_PAYMENT_DATA = "encryptedPaymentData";
     private static final String VISA_CHECKOUT_KEY = "visaCheckoutCard";
 
+    private static final String INPUT_KEY = "input";
+    private static final String QUERY_KEY = "query";
+    private static final String OPERATION_NAME_KEY = "operationName";
+    private static final String OPERATION_NAME = "TokenizeVisaCheckoutCard";
+    private static final String TOKENIZE_MUTATION = "mutation TokenizeVisaCheckoutCard("
+            + "$input: TokenizeVisaCheckoutCardInput!) {"
+            + "  tokenizeVisaCheckoutCard(input: $input) {"
+            + "    token"
+            + "    creditCard {"
+            + "      brand"
+            + "      last4"
+            + "      binData {"
+            + "        prepaid"
+            + "        healthcare"
+            + "        debit"
+            + "        durbinRegulated"
+            + "        commercial"
+            + "        payroll"
+            + "        issuingBank"
+            + "        countryOfIssuance"
+            + "        productId"
+            + "      }"
+            + "    }"
+            + "    billingAddress {"
+            + "      ...VisaCheckoutAddressFields"
+            + "    }"
+            + "    shippingAddress {"
+            + "      ...VisaCheckoutAddressFields"
+            + "    }"
+            + "    userData {"
+            + "      userFirstName"
+            + "      userLastName"
+            + "      userFullName"
+            + "      userName"
+            + "      userEmail"
+            + "    }"
+            + "    callId"
+            + "  }"
+            + "}"
+            + "fragment VisaCheckoutAddressFields on VisaCheckoutAddress {"
+            + "  firstName"
+            + "  lastName"
+            + "  streetAddress"
+            + "  extendedAddress"
+            + "  locality"
+            + "  region"
+            + "  postalCode"
+            + "  countryCode"
+            + "  phoneNumber"
+            + "}";
+
     private String mCallId;
     private String mEncryptedKey;
     private String mEncryptedPaymentData;
 
+    private boolean mBuildingEnvelope;
+    private JSONObject mEnvelope;
+    private JSONObject mEnvelopeVisaCheckoutCard;
+
     /**
      * @param visaPaymentSummary returned from Visa Checkout after a successful payment.
      */
     public VisaCheckoutBuilder(VisaPaymentSummary visaPaymentSummary) {
+        setPaymentSummary(visaPaymentSummary);
+    }
+
+    /**
+     * @param callId the {@link VisaPaymentSummary#getCallId()} of the payment.
+     * @param encryptedKey the {@link VisaPaymentSummary#getEncKey()} of the payment.
+     * @param encryptedPaymentData the {@link VisaPaymentSummary#getEncPaymentData()} of the payment.
+     */
+    public VisaCheckoutBuilder(String callId, String encryptedKey, String encryptedPaymentData) {
+        mCallId = callId;
+        mEncryptedKey = encryptedKey;
+        mEncryptedPaymentData = encryptedPaymentData;
+    }
+
+    /**
+     * Prepares this builder to tokenize another payment, so that a single builder can be reused for consecutive
+     * payments. The session id is cleared. Strings already returned by {@link #build()} are not affected.
+     *
+     * @param visaPaymentSummary returned from Visa Checkout after a successful payment, or {@code null} to only clear
+     * the payment data held by this builder.
+     * @return this builder.
+     */
+    public VisaCheckoutBuilder reset(VisaPaymentSummary visaPaymentSummary) {
+        setSessionId(null);
+        setPaymentSummary(visaPaymentSummary);
+        return this;
+    }
+
+    private void setPaymentSummary(VisaPaymentSummary visaPaymentSummary) {
         if (visaPaymentSummary == null) {
+            mCallId = null;
+            mEncryptedKey = null;
+            mEncryptedPaymentData = null;
             return;
         }
 
@@ -33,16 +123,214 @@ public class VisaCheckoutBuilder extends PaymentMethodBuilder<VisaCheckoutBuilde
         mEncryptedPaymentData = visaPaymentSummary.getEncPaymentData();
     }
 
+    /**
+     * Builds the tokenization request using {@link #writeTo(Appendable)}. The output is equivalent to the
+     * {@link JSONObject} based request, but the encrypted payment data is only copied once.
+     */
+    @Override
+    public String build() {
+        StringBuilder body = new StringBuilder(256 + length(mCallId) + length(mEncryptedKey)
+                + length(mEncryptedPaymentData));
+        try {
+            writeTo(body);
+        } catch (IOException ignored) {
+            // StringBuilder does not throw
+        }
+
+        return body.toString();
+    }
+
+    /**
+     * Writes the tokenization request to the given {@link Appendable}, such as the {@link java.io.Writer} of an
+     * HTTP request body, without building an intermediate {@link JSONObject} for the encrypted payment data.
+     *
+     * @param out the destination of the request body.
+     * @throws IOException if writing to {@code out} fails.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        writeTo(out, null);
+    }
+
+    /**
+     * Writes the tokenization request like {@link #writeTo(Appendable)}, adding the top level fields of
+     * {@code fields}, such as the authorization fingerprint added by an http client.
+     *
+     * @param out the destination of the request body.
+     * @param fields additional top level fields, or {@code null}.
+     * @throws IOException if writing to {@code out} fails.
+     */
+    public void writeTo(Appendable out, JSONObject fields) throws IOException {
+        // Collects the _meta object and the options of the payment method without the Visa Checkout payment data
+        JSONObject envelope;
+        JSONObject visaCheckoutCard;
+        mBuildingEnvelope = true;
+        try {
+            super.build();
+            envelope = mEnvelope;
+            visaCheckoutCard = mEnvelopeVisaCheckoutCard;
+        } finally {
+            mBuildingEnvelope = false;
+            mEnvelope = null;
+            mEnvelopeVisaCheckoutCard = null;
+        }
+
+        out.append('{');
+        boolean first = writeFields(out, envelope, true);
+        first = writeFields(out, fields, first);
+        if (!first) {
+            out.append(',');
+        }
+
+        writeString(out, VISA_CHECKOUT_KEY);
+        out.append(":{");
+        first = writeFields(out, visaCheckoutCard, true);
+        first = writeField(out, CALL_ID, mCallId, first);
+        first = writeField(out, ENCRYPTED_KEY, mEncryptedKey, first);
+        writeField(out, ENCRYPTED_PAYMENT_DATA, mEncryptedPaymentData, first);
+
+        out.append("}}");
+    }
+
     @Override
     protected void build(JSONObject base, JSONObject paymentMethodNonceJson) throws JSONException {
+        if (mBuildingEnvelope) {
+            mEnvelope = base;
+            mEnvelopeVisaCheckoutCard = paymentMethodNonceJson;
+            return;
+        }
+
         paymentMethodNonceJson.put(CALL_ID, mCallId);
         paymentMethodNonceJson.put(ENCRYPTED_KEY, mEncryptedKey);
         paymentMethodNonceJson.put(ENCRYPTED_PAYMENT_DATA, mEncryptedPaymentData);
         base.put(VISA_CHECKOUT_KEY, paymentMethodNonceJson);
     }
 
+    /**
+     * Builds the {@code tokenizeVisaCheckoutCard} mutation. It selects the fields of a {@link VisaCheckoutNonce}, so
+     * that a nonce tokenized with GraphQL carries the same card, address, user and BIN data as one tokenized with the
+     * REST endpoint.
+     */
     @Override
-    protected void buildGraphQL(Context context, JSONObject base, JSONObject input) {}
+    protected void buildGraphQL(Context context, JSONObject base, JSONObject variables) throws JSONException {
+        JSONObject visaCheckoutCard = new JSONObject()
+                .put(CALL_ID, mCallId)
+                .put(ENCRYPTED_KEY, mEncryptedKey)
+                .put(ENCRYPTED_PAYMENT_DATA, mEncryptedPaymentData);
+
+        variables.getJSONObject(INPUT_KEY).put(VISA_CHECKOUT_KEY, visaCheckoutCard);
+        base.put(QUERY_KEY, TOKENIZE_MUTATION);
+        base.put(OPERATION_NAME_KEY, OPERATION_NAME);
+    }
+
+    /**
+     * @return the Visa Checkout call id this builder will tokenize.
+     */
+    public String getCallId() {
+        return mCallId;
+    }
+
+    /**
+     * Writes the fields of {@code json} in the order it iterates them, leaving out the Visa Checkout payment method
+     * that is written separately.
+     */
+    private static boolean writeFields(Appendable out, JSONObject json, boolean first) throws IOException {
+        if (json == null) {
+            return first;
+        }
+
+        Iterator<String> names = json.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (VISA_CHECKOUT_KEY.equals(name)) {
+                continue;
+            }
+
+            if (!first) {
+                out.append(',');
+            }
+
+            Object value = json.opt(name);
+            writeString(out, name);
+            out.append(':');
+            if (value instanceof String) {
+                writeString(out, (String) value);
+            } else {
+                // nested objects, arrays, numbers and booleans serialize to JSON themselves
+                out.append(String.valueOf(value));
+            }
+
+            first = false;
+        }
+
+        return first;
+    }
+
+    private static boolean writeField(Appendable out, String name, String value, boolean first) throws IOException {
+        // JSONObject omits null values
+        if (value == null) {
+            return first;
+        }
+
+        if (!first) {
+            out.append(',');
+        }
+
+        writeString(out, name);
+        out.append(':');
+        writeString(out, value);
+        return false;
+    }
+
+    /**
+     * Escapes {@code value} the same way {@link JSONObject#toString()} does.
+     */
+    private static void writeString(Appendable out, String value) throws IOException {
+        out.append('"');
+
+        int start = 0;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c != '/' && c > 0x1F) {
+                continue;
+            }
+
+            out.append(value, start, i);
+            start = i + 1;
+
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    out.append('\\').append(c);
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    out.append(String.format("\\u%04x", (int) c));
+                    break;
+            }
+        }
+
+        out.append(value, start, value.length());
+        out.append('"');
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
 
     @Override
     public String getApiPath() {
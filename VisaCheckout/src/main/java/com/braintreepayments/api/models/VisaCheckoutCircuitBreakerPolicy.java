@@ -0,0 +1,110 @@
+package com.braintreepayments.api.models;
+
+/**
+ * Controls when Visa Checkout tokenization stops sending requests to a degraded endpoint. Outcomes are tracked over a
+ * rolling window. Once enough requests in the window failed or were slow, the circuit opens and tokenization fails
+ * right away with a {@link com.braintreepayments.api.exceptions.VisaCheckoutCircuitOpenException}. After the open
+ * duration a limited number of probe requests are let through, and the circuit closes again if they succeed.
+ *
+ * Failures are network errors, timeouts and server errors. Requests the gateway rejected, e.g. for invalid payment
+ * data, show that the endpoint is healthy and count as successes.
+ */
+public class VisaCheckoutCircuitBreakerPolicy {
+
+    private long mWindowMillis = 30000;
+    private int mMinimumRequests = 10;
+    private double mFailureRateThreshold = 0.5;
+    private long mSlowRequestMillis = 10000;
+    private double mSlowRequestRateThreshold = 0.8;
+    private long mOpenDurationMillis = 30000;
+    private int mHalfOpenProbes = 1;
+
+    /**
+     * @param windowMillis the duration of the rolling window outcomes are tracked over. Defaults to 30 seconds.
+     */
+    public VisaCheckoutCircuitBreakerPolicy windowMillis(long windowMillis) {
+        mWindowMillis = Math.max(1, windowMillis);
+        return this;
+    }
+
+    /**
+     * @param minimumRequests the number of requests the window must hold before the circuit can open. Defaults to 10.
+     */
+    public VisaCheckoutCircuitBreakerPolicy minimumRequests(int minimumRequests) {
+        mMinimumRequests = Math.max(1, minimumRequests);
+        return this;
+    }
+
+    /**
+     * @param failureRateThreshold the fraction, between 0 and 1, of failed requests in the window at which the
+     * circuit opens. Defaults to 0.5.
+     */
+    public VisaCheckoutCircuitBreakerPolicy failureRateThreshold(double failureRateThreshold) {
+        mFailureRateThreshold = Math.min(1, Math.max(0, failureRateThreshold));
+        return this;
+    }
+
+    /**
+     * @param slowRequestMillis the duration from which a request counts as slow, whether it succeeded or not.
+     * Defaults to 10 seconds.
+     */
+    public VisaCheckoutCircuitBreakerPolicy slowRequestMillis(long slowRequestMillis) {
+        mSlowRequestMillis = Math.max(1, slowRequestMillis);
+        return this;
+    }
+
+    /**
+     * @param slowRequestRateThreshold the fraction, between 0 and 1, of slow requests in the window at which the
+     * circuit opens. Defaults to 0.8.
+     */
+    public VisaCheckoutCircuitBreakerPolicy slowRequestRateThreshold(double slowRequestRateThreshold) {
+        mSlowRequestRateThreshold = Math.min(1, Math.max(0, slowRequestRateThreshold));
+        return this;
+    }
+
+    /**
+     * @param openDurationMillis the time the circuit stays open before probe requests are sent. Defaults to 30
+     * seconds.
+     */
+    public VisaCheckoutCircuitBreakerPolicy openDurationMillis(long openDurationMillis) {
+        mOpenDurationMillis = Math.max(0, openDurationMillis);
+        return this;
+    }
+
+    /**
+     * @param halfOpenProbes the number of probe requests let through at the same time while the circuit is half
+     * open. Defaults to 1.
+     */
+    public VisaCheckoutCircuitBreakerPolicy halfOpenProbes(int halfOpenProbes) {
+        mHalfOpenProbes = Math.max(1, halfOpenProbes);
+        return this;
+    }
+
+    public long getWindowMillis() {
+        return mWindowMillis;
+    }
+
+    public int getMinimumRequests() {
+        return mMinimumRequests;
+    }
+
+    public double getFailureRateThreshold() {
+        return mFailureRateThreshold;
+    }
+
+    public long getSlowRequestMillis() {
+        return mSlowRequestMillis;
+    }
+
+    public double getSlowRequestRateThreshold() {
+        return mSlowRequestRateThreshold;
+    }
+
+    public long getOpenDurationMillis() {
+        return mOpenDurationMillis;
+    }
+
+    public int getHalfOpenProbes() {
+        return mHalfOpenProbes;
+    }
+}
@@ -0,0 +1,52 @@
+package com.braintreepayments.api.models;
+
+/**
+ * A point in time copy of the latency histogram of a {@link VisaCheckoutPhase}. Percentiles are approximate, with a
+ * relative error of at most 25%.
+ */
+public class VisaCheckoutLatencySnapshot {
+
+    private final VisaCheckoutPhase mPhase;
+    private final long mCount;
+    private final double mP50Millis;
+    private final double mP95Millis;
+    private final double mP99Millis;
+    private final double mMaxMillis;
+
+    public VisaCheckoutLatencySnapshot(VisaCheckoutPhase phase, long count, double p50Millis, double p95Millis,
+            double p99Millis, double maxMillis) {
+        mPhase = phase;
+        mCount = count;
+        mP50Millis = p50Millis;
+        mP95Millis = p95Millis;
+        mP99Millis = p99Millis;
+        mMaxMillis = maxMillis;
+    }
+
+    public VisaCheckoutPhase getPhase() {
+        return mPhase;
+    }
+
+    /**
+     * @return the number of recorded durations.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    public double getP50Millis() {
+        return mP50Millis;
+    }
+
+    public double getP95Millis() {
+        return mP95Millis;
+    }
+
+    public double getP99Millis() {
+        return mP99Millis;
+    }
+
+    public double getMaxMillis() {
+        return mMaxMillis;
+    }
+}
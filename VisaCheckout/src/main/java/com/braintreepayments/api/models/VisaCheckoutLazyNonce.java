@@ -0,0 +1,276 @@
+package com.braintreepayments.api.models;
+
+import android.os.Parcel;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * A {@link VisaCheckoutNonce} that reads the nonce, description and card details when it is created and builds the
+ * billing address, shipping address, user data and BIN data only when one of them is first read. The response is
+ * read in a single streaming pass that also captures those sub-objects and checks that the response is complete, so
+ * the response itself is not retained and reading a lazily built field can not fail.
+ *
+ * Behaves like a {@link VisaCheckoutNonce} in every other way, and is written to a {@link Parcel} as one.
+ */
+public class VisaCheckoutLazyNonce extends VisaCheckoutNonce {
+
+    private static final String API_RESOURCE_KEY = "visaCheckoutCards";
+    private static final String NONCE_KEY = "nonce";
+    private static final String DESCRIPTION_KEY = "description";
+    private static final String DEFAULT_KEY = "default";
+    private static final String DETAILS_KEY = "details";
+    private static final String CARD_TYPE_KEY = "cardType";
+    private static final String LAST_TWO_KEY = "lastTwo";
+    private static final String CALL_ID_KEY = "callId";
+    private static final String BILLING_ADDRESS_KEY = "billingAddress";
+    private static final String SHIPPING_ADDRESS_KEY = "shippingAddress";
+    private static final String USER_DATA_KEY = "userData";
+    private static final String BIN_DATA_KEY = "binData";
+
+    private String mLastTwo;
+    private String mCardType;
+    private String mCallId = "";
+    private boolean mHasDetails;
+    private JSONObject mBillingAddress;
+    private JSONObject mShippingAddress;
+    private JSONObject mUserData;
+    private JSONObject mBinData;
+    private boolean mDecoded;
+
+    private VisaCheckoutLazyNonce() {}
+
+    /**
+     * Reads the nonce and card details of a tokenization response. Either the REST response, with the card in
+     * {@code visaCheckoutCards}, or the card itself is accepted.
+     *
+     * @param responseBody the tokenization response.
+     * @return a {@link VisaCheckoutLazyNonce}.
+     * @throws JSONException if the response is not valid JSON or has no nonce, description, card details, addresses
+     * or user data.
+     */
+    public static VisaCheckoutLazyNonce fromJson(String responseBody) throws JSONException {
+        VisaCheckoutLazyNonce visaCheckoutNonce = new VisaCheckoutLazyNonce();
+        JsonReader reader = new JsonReader(new StringReader(responseBody));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (API_RESOURCE_KEY.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        visaCheckoutNonce = new VisaCheckoutLazyNonce();
+                        visaCheckoutNonce.readCard(reader);
+                    }
+
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                } else {
+                    visaCheckoutNonce.readCardField(name, reader);
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException | JSONException e) {
+            throw new JSONException("Invalid Visa Checkout response: " + e.getMessage());
+        } finally {
+            closeQuietly(reader);
+        }
+
+        if (visaCheckoutNonce.mNonce == null || visaCheckoutNonce.mDescription == null || !visaCheckoutNonce.mHasDetails
+                || visaCheckoutNonce.mLastTwo == null || visaCheckoutNonce.mCardType == null) {
+            throw new JSONException("Visa Checkout response has no nonce, description or card details.");
+        }
+
+        if (visaCheckoutNonce.mBillingAddress == null || visaCheckoutNonce.mShippingAddress == null
+                || visaCheckoutNonce.mUserData == null) {
+            throw new JSONException("Visa Checkout response has no addresses or user data.");
+        }
+
+        return visaCheckoutNonce;
+    }
+
+    private void readCard(JsonReader reader) throws IOException, JSONException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            readCardField(reader.nextName(), reader);
+        }
+        reader.endObject();
+    }
+
+    private void readCardField(String name, JsonReader reader) throws IOException, JSONException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+        } else if (NONCE_KEY.equals(name)) {
+            mNonce = reader.nextString();
+        } else if (DESCRIPTION_KEY.equals(name)) {
+            mDescription = reader.nextString();
+        } else if (DEFAULT_KEY.equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+            mDefault = reader.nextBoolean();
+        } else if (CALL_ID_KEY.equals(name)) {
+            mCallId = reader.nextString();
+        } else if (DETAILS_KEY.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            readDetails(reader);
+        } else if (BILLING_ADDRESS_KEY.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            mBillingAddress = readObject(reader);
+        } else if (SHIPPING_ADDRESS_KEY.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            mShippingAddress = readObject(reader);
+        } else if (USER_DATA_KEY.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            mUserData = readObject(reader);
+        } else if (BIN_DATA_KEY.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            mBinData = readObject(reader);
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    private void readDetails(JsonReader reader) throws IOException {
+        mHasDetails = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (LAST_TWO_KEY.equals(name)) {
+                mLastTwo = reader.nextString();
+            } else if (CARD_TYPE_KEY.equals(name)) {
+                mCardType = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            object.put(reader.nextName(), readValue(reader));
+        }
+        reader.endObject();
+
+        return object;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                String number = reader.nextString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(number);
+                }
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /**
+     * Builds the {@link VisaCheckoutNonce} from the sub-objects captured by {@link #fromJson(String)} the first time a
+     * lazily built field is read. {@link #fromJson(String)} checked every field this requires, so it only fails if
+     * the models change what they require.
+     */
+    private synchronized void decode() {
+        if (mDecoded) {
+            return;
+        }
+
+        try {
+            super.fromJson(new JSONObject()
+                    .put(NONCE_KEY, mNonce)
+                    .put(DESCRIPTION_KEY, mDescription)
+                    .put(DEFAULT_KEY, mDefault)
+                    .put(DETAILS_KEY, new JSONObject()
+                            .put(LAST_TWO_KEY, mLastTwo)
+                            .put(CARD_TYPE_KEY, mCardType))
+                    .put(BILLING_ADDRESS_KEY, mBillingAddress)
+                    .put(SHIPPING_ADDRESS_KEY, mShippingAddress)
+                    .put(USER_DATA_KEY, mUserData)
+                    .put(CALL_ID_KEY, mCallId)
+                    .putOpt(BIN_DATA_KEY, mBinData));
+        } catch (JSONException e) {
+            throw new IllegalStateException("Could not decode Visa Checkout response: " + e.getMessage(), e);
+        }
+
+        mDecoded = true;
+        mBillingAddress = null;
+        mShippingAddress = null;
+        mUserData = null;
+        mBinData = null;
+    }
+
+    @Override
+    public String getLastTwo() {
+        return mLastTwo;
+    }
+
+    @Override
+    public String getCardType() {
+        return mCardType;
+    }
+
+    @Override
+    public String getCallId() {
+        return mCallId;
+    }
+
+    @Override
+    public VisaCheckoutAddress getBillingAddress() {
+        decode();
+        return super.getBillingAddress();
+    }
+
+    @Override
+    public VisaCheckoutAddress getShippingAddress() {
+        decode();
+        return super.getShippingAddress();
+    }
+
+    @Override
+    public VisaCheckoutUserData getUserData() {
+        decode();
+        return super.getUserData();
+    }
+
+    @Override
+    public BinData getBinData() {
+        decode();
+        return super.getBinData();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        decode();
+        super.writeToParcel(dest, flags);
+    }
+
+    private static void closeQuietly(JsonReader reader) {
+        try {
+            reader.close();
+        } catch (IOException ignored) {}
+    }
+}
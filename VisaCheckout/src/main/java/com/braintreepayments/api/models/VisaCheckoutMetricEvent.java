@@ -0,0 +1,66 @@
+package com.braintreepayments.api.models;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timed {@link VisaCheckoutPhase} of the Visa Checkout flow.
+ */
+public class VisaCheckoutMetricEvent {
+
+    private final VisaCheckoutPhase mPhase;
+    private final String mCallId;
+    private final long mStartTimeMillis;
+    private final long mDurationNanos;
+    private final boolean mSuccess;
+
+    public VisaCheckoutMetricEvent(VisaCheckoutPhase phase, String callId, long startTimeMillis, long durationNanos,
+            boolean success) {
+        mPhase = phase;
+        mCallId = callId;
+        mStartTimeMillis = startTimeMillis;
+        mDurationNanos = durationNanos;
+        mSuccess = success;
+    }
+
+    /**
+     * @return the {@link VisaCheckoutPhase} that was timed.
+     */
+    public VisaCheckoutPhase getPhase() {
+        return mPhase;
+    }
+
+    /**
+     * @return the Visa Checkout call id of the payment for tokenization phases, {@code null} otherwise.
+     */
+    public String getCallId() {
+        return mCallId;
+    }
+
+    /**
+     * @return the wall clock time the phase started at, in milliseconds since the epoch.
+     */
+    public long getStartTimeMillis() {
+        return mStartTimeMillis;
+    }
+
+    /**
+     * @return the duration of the phase in nanoseconds.
+     */
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    /**
+     * @return the duration of the phase in milliseconds.
+     */
+    public double getDurationMillis() {
+        return mDurationNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return {@code false} if the phase ended with an error.
+     */
+    public boolean isSuccess() {
+        return mSuccess;
+    }
+}
@@ -0,0 +1,51 @@
+package com.braintreepayments.api.models;
+
+/**
+ * The phases of the Visa Checkout flow that are timed and reported to a
+ * {@link com.braintreepayments.api.interfaces.VisaCheckoutMetricsListener}.
+ */
+public enum VisaCheckoutPhase {
+
+    /**
+     * Waiting for the Braintree configuration during profile creation.
+     */
+    CONFIGURATION_WAIT,
+
+    /**
+     * Checking that the Visa Checkout SDK is available.
+     */
+    SDK_PROBE,
+
+    /**
+     * Building the {@link com.visa.checkout.Profile.ProfileBuilder} from the configuration.
+     */
+    PROFILE_CONSTRUCTION,
+
+    /**
+     * The whole profile creation, from the call until the {@link com.visa.checkout.Profile.ProfileBuilder} is
+     * returned.
+     */
+    CREATE_PROFILE_BUILDER,
+
+    /**
+     * Building the tokenization request body.
+     */
+    REQUEST_SERIALIZATION,
+
+    /**
+     * Sending the tokenization request and receiving the response. Requests sent with the
+     * {@link com.braintreepayments.api.BraintreeFragment}'s REST client also include serialization and parsing in
+     * this phase.
+     */
+    NETWORK,
+
+    /**
+     * Parsing the tokenization response into a {@link VisaCheckoutNonce}.
+     */
+    RESPONSE_PARSING,
+
+    /**
+     * The whole tokenization, from the call until the result is delivered.
+     */
+    TOKENIZE
+}
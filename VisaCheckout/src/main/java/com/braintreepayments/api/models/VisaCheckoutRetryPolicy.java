@@ -0,0 +1,105 @@
+package com.braintreepayments.api.models;
+
+import java.util.Random;
+
+/**
+ * Controls how Visa Checkout tokenization is retried after a network error, timeout or server error. Every attempt
+ * for the same payment sends the same idempotency key, but the gateway does not deduplicate on it, so a retried or
+ * hedged payment may create more than one nonce. Only the first one is returned.
+ */
+public class VisaCheckoutRetryPolicy {
+
+    private int mMaxAttempts = 3;
+    private long mInitialBackoffMillis = 250;
+    private long mMaxBackoffMillis = 2000;
+    private double mBackoffMultiplier = 2;
+    private double mJitter = 0.5;
+    private long mHedgeDelayMillis;
+
+    /**
+     * @param maxAttempts the maximum number of requests sent for one payment, including the first. Defaults to 3.
+     */
+    public VisaCheckoutRetryPolicy maxAttempts(int maxAttempts) {
+        mMaxAttempts = Math.max(1, maxAttempts);
+        return this;
+    }
+
+    /**
+     * @param initialBackoffMillis the delay before the first retry. Defaults to 250 milliseconds.
+     */
+    public VisaCheckoutRetryPolicy initialBackoffMillis(long initialBackoffMillis) {
+        mInitialBackoffMillis = Math.max(0, initialBackoffMillis);
+        return this;
+    }
+
+    /**
+     * @param maxBackoffMillis the upper bound of the delay between retries. Defaults to 2 seconds.
+     */
+    public VisaCheckoutRetryPolicy maxBackoffMillis(long maxBackoffMillis) {
+        mMaxBackoffMillis = Math.max(0, maxBackoffMillis);
+        return this;
+    }
+
+    /**
+     * @param backoffMultiplier the factor the delay grows by after each retry. Defaults to 2.
+     */
+    public VisaCheckoutRetryPolicy backoffMultiplier(double backoffMultiplier) {
+        mBackoffMultiplier = Math.max(1, backoffMultiplier);
+        return this;
+    }
+
+    /**
+     * @param jitter the fraction, between 0 and 1, of each delay that is randomized so that clients do not retry in
+     * lockstep. Defaults to 0.5.
+     */
+    public VisaCheckoutRetryPolicy jitter(double jitter) {
+        mJitter = Math.min(1, Math.max(0, jitter));
+        return this;
+    }
+
+    /**
+     * @param hedgeDelayMillis if greater than 0, an additional request is sent when an attempt has not completed
+     * after this delay, and the first response wins. Hedged requests count towards {@link #maxAttempts(int)}.
+     * Disabled by default.
+     */
+    public VisaCheckoutRetryPolicy hedgeDelayMillis(long hedgeDelayMillis) {
+        mHedgeDelayMillis = Math.max(0, hedgeDelayMillis);
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return mInitialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return mMaxBackoffMillis;
+    }
+
+    public double getBackoffMultiplier() {
+        return mBackoffMultiplier;
+    }
+
+    public double getJitter() {
+        return mJitter;
+    }
+
+    public long getHedgeDelayMillis() {
+        return mHedgeDelayMillis;
+    }
+
+    /**
+     * @param retry the number of the retry, starting at 1.
+     * @param random the source of the jitter.
+     * @return the delay in milliseconds before the retry is sent.
+     */
+    public long getBackoffMillis(int retry, Random random) {
+        double backoff = mInitialBackoffMillis * Math.pow(mBackoffMultiplier, Math.max(0, retry - 1));
+        backoff = Math.min(backoff, mMaxBackoffMillis);
+
+        return (long) (backoff * (1 - mJitter * random.nextDouble()));
+    }
+}
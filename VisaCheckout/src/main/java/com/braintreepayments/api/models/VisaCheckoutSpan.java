@@ -0,0 +1,97 @@
+package com.braintreepayments.api.models;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A finished span of a traced Visa Checkout tokenization. Each tokenization has a root span named
+ * {@code visacheckout.tokenize} and a child span for each of its timed {@link VisaCheckoutPhase}s, e.g.
+ * {@code visacheckout.network}. Trace and span ids are lowercase hex strings as used by the W3C
+ * {@code traceparent} header.
+ */
+public class VisaCheckoutSpan {
+
+    private final String mTraceId;
+    private final String mSpanId;
+    private final String mParentSpanId;
+    private final String mName;
+    private final String mCallId;
+    private final long mStartTimeMillis;
+    private final long mDurationNanos;
+    private final boolean mSuccess;
+
+    public VisaCheckoutSpan(String traceId, String spanId, String parentSpanId, String name, String callId,
+            long startTimeMillis, long durationNanos, boolean success) {
+        mTraceId = traceId;
+        mSpanId = spanId;
+        mParentSpanId = parentSpanId;
+        mName = name;
+        mCallId = callId;
+        mStartTimeMillis = startTimeMillis;
+        mDurationNanos = durationNanos;
+        mSuccess = success;
+    }
+
+    /**
+     * @return the 32 character id of the trace, derived from the Visa Checkout call id when there is one so that it
+     * is the same for every tokenization of a payment.
+     */
+    public String getTraceId() {
+        return mTraceId;
+    }
+
+    /**
+     * @return the 16 character id of this span.
+     */
+    public String getSpanId() {
+        return mSpanId;
+    }
+
+    /**
+     * @return the id of the root span for phase spans, {@code null} for the root span.
+     */
+    public String getParentSpanId() {
+        return mParentSpanId;
+    }
+
+    /**
+     * @return the name of the span.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the Visa Checkout call id of the payment.
+     */
+    public String getCallId() {
+        return mCallId;
+    }
+
+    /**
+     * @return the wall clock time the span started at, in milliseconds since the epoch.
+     */
+    public long getStartTimeMillis() {
+        return mStartTimeMillis;
+    }
+
+    /**
+     * @return the duration of the span in nanoseconds.
+     */
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    /**
+     * @return the duration of the span in milliseconds.
+     */
+    public double getDurationMillis() {
+        return mDurationNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return {@code false} if the span ended with an error.
+     */
+    public boolean isSuccess() {
+        return mSuccess;
+    }
+}
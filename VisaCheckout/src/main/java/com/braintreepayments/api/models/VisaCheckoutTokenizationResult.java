@@ -0,0 +1,57 @@
+package com.braintreepayments.api.models;
+
+import com.visa.checkout.VisaPaymentSummary;
+
+/**
+ * The outcome of tokenizing a single {@link VisaPaymentSummary} as part of a batch.
+ */
+public class VisaCheckoutTokenizationResult {
+
+    private final VisaPaymentSummary mVisaPaymentSummary;
+    private final PaymentMethodNonce mPaymentMethodNonce;
+    private final Exception mError;
+
+    private VisaCheckoutTokenizationResult(VisaPaymentSummary visaPaymentSummary,
+            PaymentMethodNonce paymentMethodNonce, Exception error) {
+        mVisaPaymentSummary = visaPaymentSummary;
+        mPaymentMethodNonce = paymentMethodNonce;
+        mError = error;
+    }
+
+    public static VisaCheckoutTokenizationResult success(VisaPaymentSummary visaPaymentSummary,
+            PaymentMethodNonce paymentMethodNonce) {
+        return new VisaCheckoutTokenizationResult(visaPaymentSummary, paymentMethodNonce, null);
+    }
+
+    public static VisaCheckoutTokenizationResult failure(VisaPaymentSummary visaPaymentSummary, Exception error) {
+        return new VisaCheckoutTokenizationResult(visaPaymentSummary, null, error);
+    }
+
+    /**
+     * @return the {@link VisaPaymentSummary} that was tokenized.
+     */
+    public VisaPaymentSummary getVisaPaymentSummary() {
+        return mVisaPaymentSummary;
+    }
+
+    /**
+     * @return the {@link VisaCheckoutNonce} if tokenization succeeded, {@code null} otherwise.
+     */
+    public PaymentMethodNonce getPaymentMethodNonce() {
+        return mPaymentMethodNonce;
+    }
+
+    /**
+     * @return the error if tokenization failed, {@code null} otherwise.
+     */
+    public Exception getError() {
+        return mError;
+    }
+
+    /**
+     * @return {@code true} if tokenization succeeded.
+     */
+    public boolean isSuccess() {
+        return mPaymentMethodNonce != null;
+    }
+}
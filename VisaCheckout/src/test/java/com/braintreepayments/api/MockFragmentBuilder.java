@@ -34,6 +34,7 @@ public class MockFragmentBuilder {
     private Exception mErrorResponse;
     private String mGraphQLSuccessResponse;
     private Exception mGraphQLErrorResponse;
+    private BraintreeHttpClient mHttpClient;
 
     public MockFragmentBuilder() {
         mContext = ApplicationProvider.getApplicationContext();
@@ -57,6 +58,36 @@ public class MockFragmentBuilder {
         return this;
     }
 
+    public MockFragmentBuilder authorization(Authorization authorization) {
+        mAuthorization = authorization;
+        return this;
+    }
+
+    public MockFragmentBuilder httpClient(BraintreeHttpClient httpClient) {
+        mHttpClient = httpClient;
+        return this;
+    }
+
+    public MockFragmentBuilder successResponse(String response) {
+        mSuccessResponse = response;
+        return this;
+    }
+
+    public MockFragmentBuilder errorResponse(Exception exception) {
+        mErrorResponse = exception;
+        return this;
+    }
+
+    public MockFragmentBuilder graphQLSuccessResponse(String response) {
+        mGraphQLSuccessResponse = response;
+        return this;
+    }
+
+    public MockFragmentBuilder graphQLErrorResponse(Exception exception) {
+        mGraphQLErrorResponse = exception;
+        return this;
+    }
+
     public BraintreeFragment build() {
         BraintreeFragment fragment = mock(BraintreeFragment.class);
         when(fragment.getApplicationContext()).thenReturn(mContext);
@@ -74,11 +105,14 @@ public class MockFragmentBuilder {
         }).when(fragment).waitForConfiguration(any(ConfigurationListener.class));
         when(fragment.getConfiguration()).thenReturn(mConfiguration);
 
-        BraintreeHttpClient httpClient = mock(BraintreeHttpClient.class);
-        if (mSuccessResponse != null) {
-            setupSuccessResponses(httpClient);
-        } else if (mErrorResponse != null) {
-            setupErrorResponses(httpClient);
+        BraintreeHttpClient httpClient = mHttpClient;
+        if (httpClient == null) {
+            httpClient = mock(BraintreeHttpClient.class);
+            if (mSuccessResponse != null) {
+                setupSuccessResponses(httpClient);
+            } else if (mErrorResponse != null) {
+                setupErrorResponses(httpClient);
+            }
         }
         when(fragment.getHttpClient()).thenReturn(httpClient);
 
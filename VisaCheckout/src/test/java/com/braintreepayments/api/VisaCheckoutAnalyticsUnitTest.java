@@ -0,0 +1,219 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.test.TestActivity;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutAnalyticsUnitTest {
+
+    @After
+    public void tearDown() {
+        VisaCheckoutTestHelper.resetVisaCheckout();
+    }
+
+    @Test
+    public void send_buffersEventsUntilFlushInterval() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder().build();
+        VisaCheckout.setAnalyticsFlushInterval(1000);
+
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.tokenize.succeeded");
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.tokenize.failed");
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.tokenize.succeeded");
+        ShadowLooper.idleMainLooper(999, TimeUnit.MILLISECONDS);
+
+        verify(fragment, never()).sendAnalyticsEvent(anyString());
+
+        ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+
+        JSONObject events = sentBatch(fragment).getJSONObject("events");
+        assertEquals(2, events.getInt("visacheckout.tokenize.succeeded"));
+        assertEquals(1, events.getInt("visacheckout.tokenize.failed"));
+    }
+
+    @Test
+    public void sendOutcome_addsErrorClassesAndLatencyBucketsToBatch() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder().build();
+        VisaCheckout.setAnalyticsFlushInterval(1000);
+
+        VisaCheckoutAnalytics.sendOutcome(fragment, "visacheckout.tokenize.succeeded", null, System.nanoTime(),
+                null);
+        VisaCheckoutAnalytics.sendOutcome(fragment, "visacheckout.tokenize.failed", new IOException(),
+                System.nanoTime(), null);
+        VisaCheckoutAnalytics.sendOutcome(fragment, "visacheckout.tokenize.failed", new IOException(),
+                System.nanoTime() - TimeUnit.SECONDS.toNanos(10), null);
+        VisaCheckout.flushAnalytics();
+
+        JSONObject batch = sentBatch(fragment);
+        assertEquals(1, batch.getJSONObject("events").getInt("visacheckout.tokenize.succeeded"));
+        assertEquals(2, batch.getJSONObject("events").getInt("visacheckout.tokenize.failed"));
+        assertEquals(2, batch.getJSONObject("errors").getInt("IOException"));
+        assertEquals(2, batch.getJSONObject("latency").getInt("le100"));
+        assertEquals(1, batch.getJSONObject("latency").getInt("gt5000"));
+    }
+
+    @Test
+    public void sendOutcome_withTraceIds_listsTraceIdsInBatch() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder().build();
+        VisaCheckout.setAnalyticsFlushInterval(1000);
+
+        VisaCheckoutAnalytics.sendOutcome(fragment, "visacheckout.tokenize.succeeded", null, System.nanoTime(),
+                VisaCheckoutTracing.traceId("firstCallId"));
+        VisaCheckoutAnalytics.sendOutcome(fragment, "visacheckout.tokenize.succeeded", null, System.nanoTime(),
+                null);
+        VisaCheckoutAnalytics.sendOutcome(fragment, "visacheckout.tokenize.failed", new IOException(),
+                System.nanoTime(), VisaCheckoutTracing.traceId("secondCallId"));
+        VisaCheckout.flushAnalytics();
+
+        JSONArray traces = sentBatch(fragment).getJSONArray("traces");
+        assertEquals(2, traces.length());
+        assertEquals(VisaCheckoutTracing.traceId("firstCallId"), traces.getString(0));
+        assertEquals(VisaCheckoutTracing.traceId("secondCallId"), traces.getString(1));
+    }
+
+    @Test
+    public void sendOutcome_withMoreTraceIdsThanLimit_keepsCountingEvents() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder().build();
+        VisaCheckout.setAnalyticsFlushInterval(1000);
+
+        for (int i = 0; i <= VisaCheckoutAnalytics.MAX_TRACE_IDS; i++) {
+            VisaCheckoutAnalytics.sendOutcome(fragment, "visacheckout.tokenize.succeeded", null, System.nanoTime(),
+                    VisaCheckoutTracing.traceId("callId" + i));
+        }
+        VisaCheckout.flushAnalytics();
+
+        JSONObject batch = sentBatch(fragment);
+        assertEquals(VisaCheckoutAnalytics.MAX_TRACE_IDS, batch.getJSONArray("traces").length());
+        assertEquals(VisaCheckoutAnalytics.MAX_TRACE_IDS + 1,
+                batch.getJSONObject("events").getInt("visacheckout.tokenize.succeeded"));
+    }
+
+    @Test
+    public void sendOutcome_whenNotBuffered_sendsEventWithoutTraceId() {
+        BraintreeFragment fragment = new MockFragmentBuilder().build();
+
+        VisaCheckoutAnalytics.sendOutcome(fragment, "visacheckout.tokenize.succeeded", null, System.nanoTime(),
+                VisaCheckoutTracing.traceId("callId"));
+
+        verify(fragment).sendAnalyticsEvent("visacheckout.tokenize.succeeded");
+    }
+
+    @Test
+    public void send_withoutOutcomes_leavesErrorsAndLatencyOutOfBatch() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder().build();
+        VisaCheckout.setAnalyticsFlushInterval(1000);
+
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.offline.queued");
+        VisaCheckout.flushAnalytics();
+
+        JSONObject batch = sentBatch(fragment);
+        assertEquals(1, batch.getJSONObject("events").getInt("visacheckout.offline.queued"));
+        assertFalse(batch.has("errors"));
+        assertFalse(batch.has("latency"));
+        assertFalse(batch.has("traces"));
+    }
+
+    @Test
+    public void latencyBucket_returnsSmallestBucketHoldingDuration() {
+        assertEquals("le100", VisaCheckoutAnalytics.latencyBucket(0));
+        assertEquals("le250", VisaCheckoutAnalytics.latencyBucket(101));
+        assertEquals("le5000", VisaCheckoutAnalytics.latencyBucket(5000));
+        assertEquals("gt5000", VisaCheckoutAnalytics.latencyBucket(5001));
+    }
+
+    @Test
+    public void send_afterFlush_startsNewBatch() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder().build();
+        VisaCheckout.setAnalyticsFlushInterval(1000);
+
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.tokenize.succeeded");
+        VisaCheckout.flushAnalytics();
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.tokenize.cached");
+        ShadowLooper.idleMainLooper(1000, TimeUnit.MILLISECONDS);
+
+        ArgumentCaptor<String> eventCaptor = ArgumentCaptor.forClass(String.class);
+        verify(fragment, times(2)).sendAnalyticsEvent(eventCaptor.capture());
+        assertEquals(1, parseBatch(eventCaptor.getAllValues().get(0)).getJSONObject("events")
+                .getInt("visacheckout.tokenize.succeeded"));
+        assertEquals(1, parseBatch(eventCaptor.getAllValues().get(1)).getJSONObject("events")
+                .getInt("visacheckout.tokenize.cached"));
+    }
+
+    @Test
+    public void send_whenActivityStopped_flushesEvents() throws JSONException {
+        ActivityController<TestActivity> activityController = Robolectric.buildActivity(TestActivity.class).setup();
+        BraintreeFragment fragment = new MockFragmentBuilder()
+                .activity(activityController.get())
+                .build();
+        VisaCheckout.setAnalyticsFlushInterval(1000);
+
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.tokenize.succeeded");
+        verify(fragment, never()).sendAnalyticsEvent(anyString());
+
+        activityController.pause().stop();
+
+        assertEquals(1, sentBatch(fragment).getJSONObject("events").getInt("visacheckout.tokenize.succeeded"));
+    }
+
+    @Test
+    public void send_byDefault_sendsImmediately() {
+        BraintreeFragment fragment = new MockFragmentBuilder().build();
+
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.tokenize.succeeded");
+
+        verify(fragment).sendAnalyticsEvent("visacheckout.tokenize.succeeded");
+    }
+
+    @Test
+    public void send_whenFlushIntervalIsZero_sendsImmediately() {
+        BraintreeFragment fragment = new MockFragmentBuilder().build();
+        VisaCheckout.setAnalyticsFlushInterval(0);
+
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.tokenize.succeeded");
+
+        verify(fragment).sendAnalyticsEvent("visacheckout.tokenize.succeeded");
+    }
+
+    @Test
+    public void setAnalyticsFlushInterval_toZero_flushesBufferedEvents() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder().build();
+        VisaCheckout.setAnalyticsFlushInterval(1000);
+        VisaCheckoutAnalytics.send(fragment, "visacheckout.tokenize.failed");
+
+        VisaCheckout.setAnalyticsFlushInterval(0);
+
+        assertEquals(1, sentBatch(fragment).getJSONObject("events").getInt("visacheckout.tokenize.failed"));
+    }
+
+    private static JSONObject sentBatch(BraintreeFragment fragment) throws JSONException {
+        ArgumentCaptor<String> eventCaptor = ArgumentCaptor.forClass(String.class);
+        verify(fragment).sendAnalyticsEvent(eventCaptor.capture());
+        return parseBatch(eventCaptor.getValue());
+    }
+
+    private static JSONObject parseBatch(String event) throws JSONException {
+        assertTrue(event.startsWith(VisaCheckoutAnalytics.BATCH_EVENT + ":"));
+        return new JSONObject(event.substring(VisaCheckoutAnalytics.BATCH_EVENT.length() + 1));
+    }
+}
@@ -0,0 +1,53 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static com.braintreepayments.api.test.VisaPaymentSummaryHelper.sampleVisaPaymentSummary;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutBuilderPoolUnitTest {
+
+    @Test
+    public void acquire_afterRelease_reusesBuilder() throws JSONException {
+        VisaCheckoutBuilderPool pool = new VisaCheckoutBuilderPool(2);
+        VisaCheckoutBuilder visaCheckoutBuilder = pool.acquire(sampleVisaPaymentSummary("firstCallId"));
+
+        pool.release(visaCheckoutBuilder);
+
+        assertSame(visaCheckoutBuilder, pool.acquire(sampleVisaPaymentSummary("secondCallId")));
+        assertEquals("secondCallId", visaCheckoutBuilder.getCallId());
+    }
+
+    @Test
+    public void release_scrubsBuilder() throws JSONException {
+        VisaCheckoutBuilderPool pool = new VisaCheckoutBuilderPool(2);
+        VisaCheckoutBuilder visaCheckoutBuilder = pool.acquire(sampleVisaPaymentSummary("callId"));
+        visaCheckoutBuilder.build();
+
+        pool.release(visaCheckoutBuilder);
+
+        assertNull(visaCheckoutBuilder.getCallId());
+    }
+
+    @Test
+    public void release_whenFull_dropsBuilder() throws JSONException {
+        VisaCheckoutBuilderPool pool = new VisaCheckoutBuilderPool(1);
+        VisaCheckoutBuilder first = pool.acquire(sampleVisaPaymentSummary("firstCallId"));
+        VisaCheckoutBuilder second = pool.acquire(sampleVisaPaymentSummary("secondCallId"));
+        assertNotSame(first, second);
+
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(1, pool.size());
+    }
+}
@@ -0,0 +1,86 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.test.TestConfigurationBuilder;
+import com.braintreepayments.api.test.TestConfigurationBuilder.TestVisaCheckoutConfigurationBuilder;
+import com.visa.checkout.Profile.CardBrand;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutCardBrandsUnitTest {
+
+    @Test
+    public void bit_matchesBraintreeCardTypesAndVisaCardBrands() {
+        assertEquals(VisaCheckoutCardBrands.bit(CardBrand.AMEX), VisaCheckoutCardBrands.bit("American Express"));
+        assertEquals(VisaCheckoutCardBrands.bit(CardBrand.MASTERCARD), VisaCheckoutCardBrands.bit("MasterCard"));
+        assertEquals(VisaCheckoutCardBrands.bit(CardBrand.VISA), VisaCheckoutCardBrands.bit("visa"));
+    }
+
+    @Test
+    public void bit_whenUnknown_returnsZero() {
+        assertEquals(0, VisaCheckoutCardBrands.bit("JCB"));
+        assertEquals(0, VisaCheckoutCardBrands.bit(null));
+    }
+
+    @Test
+    public void accepts_onlyRejectsKnownCardBrandsOutsideOfMask() {
+        int mask = VisaCheckoutCardBrands.mask(Arrays.asList(CardBrand.VISA, CardBrand.MASTERCARD));
+
+        assertTrue(VisaCheckoutCardBrands.accepts(mask, CardBrand.VISA));
+        assertTrue(VisaCheckoutCardBrands.accepts(mask, "mastercard"));
+        assertFalse(VisaCheckoutCardBrands.accepts(mask, CardBrand.DISCOVER));
+        assertTrue(VisaCheckoutCardBrands.accepts(mask, "UNKNOWN"));
+    }
+
+    @Test
+    public void accepts_withEmptyMask_acceptsEveryCardBrand() {
+        int mask = VisaCheckoutCardBrands.mask(Collections.<String>emptyList());
+
+        assertTrue(VisaCheckoutCardBrands.accepts(mask, CardBrand.DISCOVER));
+    }
+
+    @Test
+    public void mask_withConfiguration_matchesAcceptedCardBrands() {
+        int mask = VisaCheckoutCardBrands.mask(configuration(CardBrand.VISA, CardBrand.MASTERCARD));
+
+        assertEquals(VisaCheckoutCardBrands.mask(Arrays.asList(CardBrand.VISA, CardBrand.MASTERCARD)), mask);
+    }
+
+    @Test
+    public void mask_whenConfigurationChanges_recomputesMask() {
+        int mask = VisaCheckoutCardBrands.mask(configuration(CardBrand.VISA, CardBrand.MASTERCARD));
+        int refetchedMask = VisaCheckoutCardBrands.mask(configuration(CardBrand.VISA, CardBrand.MASTERCARD));
+        int changedMask = VisaCheckoutCardBrands.mask(configuration(CardBrand.VISA));
+
+        assertEquals(mask, refetchedMask);
+        assertEquals(VisaCheckoutCardBrands.bit(CardBrand.VISA), changedMask);
+    }
+
+    @Test
+    public void toCardBrands_returnsVisaCardBrandConstants() {
+        String[] cardBrands = VisaCheckoutCardBrands.toCardBrands(Arrays.asList(new String("VISA"), "UNKNOWN"));
+
+        assertSame(CardBrand.VISA, cardBrands[0]);
+        assertEquals("UNKNOWN", cardBrands[1]);
+    }
+
+    private static Configuration configuration(String... cardBrands) {
+        return new TestConfigurationBuilder()
+                .visaCheckout(new TestVisaCheckoutConfigurationBuilder()
+                        .apikey("gwApiKey")
+                        .supportedCardTypes(cardBrands)
+                        .externalClientId("gwExternalClientId"))
+                .buildConfiguration();
+    }
+}
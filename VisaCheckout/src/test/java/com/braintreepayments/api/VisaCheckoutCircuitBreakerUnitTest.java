@@ -0,0 +1,150 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.VisaCheckoutCircuitBreaker.State;
+import com.braintreepayments.api.exceptions.AuthorizationException;
+import com.braintreepayments.api.exceptions.DownForMaintenanceException;
+import com.braintreepayments.api.exceptions.InvalidArgumentException;
+import com.braintreepayments.api.exceptions.RateLimitException;
+import com.braintreepayments.api.exceptions.ServerException;
+import com.braintreepayments.api.exceptions.UnexpectedException;
+import com.braintreepayments.api.models.VisaCheckoutCircuitBreakerPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutCircuitBreakerUnitTest {
+
+    private VisaCheckoutCircuitBreaker mCircuitBreaker;
+
+    @Before
+    public void setup() {
+        mCircuitBreaker = new VisaCheckoutCircuitBreaker(new VisaCheckoutCircuitBreakerPolicy()
+                .windowMillis(10000)
+                .minimumRequests(4)
+                .failureRateThreshold(0.5)
+                .slowRequestMillis(1000)
+                .slowRequestRateThreshold(0.75)
+                .openDurationMillis(5000)
+                .halfOpenProbes(1));
+    }
+
+    @Test
+    public void record_belowMinimumRequests_staysClosed() {
+        recordRequests(3, false, 100, 1000);
+
+        assertEquals(State.CLOSED, mCircuitBreaker.getState());
+    }
+
+    @Test
+    public void record_whenFailureRateReachesThreshold_opens() {
+        recordRequests(2, true, 100, 1000);
+        recordRequests(2, false, 100, 1000);
+
+        assertEquals(State.OPEN, mCircuitBreaker.getState());
+        assertEquals(-1, mCircuitBreaker.tryAcquire(2000));
+        assertEquals(4000, mCircuitBreaker.getRetryAfterMillis(2000));
+    }
+
+    @Test
+    public void record_whenSlowRequestRateReachesThreshold_opens() {
+        recordRequests(1, true, 100, 1000);
+        recordRequests(3, true, 1500, 1000);
+
+        assertEquals(State.OPEN, mCircuitBreaker.getState());
+    }
+
+    @Test
+    public void record_ignoresFailuresThatLeftTheWindow() {
+        recordRequests(3, false, 100, 1000);
+        recordRequests(3, true, 100, 12000);
+
+        assertEquals(State.CLOSED, mCircuitBreaker.getState());
+    }
+
+    @Test
+    public void tryAcquire_afterOpenDuration_letsOneProbeThrough() {
+        open(1000);
+
+        int probe = mCircuitBreaker.tryAcquire(6000);
+
+        assertEquals(State.HALF_OPEN, mCircuitBreaker.getState());
+        assertTrue(probe >= 0);
+        assertEquals(-1, mCircuitBreaker.tryAcquire(6000));
+    }
+
+    @Test
+    public void record_whenProbeSucceeds_closes() {
+        open(1000);
+        int probe = mCircuitBreaker.tryAcquire(6000);
+
+        mCircuitBreaker.record(probe, true, 100, 6100);
+
+        assertEquals(State.CLOSED, mCircuitBreaker.getState());
+        recordRequests(1, false, 100, 6200);
+        assertEquals(State.CLOSED, mCircuitBreaker.getState());
+    }
+
+    @Test
+    public void record_whenProbeFails_opensAgain() {
+        open(1000);
+        int probe = mCircuitBreaker.tryAcquire(6000);
+
+        mCircuitBreaker.record(probe, false, 100, 6100);
+
+        assertEquals(State.OPEN, mCircuitBreaker.getState());
+        assertEquals(-1, mCircuitBreaker.tryAcquire(10000));
+        assertTrue(mCircuitBreaker.tryAcquire(11100) >= 0);
+    }
+
+    @Test
+    public void tryAcquire_whenProbeNeverCompletes_letsAnotherProbeThrough() {
+        open(1000);
+        mCircuitBreaker.tryAcquire(6000);
+
+        assertTrue(mCircuitBreaker.tryAcquire(11000) >= 0);
+    }
+
+    @Test
+    public void record_ignoresRequestsSentBeforeCircuitOpened() {
+        int staleRequest = mCircuitBreaker.tryAcquire(1000);
+        open(1000);
+        int probe = mCircuitBreaker.tryAcquire(6000);
+
+        mCircuitBreaker.record(staleRequest, false, 100, 6050);
+        assertEquals(State.HALF_OPEN, mCircuitBreaker.getState());
+
+        mCircuitBreaker.record(probe, true, 100, 6100);
+        assertEquals(State.CLOSED, mCircuitBreaker.getState());
+    }
+
+    @Test
+    public void isFailure_onlyForConnectivityAndServerErrors() {
+        assertTrue(VisaCheckoutCircuitBreaker.isFailure(new IOException("timeout")));
+        assertTrue(VisaCheckoutCircuitBreaker.isFailure(new ServerException("error")));
+        assertTrue(VisaCheckoutCircuitBreaker.isFailure(new DownForMaintenanceException("error")));
+        assertTrue(VisaCheckoutCircuitBreaker.isFailure(new RateLimitException("error")));
+        assertFalse(VisaCheckoutCircuitBreaker.isFailure(new AuthorizationException("error")));
+        assertFalse(VisaCheckoutCircuitBreaker.isFailure(new InvalidArgumentException("error")));
+        assertFalse(VisaCheckoutCircuitBreaker.isFailure(new UnexpectedException("error")));
+    }
+
+    private void open(long now) {
+        recordRequests(4, false, 100, now);
+        assertEquals(State.OPEN, mCircuitBreaker.getState());
+    }
+
+    private void recordRequests(int count, boolean success, long durationMillis, long now) {
+        for (int i = 0; i < count; i++) {
+            mCircuitBreaker.record(mCircuitBreaker.tryAcquire(now), success, durationMillis, now);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.braintreepayments.api;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.braintreepayments.api.interfaces.BraintreeResponseListener;
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.test.TestConfigurationBuilder;
+import com.braintreepayments.api.test.TestConfigurationBuilder.TestVisaCheckoutConfigurationBuilder;
+import com.visa.checkout.Profile.CardBrand;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutConfigurationSnapshotUnitTest {
+
+    private static final long TTL_MILLIS = 24 * 60 * 60 * 1000;
+    private static final String KEY =
+            "https://api.sandbox.braintreegateway.com/merchants/merchant_id/client_api/v1/configuration";
+
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+        VisaCheckoutConfigurationSnapshot.clear(mContext);
+        VisaCheckoutConfigurationSnapshot.setTtl(TTL_MILLIS);
+    }
+
+    @After
+    public void teardown() {
+        VisaCheckoutConfigurationSnapshot.clear(mContext);
+        VisaCheckoutTestHelper.resetVisaCheckout();
+    }
+
+    @Test
+    public void load_returnsSavedSnapshot() {
+        Configuration configuration = configuration("gwApiKey");
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration, 1000);
+
+        VisaCheckoutConfigurationSnapshot snapshot = VisaCheckoutConfigurationSnapshot.load(mContext, KEY, 2000);
+
+        assertNotNull(snapshot);
+        assertTrue(snapshot.matches(configuration));
+        assertFalse(snapshot.matches(configuration("otherGwApiKey")));
+        assertNotNull(snapshot.toProfileTemplate().newProfileBuilder());
+    }
+
+    @Test
+    public void loadInBackground_readsOffMainThreadAndRespondsOnMainThread() throws InterruptedException {
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration("gwApiKey"));
+        final AtomicReference<VisaCheckoutConfigurationSnapshot> snapshot = new AtomicReference<>();
+        final AtomicReference<Thread> responseThread = new AtomicReference<>();
+
+        VisaCheckoutConfigurationSnapshot.loadInBackground(mContext, KEY,
+                new BraintreeResponseListener<VisaCheckoutConfigurationSnapshot>() {
+                    @Override
+                    public void onResponse(VisaCheckoutConfigurationSnapshot loadedSnapshot) {
+                        snapshot.set(loadedSnapshot);
+                        responseThread.set(Thread.currentThread());
+                    }
+                });
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (responseThread.get() == null && System.currentTimeMillis() < deadline) {
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            Thread.sleep(5);
+        }
+
+        assertSame(Looper.getMainLooper().getThread(), responseThread.get());
+        assertTrue(snapshot.get().matches(configuration("gwApiKey")));
+    }
+
+    @Test
+    public void load_withOtherKey_returnsNull() {
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration("gwApiKey"), 1000);
+
+        assertNull(VisaCheckoutConfigurationSnapshot.load(mContext, KEY + "/other", 2000));
+        assertNull(VisaCheckoutConfigurationSnapshot.load(mContext, null, 2000));
+    }
+
+    @Test
+    public void load_afterTtl_returnsNullAndDeletesSnapshot() {
+        VisaCheckoutConfigurationSnapshot.setTtl(1000);
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration("gwApiKey"), 1000);
+
+        assertNull(VisaCheckoutConfigurationSnapshot.load(mContext, KEY, 2000));
+        assertFalse(preferences().contains(KEY));
+    }
+
+    @Test
+    public void load_withMalformedSnapshot_returnsNullAndDeletesSnapshot() {
+        preferences().edit().putString(KEY, "{\"apikey\":").commit();
+
+        assertNull(VisaCheckoutConfigurationSnapshot.load(mContext, KEY, 2000));
+        assertFalse(preferences().contains(KEY));
+    }
+
+    @Test
+    public void save_withUnchangedConfiguration_doesNotRewriteSnapshot() {
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration("gwApiKey"), 1000);
+        preferences().edit().remove(KEY).commit();
+
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration("gwApiKey"), 2000);
+
+        assertFalse(preferences().contains(KEY));
+    }
+
+    @Test
+    public void save_withChangedConfiguration_rewritesSnapshot() {
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration("gwApiKey"), 1000);
+
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration("otherGwApiKey"), 2000);
+
+        VisaCheckoutConfigurationSnapshot snapshot = VisaCheckoutConfigurationSnapshot.load(mContext, KEY, 3000);
+        assertTrue(snapshot.matches(configuration("otherGwApiKey")));
+    }
+
+    @Test
+    public void save_afterHalfOfTtl_rewritesSnapshot() {
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration("gwApiKey"), 1000);
+        preferences().edit().remove(KEY).commit();
+
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration("gwApiKey"), 1000 + TTL_MILLIS / 2);
+
+        assertTrue(preferences().contains(KEY));
+    }
+
+    @Test
+    public void save_whenDisabled_doesNotPersistSnapshot() {
+        VisaCheckoutConfigurationSnapshot.setTtl(0);
+
+        VisaCheckoutConfigurationSnapshot.save(mContext, KEY, configuration("gwApiKey"), 1000);
+
+        assertFalse(preferences().contains(KEY));
+    }
+
+    private SharedPreferences preferences() {
+        return mContext.getSharedPreferences(VisaCheckoutConfigurationSnapshot.PREFERENCES_NAME,
+                Context.MODE_PRIVATE);
+    }
+
+    private static Configuration configuration(String apiKey) {
+        return new TestConfigurationBuilder()
+                .visaCheckout(new TestVisaCheckoutConfigurationBuilder()
+                        .apikey(apiKey)
+                        .supportedCardTypes(CardBrand.VISA, CardBrand.MASTERCARD)
+                        .externalClientId("gwExternalClientId"))
+                .buildConfiguration();
+    }
+}
@@ -0,0 +1,248 @@
+package com.braintreepayments.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutFutureUnitTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Test
+    public void complete_notifiesListenersOnce() throws Exception {
+        VisaCheckoutFuture<String> future = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture.Listener<String> listener = mock(VisaCheckoutFuture.Listener.class);
+        future.addListener(listener, DIRECT_EXECUTOR);
+
+        assertTrue(future.complete("result"));
+        assertFalse(future.fail(new Exception()));
+
+        verify(listener).onSuccess("result");
+        verify(listener, never()).onFailure(any(Exception.class));
+        assertTrue(future.isDone());
+        assertEquals("result", future.get());
+    }
+
+    @Test
+    public void addListener_whenAlreadyDone_notifiesImmediately() {
+        VisaCheckoutFuture.Listener<String> listener = mock(VisaCheckoutFuture.Listener.class);
+        Exception exception = new Exception("failure");
+
+        VisaCheckoutFuture.<String>failed(exception).addListener(listener, DIRECT_EXECUTOR);
+
+        verify(listener).onFailure(exception);
+    }
+
+    @Test
+    public void get_whenFailed_throwsExecutionException() throws InterruptedException {
+        Exception exception = new Exception("failure");
+
+        try {
+            VisaCheckoutFuture.failed(exception).get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void get_withTimeout_whenNotDone_throwsTimeoutException() throws Exception {
+        new VisaCheckoutFuture<String>().get(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void map_transformsResult() throws Exception {
+        VisaCheckoutFuture<Integer> mapped = VisaCheckoutFuture.completed("result")
+                .map(new VisaCheckoutFuture.Function<String, Integer>() {
+                    @Override
+                    public Integer apply(String result) {
+                        return result.length();
+                    }
+                }, DIRECT_EXECUTOR);
+
+        assertEquals(6, (int) mapped.get());
+    }
+
+    @Test
+    public void map_whenFunctionThrows_fails() throws InterruptedException {
+        final Exception exception = new Exception("failure");
+        VisaCheckoutFuture<Integer> mapped = VisaCheckoutFuture.completed("result")
+                .map(new VisaCheckoutFuture.Function<String, Integer>() {
+                    @Override
+                    public Integer apply(String result) throws Exception {
+                        throw exception;
+                    }
+                }, DIRECT_EXECUTOR);
+
+        try {
+            mapped.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+    }
+
+    @Test
+    public void then_chainsOperations() throws Exception {
+        final VisaCheckoutFuture<String> second = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture<String> first = new VisaCheckoutFuture<>();
+
+        VisaCheckoutFuture<String> chained = first.then(new VisaCheckoutFuture.AsyncFunction<String, String>() {
+            @Override
+            public VisaCheckoutFuture<String> apply(String result) {
+                return second;
+            }
+        }, DIRECT_EXECUTOR);
+
+        first.complete("first");
+        assertFalse(chained.isDone());
+
+        second.complete("second");
+        assertEquals("second", chained.get());
+    }
+
+    @Test
+    public void then_whenCanceled_cancelsRunningOperation() {
+        final VisaCheckoutFuture<String> second = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture<String> first = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture<String> chained = first.then(new VisaCheckoutFuture.AsyncFunction<String, String>() {
+            @Override
+            public VisaCheckoutFuture<String> apply(String result) {
+                return second;
+            }
+        }, DIRECT_EXECUTOR);
+        first.complete("first");
+
+        chained.cancel(true);
+
+        assertTrue(chained.isCancelled());
+        assertTrue(second.isCancelled());
+    }
+
+    @Test
+    public void map_whenOneOfSeveralDependentsIsCanceled_doesNotCancelSource() throws Exception {
+        VisaCheckoutFuture<String> source = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture<Integer> canceled = source.map(length(), DIRECT_EXECUTOR);
+        VisaCheckoutFuture<Integer> waiting = source.map(length(), DIRECT_EXECUTOR);
+
+        canceled.cancel(true);
+        source.complete("result");
+
+        assertTrue(canceled.isCancelled());
+        assertFalse(source.isCancelled());
+        assertEquals(6, (int) waiting.get());
+    }
+
+    @Test
+    public void map_whenEveryDependentIsCanceled_cancelsSource() {
+        VisaCheckoutFuture<String> source = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture<Integer> first = source.map(length(), DIRECT_EXECUTOR);
+        VisaCheckoutFuture<Integer> second = source.map(length(), DIRECT_EXECUTOR);
+
+        first.cancel(true);
+        first.cancel(true);
+        assertFalse(source.isCancelled());
+
+        second.cancel(true);
+        assertTrue(source.isCancelled());
+    }
+
+    @Test
+    public void then_whenRunningOperationHasOtherDependents_doesNotCancelIt() {
+        final VisaCheckoutFuture<String> shared = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture<Integer> otherDependent = shared.map(length(), DIRECT_EXECUTOR);
+        VisaCheckoutFuture<String> first = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture<String> chained = first.then(new VisaCheckoutFuture.AsyncFunction<String, String>() {
+            @Override
+            public VisaCheckoutFuture<String> apply(String result) {
+                return shared;
+            }
+        }, DIRECT_EXECUTOR);
+        first.complete("first");
+
+        chained.cancel(true);
+
+        assertTrue(chained.isCancelled());
+        assertFalse(shared.isCancelled());
+        assertFalse(otherDependent.isDone());
+    }
+
+    @Test
+    public void cancel_failsWithCancellationException() throws Exception {
+        VisaCheckoutFuture<String> future = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture.Listener<String> listener = mock(VisaCheckoutFuture.Listener.class);
+        future.addListener(listener, DIRECT_EXECUTOR);
+
+        assertTrue(future.cancel(false));
+        assertFalse(future.complete("result"));
+
+        verify(listener).onFailure(any(CancellationException.class));
+        try {
+            future.get();
+            fail("Expected CancellationException");
+        } catch (CancellationException ignored) {}
+    }
+
+    @Test
+    public void allOf_completesWithResultsInOrder() throws Exception {
+        VisaCheckoutFuture<String> first = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture<String> second = new VisaCheckoutFuture<>();
+
+        VisaCheckoutFuture<List<String>> combined = VisaCheckoutFuture.allOf(Arrays.asList(first, second));
+        second.complete("second");
+        assertFalse(combined.isDone());
+        first.complete("first");
+
+        assertEquals(Arrays.asList("first", "second"), combined.get());
+    }
+
+    @Test
+    public void allOf_whenOneFails_fails() throws InterruptedException {
+        VisaCheckoutFuture<String> first = new VisaCheckoutFuture<>();
+        VisaCheckoutFuture<String> second = new VisaCheckoutFuture<>();
+        Exception exception = new Exception("failure");
+
+        VisaCheckoutFuture<List<String>> combined = VisaCheckoutFuture.allOf(Arrays.asList(first, second));
+        second.fail(exception);
+
+        try {
+            combined.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+    }
+
+    private static VisaCheckoutFuture.Function<String, Integer> length() {
+        return new VisaCheckoutFuture.Function<String, Integer>() {
+            @Override
+            public Integer apply(String result) {
+                return result.length();
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.exceptions.InvalidArgumentException;
+import android.util.Base64;
+
+import com.braintreepayments.api.models.Authorization;
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+import com.braintreepayments.api.test.StubHttpServer;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.braintreepayments.api.test.FixturesHelper.stringFromFixture;
+import static com.braintreepayments.api.test.VisaPaymentSummaryHelper.sampleVisaPaymentSummary;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutHttpClientUnitTest {
+
+    private static final String TOKENIZATION_KEY = "sandbox_tmxhyf7d_dcpspy2brwdjr3qn";
+    private static final String PATH = "/v1/payment_methods/visa_checkout_cards";
+    private static final String BODY = "{\"visaCheckoutCard\":{\"encryptedPaymentData\":\"stubbedEncPaymentData\"}}";
+
+    private StubHttpServer mServer;
+    private VisaCheckoutHttpClient mHttpClient;
+
+    @Before
+    public void setup() throws IOException, InvalidArgumentException {
+        mServer = new StubHttpServer();
+        mHttpClient = new VisaCheckoutHttpClient(Authorization.fromString(TOKENIZATION_KEY), mServer.getUrl());
+    }
+
+    @After
+    public void tearDown() {
+        VisaCheckoutTestHelper.resetVisaCheckout();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void post_withoutCompression_sendsPlainBody() throws Exception {
+        mServer.enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"));
+
+        mHttpClient.post(PATH, BODY, new VisaCheckoutHttpClient.Request(null));
+
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(0);
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals(BODY, new String(request.getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void post_withCompression_sendsGzipBodyAndReadsGzipResponse() throws Exception {
+        String response = stringFromFixture("payment_methods/visa_checkout_response.json");
+        mServer.enqueue(201, response);
+        VisaCheckoutHttpClient.setCompressionEnabled(true);
+
+        String responseBody = mHttpClient.post(PATH, BODY, new VisaCheckoutHttpClient.Request(null));
+
+        assertEquals(response, responseBody);
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(0);
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertEquals("gzip", request.getHeader("Accept-Encoding"));
+        assertEquals(BODY, request.getDecodedBody());
+    }
+
+    @Test
+    public void post_whenServerRefusesCompression_sendsUncompressedFromThenOn() throws Exception {
+        String response = stringFromFixture("payment_methods/visa_checkout_response.json");
+        mServer.refuseCompressedRequests()
+                .enqueue(201, response);
+        VisaCheckoutHttpClient.setCompressionEnabled(true);
+
+        assertEquals(response, mHttpClient.post(PATH, BODY, new VisaCheckoutHttpClient.Request(null)));
+        assertEquals(response, mHttpClient.post(PATH, BODY, new VisaCheckoutHttpClient.Request(null)));
+
+        List<StubHttpServer.RecordedRequest> requests = mServer.getRequests();
+        assertEquals(3, requests.size());
+        assertEquals("gzip", requests.get(0).getHeader("Content-Encoding"));
+        assertNull(requests.get(1).getHeader("Content-Encoding"));
+        assertEquals(BODY, new String(requests.get(1).getBody(), "UTF-8"));
+        assertNull(requests.get(2).getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void post_withVisaCheckoutBuilder_streamsBody() throws Exception {
+        mServer.enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"));
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(sampleVisaPaymentSummary());
+
+        mHttpClient.post(PATH, visaCheckoutBuilder, new VisaCheckoutHttpClient.Request(null));
+
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(0);
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals(visaCheckoutBuilder.build(), new String(request.getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void post_withVisaCheckoutBuilderAndCompression_streamsGzipBody() throws Exception {
+        mServer.enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"));
+        VisaCheckoutHttpClient.setCompressionEnabled(true);
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(sampleVisaPaymentSummary());
+
+        mHttpClient.post(PATH, visaCheckoutBuilder, new VisaCheckoutHttpClient.Request(null));
+
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(0);
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertEquals(visaCheckoutBuilder.build(), request.getDecodedBody());
+    }
+
+    @Test
+    public void post_withVisaCheckoutBuilderAndClientToken_addsAuthorizationFingerprint() throws Exception {
+        String clientToken = Base64.encodeToString(("{\"configUrl\":\"" + mServer.getUrl()
+                + "/v1/configuration\",\"authorizationFingerprint\":\"stubbedFingerprint\"}").getBytes("UTF-8"),
+                Base64.NO_WRAP);
+        mServer.enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"));
+        VisaCheckoutHttpClient httpClient = new VisaCheckoutHttpClient(Authorization.fromString(clientToken),
+                mServer.getUrl());
+
+        httpClient.post(PATH, new VisaCheckoutBuilder(sampleVisaPaymentSummary()),
+                new VisaCheckoutHttpClient.Request(null));
+
+        JSONObject body = new JSONObject(new String(mServer.getRequests().get(0).getBody(), "UTF-8"));
+        assertEquals("stubbedFingerprint", body.getString("authorizationFingerprint"));
+        assertEquals("stubbedEncPaymentData", body.getJSONObject("visaCheckoutCard")
+                .getString("encryptedPaymentData"));
+        assertTrue(body.has("_meta"));
+    }
+}
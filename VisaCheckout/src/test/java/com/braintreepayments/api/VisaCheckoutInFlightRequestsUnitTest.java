@@ -0,0 +1,66 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutInFlightRequestsUnitTest {
+
+    private VisaCheckoutInFlightRequests mInFlightRequests;
+
+    @Before
+    public void setup() {
+        mInFlightRequests = new VisaCheckoutInFlightRequests();
+    }
+
+    @Test
+    public void join_withNullCallId_returnsCallbackWithoutTracking() {
+        PaymentMethodNonceCallback callback = mock(PaymentMethodNonceCallback.class);
+
+        assertSame(callback, mInFlightRequests.join(null, callback));
+        assertSame(callback, mInFlightRequests.join(null, callback));
+    }
+
+    @Test
+    public void join_whenRequestInFlight_attachesToPendingRequest() {
+        PaymentMethodNonceCallback firstCallback = mock(PaymentMethodNonceCallback.class);
+        PaymentMethodNonceCallback secondCallback = mock(PaymentMethodNonceCallback.class);
+        PaymentMethodNonce paymentMethodNonce = mock(PaymentMethodNonce.class);
+
+        PaymentMethodNonceCallback requestCallback = mInFlightRequests.join("callId", firstCallback);
+
+        assertNotNull(requestCallback);
+        assertNull(mInFlightRequests.join("callId", secondCallback));
+
+        requestCallback.success(paymentMethodNonce);
+
+        verify(firstCallback).success(paymentMethodNonce);
+        verify(secondCallback).success(paymentMethodNonce);
+    }
+
+    @Test
+    public void join_afterRequestCompletes_startsNewRequest() {
+        PaymentMethodNonceCallback callback = mock(PaymentMethodNonceCallback.class);
+        Exception exception = new Exception("Mock Failure");
+
+        mInFlightRequests.join("callId", callback).failure(exception);
+
+        verify(callback).failure(exception);
+        assertFalse(mInFlightRequests.isInFlight("callId"));
+        assertNotNull(mInFlightRequests.join("callId", callback));
+        assertTrue(mInFlightRequests.isInFlight("callId"));
+    }
+}
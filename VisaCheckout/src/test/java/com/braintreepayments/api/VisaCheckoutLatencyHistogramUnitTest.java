@@ -0,0 +1,66 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.VisaCheckoutLatencySnapshot;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutLatencyHistogramUnitTest {
+
+    @Test
+    public void bucketUpperBound_isWithinTwentyFivePercentOfValue() {
+        for (long micros = 0; micros < 10000000; micros = micros * 3 / 2 + 1) {
+            long upperBound = VisaCheckoutLatencyHistogram.bucketUpperBoundMicros(
+                    VisaCheckoutLatencyHistogram.bucketIndex(micros));
+
+            assertTrue(upperBound >= micros);
+            assertTrue(upperBound <= micros * 1.25 + 1);
+        }
+    }
+
+    @Test
+    public void snapshot_returnsPercentiles() {
+        VisaCheckoutLatencyHistogram histogram = new VisaCheckoutLatencyHistogram(VisaCheckoutPhase.TOKENIZE);
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        VisaCheckoutLatencySnapshot snapshot = histogram.snapshot();
+
+        assertEquals(VisaCheckoutPhase.TOKENIZE, snapshot.getPhase());
+        assertEquals(100, snapshot.getCount());
+        assertEquals(100d, snapshot.getMaxMillis(), 0.001);
+        assertTrue(snapshot.getP50Millis() >= 50 && snapshot.getP50Millis() <= 62.5);
+        assertTrue(snapshot.getP95Millis() >= 95 && snapshot.getP95Millis() <= 100);
+        assertTrue(snapshot.getP99Millis() >= 99 && snapshot.getP99Millis() <= 100);
+    }
+
+    @Test
+    public void snapshot_whenEmpty_returnsZero() {
+        VisaCheckoutLatencySnapshot snapshot = new VisaCheckoutLatencyHistogram(VisaCheckoutPhase.NETWORK)
+                .snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0d, snapshot.getP50Millis(), 0);
+        assertEquals(0d, snapshot.getP99Millis(), 0);
+    }
+
+    @Test
+    public void reset_clearsRecordedDurations() {
+        VisaCheckoutLatencyHistogram histogram = new VisaCheckoutLatencyHistogram(VisaCheckoutPhase.NETWORK);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+
+        histogram.reset();
+
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0d, histogram.snapshot().getMaxMillis(), 0);
+    }
+}
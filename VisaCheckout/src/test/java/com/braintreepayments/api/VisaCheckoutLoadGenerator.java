@@ -0,0 +1,257 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+import com.braintreepayments.api.models.VisaCheckoutLatencySnapshot;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+import com.visa.checkout.VisaPaymentSummary;
+
+import org.json.JSONException;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.braintreepayments.api.test.VisaPaymentSummaryHelper.sampleVisaPaymentSummary;
+
+/**
+ * Drives concurrent tokenizations through
+ * {@link VisaCheckout#tokenize(BraintreeFragment, VisaPaymentSummary, PaymentMethodNonceCallback)}, keeping a fixed
+ * number of them in flight, and reports throughput and latency percentiles.
+ *
+ * Must be run on the main thread of a Robolectric test. Callbacks posted to the main thread are run while waiting, so
+ * measured latencies include up to a millisecond of main thread scheduling. Every payment has its own call id, so
+ * neither the nonce cache nor request coalescing shortens the run. The latency histograms of
+ * {@link VisaCheckout#getLatencySnapshot(VisaCheckoutPhase)} are reset when a run starts.
+ */
+class VisaCheckoutLoadGenerator {
+
+    private final BraintreeFragment mFragment;
+
+    private int mRequests = 100;
+    private int mConcurrency = VisaCheckout.DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private long mTimeoutMillis = 30000;
+
+    VisaCheckoutLoadGenerator(BraintreeFragment fragment) {
+        mFragment = fragment;
+    }
+
+    /**
+     * @param requests the number of payments to tokenize.
+     */
+    VisaCheckoutLoadGenerator requests(int requests) {
+        mRequests = requests;
+        return this;
+    }
+
+    /**
+     * @param concurrency the number of tokenizations kept in flight.
+     */
+    VisaCheckoutLoadGenerator concurrency(int concurrency) {
+        mConcurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @param timeoutMillis the time after which the run stops waiting. Tokenizations that have not completed by then
+     * are reported as incomplete.
+     */
+    VisaCheckoutLoadGenerator timeoutMillis(long timeoutMillis) {
+        mTimeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    Report run() throws JSONException, InterruptedException {
+        VisaCheckout.resetLatencyHistograms();
+
+        String runId = UUID.randomUUID().toString();
+        Recorder recorder = new Recorder(mRequests);
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(mTimeoutMillis);
+
+        int started = 0;
+        while (recorder.getCompleted() < mRequests && System.nanoTime() < deadlineNanos) {
+            while (started < mRequests && started - recorder.getCompleted() < mConcurrency) {
+                VisaCheckout.tokenize(mFragment, sampleVisaPaymentSummary(runId + "-" + started),
+                        recorder.newCallback());
+                started++;
+            }
+
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            Thread.sleep(1);
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Map<VisaCheckoutPhase, VisaCheckoutLatencySnapshot> phases = new EnumMap<>(VisaCheckoutPhase.class);
+        for (VisaCheckoutPhase phase : VisaCheckoutPhase.values()) {
+            phases.put(phase, VisaCheckout.getLatencySnapshot(phase));
+        }
+
+        return recorder.report(mConcurrency, elapsedNanos, phases);
+    }
+
+    private static class Recorder {
+
+        private final int mRequests;
+        private final long[] mLatenciesNanos;
+        private final Map<String, Integer> mFailures = new TreeMap<>();
+
+        private int mCompleted;
+        private int mSucceeded;
+
+        Recorder(int requests) {
+            mRequests = requests;
+            mLatenciesNanos = new long[requests];
+        }
+
+        PaymentMethodNonceCallback newCallback() {
+            final long startNanos = System.nanoTime();
+            return new PaymentMethodNonceCallback() {
+                @Override
+                public void success(PaymentMethodNonce paymentMethodNonce) {
+                    record(startNanos, null);
+                }
+
+                @Override
+                public void failure(Exception exception) {
+                    record(startNanos, exception);
+                }
+            };
+        }
+
+        synchronized int getCompleted() {
+            return mCompleted;
+        }
+
+        private synchronized void record(long startNanos, Exception exception) {
+            mLatenciesNanos[mCompleted++] = System.nanoTime() - startNanos;
+            if (exception == null) {
+                mSucceeded++;
+            } else {
+                String type = exception.getClass().getSimpleName();
+                Integer count = mFailures.get(type);
+                mFailures.put(type, count == null ? 1 : count + 1);
+            }
+        }
+
+        synchronized Report report(int concurrency, long elapsedNanos,
+                Map<VisaCheckoutPhase, VisaCheckoutLatencySnapshot> phases) {
+            long[] latenciesNanos = Arrays.copyOf(mLatenciesNanos, mCompleted);
+            Arrays.sort(latenciesNanos);
+            return new Report(mRequests, concurrency, mSucceeded, new TreeMap<>(mFailures), elapsedNanos,
+                    latenciesNanos, phases);
+        }
+    }
+
+    /**
+     * The outcome of a run. Percentiles are exact, computed with the nearest rank method over the end to end
+     * latencies of all completed tokenizations.
+     */
+    static class Report {
+
+        private final int mRequests;
+        private final int mConcurrency;
+        private final int mSucceeded;
+        private final Map<String, Integer> mFailures;
+        private final long mElapsedNanos;
+        private final long[] mLatenciesNanos;
+        private final Map<VisaCheckoutPhase, VisaCheckoutLatencySnapshot> mPhases;
+
+        Report(int requests, int concurrency, int succeeded, Map<String, Integer> failures, long elapsedNanos,
+                long[] latenciesNanos, Map<VisaCheckoutPhase, VisaCheckoutLatencySnapshot> phases) {
+            mRequests = requests;
+            mConcurrency = concurrency;
+            mSucceeded = succeeded;
+            mFailures = Collections.unmodifiableMap(failures);
+            mElapsedNanos = elapsedNanos;
+            mLatenciesNanos = latenciesNanos;
+            mPhases = phases;
+        }
+
+        int getSucceeded() {
+            return mSucceeded;
+        }
+
+        /**
+         * @return the number of failed tokenizations by the simple class name of their exception.
+         */
+        Map<String, Integer> getFailures() {
+            return mFailures;
+        }
+
+        int getFailed() {
+            int failed = 0;
+            for (int count : mFailures.values()) {
+                failed += count;
+            }
+            return failed;
+        }
+
+        /**
+         * @return the number of tokenizations that had not completed when the run timed out.
+         */
+        int getIncomplete() {
+            return mRequests - mLatenciesNanos.length;
+        }
+
+        double getElapsedMillis() {
+            return mElapsedNanos / 1e6;
+        }
+
+        /**
+         * @return completed tokenizations per second.
+         */
+        double getThroughput() {
+            return mElapsedNanos == 0 ? 0 : mLatenciesNanos.length / (mElapsedNanos / 1e9);
+        }
+
+        /**
+         * @param percentile between 0 and 1.
+         * @return the latency in milliseconds below which {@code percentile} of the tokenizations completed.
+         */
+        double getPercentileMillis(double percentile) {
+            if (mLatenciesNanos.length == 0) {
+                return 0;
+            }
+
+            int rank = (int) Math.ceil(percentile * mLatenciesNanos.length);
+            return mLatenciesNanos[Math.min(Math.max(rank, 1), mLatenciesNanos.length) - 1] / 1e6;
+        }
+
+        /**
+         * @return the latency histogram of {@code phase} for this run.
+         */
+        VisaCheckoutLatencySnapshot getPhase(VisaCheckoutPhase phase) {
+            return mPhases.get(phase);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder()
+                    .append(String.format(Locale.US, "%d requests, concurrency %d, %.1f ms, %.1f requests/s%n",
+                            mRequests, mConcurrency, getElapsedMillis(), getThroughput()))
+                    .append(String.format(Locale.US, "  succeeded %d, failed %d %s, incomplete %d%n",
+                            mSucceeded, getFailed(), mFailures, getIncomplete()))
+                    .append(String.format(Locale.US, "  latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                            getPercentileMillis(0.50), getPercentileMillis(0.90), getPercentileMillis(0.99),
+                            getPercentileMillis(1)));
+
+            for (VisaCheckoutLatencySnapshot snapshot : mPhases.values()) {
+                if (snapshot.getCount() > 0) {
+                    report.append(String.format(Locale.US,
+                            "  %s: count %d, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                            snapshot.getPhase(), snapshot.getCount(), snapshot.getP50Millis(),
+                            snapshot.getP95Millis(), snapshot.getP99Millis(), snapshot.getMaxMillis()));
+                }
+            }
+
+            return report.toString();
+        }
+    }
+}
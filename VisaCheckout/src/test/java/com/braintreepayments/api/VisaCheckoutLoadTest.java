@@ -0,0 +1,126 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.exceptions.InvalidArgumentException;
+import com.braintreepayments.api.models.Authorization;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+import com.braintreepayments.api.test.FakeGatewayServer;
+import com.braintreepayments.api.test.TestConfigurationBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+/**
+ * Runs against a local gateway with simulated latency and takes seconds, so it is only run with
+ * {@code ./gradlew :VisaCheckout:testReleaseUnitTest -PloadTests}.
+ */
+public class VisaCheckoutLoadTest {
+
+    private static final String TOKENIZATION_KEY = "sandbox_tmxhyf7d_dcpspy2brwdjr3qn";
+
+    private FakeGatewayServer mGateway;
+    private BraintreeFragment mFragment;
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setup() throws IOException, InvalidArgumentException {
+        VisaCheckout.clearNonceCache();
+
+        mGateway = new FakeGatewayServer();
+        Authorization authorization = Authorization.fromString(TOKENIZATION_KEY);
+        mFragment = new MockFragmentBuilder()
+                .authorization(authorization)
+                .configuration(new TestConfigurationBuilder()
+                        .clientApiUrl(mGateway.getUrl())
+                        .buildConfiguration())
+                .httpClient(new VisaCheckoutHttpClient(authorization, mGateway.getUrl()))
+                .build();
+    }
+
+    @After
+    public void teardown() {
+        VisaCheckoutTestHelper.resetVisaCheckout();
+        mGateway.shutdown();
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void tokenize_underConcurrentLoad_completesEveryRequest() throws Exception {
+        mGateway.latency(10, 30);
+
+        VisaCheckoutLoadGenerator.Report report = new VisaCheckoutLoadGenerator(mFragment)
+                .requests(40)
+                .concurrency(8)
+                .run();
+
+        assertEquals(40, report.getSucceeded());
+        assertEquals(0, report.getFailed());
+        assertEquals(0, report.getIncomplete());
+        assertEquals(40, mGateway.getRequestCount());
+        assertTrue(report.getPercentileMillis(0.50) >= 10);
+        assertTrue(report.getPercentileMillis(0.99) <= report.getPercentileMillis(1));
+        assertTrue(report.getThroughput() > 0);
+        assertEquals(40, report.getPhase(VisaCheckoutPhase.TOKENIZE).getCount());
+    }
+
+    @Test
+    public void tokenize_withSlowTail_reportsTailLatency() throws Exception {
+        mGateway.latency(1, 5)
+                .slowResponses(0.1, 200)
+                .seed(7);
+
+        VisaCheckoutLoadGenerator.Report report = new VisaCheckoutLoadGenerator(mFragment)
+                .requests(50)
+                .concurrency(10)
+                .run();
+
+        assertEquals(50, report.getSucceeded());
+        assertTrue(report.getPercentileMillis(0.50) < 200);
+        assertTrue(report.getPercentileMillis(1) >= 200);
+    }
+
+    @Test
+    public void tokenize_withErrorProfile_reportsFailuresByType() throws Exception {
+        mGateway.latency(1, 5)
+                .errors(0.5, 500)
+                .seed(1);
+
+        VisaCheckoutLoadGenerator.Report report = new VisaCheckoutLoadGenerator(mFragment)
+                .requests(40)
+                .concurrency(8)
+                .run();
+
+        assertEquals(0, report.getIncomplete());
+        assertEquals(40, report.getSucceeded() + report.getFailed());
+        assertTrue(report.getSucceeded() > 0);
+        assertEquals(report.getFailed(), (int) report.getFailures().get("ServerException"));
+    }
+
+    @Test
+    public void tokenize_withTokenizationExecutor_completesEveryRequest() throws Exception {
+        mExecutor = Executors.newSingleThreadExecutor();
+        VisaCheckout.setTokenizationExecutor(mExecutor);
+        mGateway.latency(5, 15);
+
+        VisaCheckoutLoadGenerator.Report report = new VisaCheckoutLoadGenerator(mFragment)
+                .requests(40)
+                .concurrency(8)
+                .run();
+
+        assertEquals(40, report.getSucceeded());
+        assertEquals(0, report.getIncomplete());
+        assertEquals(40, report.getPhase(VisaCheckoutPhase.NETWORK).getCount());
+    }
+}
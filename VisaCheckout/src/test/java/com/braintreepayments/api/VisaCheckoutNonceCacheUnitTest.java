@@ -0,0 +1,85 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.PaymentMethodNonce;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutNonceCacheUnitTest {
+
+    private long mNow;
+    private VisaCheckoutNonceCache mNonceCache;
+
+    @Before
+    public void setup() {
+        mNow = 1000;
+        mNonceCache = new VisaCheckoutNonceCache(100, 2) {
+            @Override
+            long now() {
+                return mNow;
+            }
+        };
+    }
+
+    @Test
+    public void get_returnsCachedNonce() {
+        PaymentMethodNonce paymentMethodNonce = mock(PaymentMethodNonce.class);
+
+        mNonceCache.put("callId", paymentMethodNonce);
+
+        assertSame(paymentMethodNonce, mNonceCache.get("callId"));
+        assertNull(mNonceCache.get("otherCallId"));
+        assertNull(mNonceCache.get(null));
+    }
+
+    @Test
+    public void get_afterTtl_returnsNull() {
+        mNonceCache.put("callId", mock(PaymentMethodNonce.class));
+
+        mNow += 100;
+
+        assertNull(mNonceCache.get("callId"));
+    }
+
+    @Test
+    public void put_whenFull_evictsLeastRecentlyUsed() {
+        PaymentMethodNonce firstNonce = mock(PaymentMethodNonce.class);
+        PaymentMethodNonce thirdNonce = mock(PaymentMethodNonce.class);
+
+        mNonceCache.put("first", firstNonce);
+        mNonceCache.put("second", mock(PaymentMethodNonce.class));
+        mNonceCache.get("first");
+        mNonceCache.put("third", thirdNonce);
+
+        assertSame(firstNonce, mNonceCache.get("first"));
+        assertNull(mNonceCache.get("second"));
+        assertSame(thirdNonce, mNonceCache.get("third"));
+    }
+
+    @Test
+    public void invalidate_removesNonce() {
+        mNonceCache.put("callId", mock(PaymentMethodNonce.class));
+
+        mNonceCache.invalidate("callId");
+
+        assertNull(mNonceCache.get("callId"));
+    }
+
+    @Test
+    public void setTtl_withZero_disablesCache() {
+        mNonceCache.put("callId", mock(PaymentMethodNonce.class));
+
+        mNonceCache.setTtl(0);
+        mNonceCache.put("otherCallId", mock(PaymentMethodNonce.class));
+
+        assertNull(mNonceCache.get("callId"));
+        assertNull(mNonceCache.get("otherCallId"));
+    }
+}
@@ -0,0 +1,140 @@
+package com.braintreepayments.api;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.braintreepayments.api.exceptions.ServerException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.UnknownHostException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutOfflineQueueUnitTest {
+
+    private Context mContext;
+    private TestOfflineQueue mQueue;
+
+    @Before
+    public void setup() throws NoSuchAlgorithmException {
+        mContext = ApplicationProvider.getApplicationContext();
+        mQueue = new TestOfflineQueue(mContext, new VisaCheckoutQueueCipher(newKey()));
+        mQueue.clear();
+    }
+
+    @After
+    public void teardown() {
+        VisaCheckoutTestHelper.resetVisaCheckout();
+    }
+
+    @Test
+    public void add_storesEntryEncrypted() {
+        mQueue.add("callId", "stubbedEncKey", "stubbedEncPaymentData");
+
+        Map<String, ?> stored = mContext.getSharedPreferences(VisaCheckoutOfflineQueue.PREFERENCES_NAME,
+                Context.MODE_PRIVATE).getAll();
+        assertEquals(1, stored.size());
+        assertFalse(((String) stored.get("callId")).contains("stubbedEncPaymentData"));
+        assertFalse(((String) stored.get("callId")).contains("stubbedEncKey"));
+
+        List<VisaCheckoutOfflineQueue.Entry> pending = mQueue.pending();
+        assertEquals(1, pending.size());
+        assertEquals("callId", pending.get(0).mCallId);
+        assertEquals("stubbedEncKey", pending.get(0).mEncryptedKey);
+        assertEquals("stubbedEncPaymentData", pending.get(0).mEncryptedPaymentData);
+    }
+
+    @Test
+    public void add_withSameCallId_keepsOneEntry() {
+        mQueue.add("callId", "stubbedEncKey", "stubbedEncPaymentData");
+        mQueue.mNow++;
+        mQueue.add("callId", "stubbedEncKey", "stubbedEncPaymentData");
+
+        assertEquals(1, mQueue.pending().size());
+    }
+
+    @Test
+    public void add_whenFull_dropsOldestEntry() {
+        VisaCheckoutOfflineQueue.setLimits(2, VisaCheckout.DEFAULT_OFFLINE_QUEUE_TTL_MILLIS);
+
+        mQueue.add("first", "stubbedEncKey", "stubbedEncPaymentData");
+        mQueue.mNow++;
+        mQueue.add("second", "stubbedEncKey", "stubbedEncPaymentData");
+        mQueue.mNow++;
+        mQueue.add("third", "stubbedEncKey", "stubbedEncPaymentData");
+
+        List<VisaCheckoutOfflineQueue.Entry> pending = mQueue.pending();
+        assertEquals(2, pending.size());
+        assertEquals("second", pending.get(0).mCallId);
+        assertEquals("third", pending.get(1).mCallId);
+    }
+
+    @Test
+    public void pending_dropsExpiredEntries() {
+        VisaCheckoutOfflineQueue.setLimits(VisaCheckout.DEFAULT_OFFLINE_QUEUE_MAX_SIZE, 1000);
+        mQueue.add("callId", "stubbedEncKey", "stubbedEncPaymentData");
+
+        mQueue.mNow += 1000;
+
+        assertTrue(mQueue.pending().isEmpty());
+        assertFalse(mQueue.remove("callId"));
+    }
+
+    @Test
+    public void pending_dropsEntriesEncryptedWithAnotherKey() throws NoSuchAlgorithmException {
+        new VisaCheckoutOfflineQueue(mContext, new VisaCheckoutQueueCipher(newKey()))
+                .add("callId", "stubbedEncKey", "stubbedEncPaymentData");
+
+        assertTrue(mQueue.pending().isEmpty());
+    }
+
+    @Test
+    public void remove_returnsTrueOnlyOnce() {
+        mQueue.add("callId", "stubbedEncKey", "stubbedEncPaymentData");
+
+        assertTrue(mQueue.remove("callId"));
+        assertFalse(mQueue.remove("callId"));
+    }
+
+    @Test
+    public void isConnectivityError_excludesBraintreeErrors() {
+        assertTrue(VisaCheckoutOfflineQueue.isConnectivityError(new UnknownHostException()));
+        assertFalse(VisaCheckoutOfflineQueue.isConnectivityError(new ServerException("error")));
+        assertFalse(VisaCheckoutOfflineQueue.isConnectivityError(new IllegalStateException()));
+    }
+
+    private static SecretKey newKey() throws NoSuchAlgorithmException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        return keyGenerator.generateKey();
+    }
+
+    private static class TestOfflineQueue extends VisaCheckoutOfflineQueue {
+
+        long mNow = System.currentTimeMillis();
+
+        TestOfflineQueue(Context context, VisaCheckoutQueueCipher cipher) {
+            super(context, cipher);
+        }
+
+        @Override
+        long now() {
+            return mNow;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.test.TestConfigurationBuilder;
+import com.braintreepayments.api.test.TestConfigurationBuilder.TestVisaCheckoutConfigurationBuilder;
+import com.visa.checkout.Profile.CardBrand;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutProfileCacheUnitTest {
+
+    private VisaCheckoutProfileCache mProfileCache;
+
+    @Before
+    public void setup() {
+        mProfileCache = new VisaCheckoutProfileCache(2);
+    }
+
+    @Test
+    public void get_withoutPreparedConfiguration_returnsNull() {
+        assertNull(mProfileCache.get(configuration("gwApiKey")));
+    }
+
+    @Test
+    public void getOrCreate_withSameConfiguration_returnsCachedTemplate() {
+        Configuration configuration = configuration("gwApiKey");
+
+        VisaCheckoutProfileTemplate template = mProfileCache.getOrCreate(configuration);
+
+        assertNotNull(template);
+        assertSame(template, mProfileCache.getOrCreate(configuration));
+        assertSame(template, mProfileCache.get(configuration));
+    }
+
+    @Test
+    public void getOrCreate_withEquivalentConfiguration_reusesTemplate() {
+        Configuration configuration = configuration("gwApiKey");
+        Configuration refetchedConfiguration = configuration("gwApiKey");
+
+        VisaCheckoutProfileTemplate template = mProfileCache.getOrCreate(configuration);
+
+        assertSame(template, mProfileCache.getOrCreate(refetchedConfiguration));
+        assertNull(mProfileCache.get(configuration));
+    }
+
+    @Test
+    public void getOrCreate_whenConfigurationChanges_keepsPreviousTemplate() {
+        Configuration configuration = configuration("gwApiKey");
+        Configuration changedConfiguration = configuration("otherGwApiKey");
+
+        VisaCheckoutProfileTemplate template = mProfileCache.getOrCreate(configuration);
+        VisaCheckoutProfileTemplate changedTemplate = mProfileCache.getOrCreate(changedConfiguration);
+
+        assertNotSame(template, changedTemplate);
+        assertSame(template, mProfileCache.get(configuration));
+        assertSame(changedTemplate, mProfileCache.get(changedConfiguration));
+    }
+
+    @Test
+    public void getOrCreate_whenFull_evictsLeastRecentlyUsedTemplate() {
+        Configuration first = configuration("firstGwApiKey");
+        Configuration second = configuration("secondGwApiKey");
+        Configuration third = configuration("thirdGwApiKey");
+        mProfileCache.getOrCreate(first);
+        mProfileCache.getOrCreate(second);
+
+        mProfileCache.get(first);
+        mProfileCache.getOrCreate(third);
+
+        assertEquals(2, mProfileCache.size());
+        assertNotNull(mProfileCache.get(first));
+        assertNull(mProfileCache.get(second));
+        assertNotNull(mProfileCache.get(third));
+    }
+
+    @Test
+    public void setMaxSize_evictsLeastRecentlyUsedTemplates() {
+        Configuration first = configuration("firstGwApiKey");
+        Configuration second = configuration("secondGwApiKey");
+        mProfileCache.getOrCreate(first);
+        mProfileCache.getOrCreate(second);
+
+        mProfileCache.setMaxSize(1);
+
+        assertNull(mProfileCache.get(first));
+        assertNotNull(mProfileCache.get(second));
+    }
+
+    @Test
+    public void clear_dropsCachedTemplate() {
+        Configuration configuration = configuration("gwApiKey");
+        mProfileCache.getOrCreate(configuration);
+
+        mProfileCache.clear();
+
+        assertNull(mProfileCache.get(configuration));
+    }
+
+    private static Configuration configuration(String apiKey) {
+        return new TestConfigurationBuilder()
+                .visaCheckout(new TestVisaCheckoutConfigurationBuilder()
+                        .apikey(apiKey)
+                        .supportedCardTypes(CardBrand.VISA, CardBrand.MASTERCARD)
+                        .externalClientId("gwExternalClientId"))
+                .buildConfiguration();
+    }
+}
@@ -0,0 +1,208 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.exceptions.InvalidArgumentException;
+import com.braintreepayments.api.models.Authorization;
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.test.TestConfigurationBuilder;
+import com.braintreepayments.api.test.TestConfigurationBuilder.TestVisaCheckoutConfigurationBuilder;
+import com.visa.checkout.Profile.CardBrand;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutProfileRegistryUnitTest {
+
+    private VisaCheckoutProfileRegistry mRegistry;
+
+    @Before
+    public void setup() {
+        mRegistry = new VisaCheckoutProfileRegistry(2);
+    }
+
+    @Test
+    public void get_returnsTemplateOfEachMerchant() {
+        Configuration firstConfiguration = configuration("firstApiKey");
+        Configuration secondConfiguration = configuration("secondApiKey");
+        VisaCheckoutProfileTemplate firstTemplate = VisaCheckoutProfileTemplate.fromConfiguration(firstConfiguration);
+        VisaCheckoutProfileTemplate secondTemplate = VisaCheckoutProfileTemplate.fromConfiguration(
+                secondConfiguration);
+
+        mRegistry.put("first", firstConfiguration, firstTemplate);
+        mRegistry.put("second", secondConfiguration, secondTemplate);
+
+        assertSame(firstTemplate, mRegistry.get("first", null));
+        assertSame(secondTemplate, mRegistry.get("second", null));
+        assertSame(firstTemplate, mRegistry.get("first", firstConfiguration));
+    }
+
+    @Test
+    public void get_withOtherConfiguration_returnsNull() {
+        Configuration configuration = configuration("apiKey");
+        mRegistry.put("merchant", configuration, VisaCheckoutProfileTemplate.fromConfiguration(configuration));
+
+        assertNull(mRegistry.get("merchant", configuration("apiKey")));
+        assertNull(mRegistry.get("otherMerchant", null));
+        assertNull(mRegistry.get(null, null));
+    }
+
+    @Test
+    public void get_withoutConfiguration_whenExpired_returnsNull() {
+        Configuration configuration = configuration("apiKey");
+        VisaCheckoutProfileTemplate template = VisaCheckoutProfileTemplate.fromConfiguration(configuration);
+        mRegistry.put("merchant", configuration, template, 0);
+
+        assertSame(template, mRegistry.get("merchant", null, VisaCheckoutProfileRegistry.DEFAULT_TTL_MILLIS - 1));
+        assertNull(mRegistry.get("merchant", null, VisaCheckoutProfileRegistry.DEFAULT_TTL_MILLIS));
+        assertEquals(0, mRegistry.size());
+    }
+
+    @Test
+    public void get_withConfiguration_ignoresExpiry() {
+        Configuration configuration = configuration("apiKey");
+        VisaCheckoutProfileTemplate template = VisaCheckoutProfileTemplate.fromConfiguration(configuration);
+        mRegistry.put("merchant", configuration, template, 0);
+
+        assertSame(template, mRegistry.get("merchant", configuration,
+                VisaCheckoutProfileRegistry.DEFAULT_TTL_MILLIS));
+    }
+
+    @Test
+    public void get_withoutConfiguration_usesConfigurationSnapshotTtl() {
+        VisaCheckoutConfigurationSnapshot.setTtl(1000);
+        try {
+            Configuration configuration = configuration("apiKey");
+            mRegistry.put("merchant", configuration, VisaCheckoutProfileTemplate.fromConfiguration(configuration), 0);
+
+            assertNull(mRegistry.get("merchant", null, 1000));
+        } finally {
+            VisaCheckoutConfigurationSnapshot.setTtl(VisaCheckout.DEFAULT_CONFIGURATION_SNAPSHOT_TTL_MILLIS);
+        }
+    }
+
+    @Test
+    public void getFingerprint_returnsFingerprintOfRegisteredConfiguration() {
+        Configuration configuration = configuration("apiKey");
+        mRegistry.put("merchant", configuration, VisaCheckoutProfileTemplate.fromConfiguration(configuration));
+
+        assertEquals(VisaCheckoutProfileCache.fingerprint(configuration), mRegistry.getFingerprint("merchant"));
+        assertNull(mRegistry.getFingerprint("otherMerchant"));
+    }
+
+    @Test
+    public void put_replacesTemplateOfMerchant() {
+        Configuration configuration = configuration("apiKey");
+        Configuration changedConfiguration = configuration("changedApiKey");
+        VisaCheckoutProfileTemplate template = VisaCheckoutProfileTemplate.fromConfiguration(configuration);
+        VisaCheckoutProfileTemplate changedTemplate = VisaCheckoutProfileTemplate.fromConfiguration(
+                changedConfiguration);
+
+        mRegistry.put("merchant", configuration, template);
+        mRegistry.put("merchant", changedConfiguration, changedTemplate);
+
+        assertEquals(1, mRegistry.size());
+        assertNotSame(template, mRegistry.get("merchant", null));
+        assertSame(changedTemplate, mRegistry.get("merchant", null));
+    }
+
+    @Test
+    public void put_whenFull_evictsLeastRecentlyUsedTemplate() {
+        Configuration configuration = configuration("apiKey");
+        VisaCheckoutProfileTemplate template = VisaCheckoutProfileTemplate.fromConfiguration(configuration);
+
+        mRegistry.put("first", configuration, template);
+        mRegistry.put("second", configuration, template);
+        mRegistry.get("first", null);
+        mRegistry.put("third", configuration, template);
+
+        assertEquals(2, mRegistry.size());
+        assertSame(template, mRegistry.get("first", null));
+        assertNull(mRegistry.get("second", null));
+        assertSame(template, mRegistry.get("third", null));
+    }
+
+    @Test
+    public void setMaxSize_evictsTemplatesOverNewSize() {
+        Configuration configuration = configuration("apiKey");
+        VisaCheckoutProfileTemplate template = VisaCheckoutProfileTemplate.fromConfiguration(configuration);
+        mRegistry.put("first", configuration, template);
+        mRegistry.put("second", configuration, template);
+
+        mRegistry.setMaxSize(1);
+
+        assertEquals(1, mRegistry.size());
+        assertSame(template, mRegistry.get("second", null));
+    }
+
+    @Test
+    public void key_isSameForEveryAuthorizationOfMerchant() throws InvalidArgumentException {
+        String key = VisaCheckoutProfileRegistry.key(Authorization.fromString("sandbox_tmxhyf7d_dcpspy2brwdjr3qn"));
+
+        assertEquals(key, VisaCheckoutProfileRegistry.key(
+                Authorization.fromString("sandbox_tmxhyf7d_dcpspy2brwdjr3qn")));
+        assertFalse(key.equals(VisaCheckoutProfileRegistry.key(
+                Authorization.fromString("production_t2wns2y2_dfy45jdj3dxkmz5m"))));
+        assertNull(VisaCheckoutProfileRegistry.key(null));
+    }
+
+    @Test
+    public void concurrentAccess_staysWithinMaxSize() throws InterruptedException {
+        final Configuration configuration = configuration("apiKey");
+        final VisaCheckoutProfileTemplate template = VisaCheckoutProfileTemplate.fromConfiguration(configuration);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int thread = 0; thread < 8; thread++) {
+            final int threadId = thread;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 500; i++) {
+                            String key = "merchant-" + ((threadId + i) % 5);
+                            mRegistry.put(key, configuration, template);
+                            VisaCheckoutProfileTemplate found = mRegistry.get(key, null);
+                            if (found != null && found != template) {
+                                throw new AssertionError("Unexpected template");
+                            }
+                        }
+                    } catch (Throwable t) {
+                        error.set(t);
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertNull(error.get());
+        assertTrue(mRegistry.size() <= 2);
+    }
+
+    private static Configuration configuration(String apiKey) {
+        return new TestConfigurationBuilder()
+                .visaCheckout(new TestVisaCheckoutConfigurationBuilder()
+                        .apikey(apiKey)
+                        .supportedCardTypes(CardBrand.VISA, CardBrand.MASTERCARD)
+                        .externalClientId("gwExternalClientId"))
+                .buildConfiguration();
+    }
+}
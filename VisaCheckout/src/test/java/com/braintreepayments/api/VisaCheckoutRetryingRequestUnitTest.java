@@ -0,0 +1,284 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.exceptions.DownForMaintenanceException;
+import com.braintreepayments.api.exceptions.ErrorWithResponse;
+import com.braintreepayments.api.exceptions.InvalidArgumentException;
+import com.braintreepayments.api.exceptions.RateLimitException;
+import com.braintreepayments.api.exceptions.ServerException;
+import com.braintreepayments.api.exceptions.UnexpectedException;
+import com.braintreepayments.api.interfaces.VisaCheckoutMetricsListener;
+import com.braintreepayments.api.models.Authorization;
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+import com.braintreepayments.api.models.VisaCheckoutMetricEvent;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+import com.braintreepayments.api.models.VisaCheckoutRetryPolicy;
+import com.braintreepayments.api.test.StubHttpServer;
+import com.braintreepayments.api.test.TestPaymentMethodNonceCallback;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.braintreepayments.api.test.FixturesHelper.stringFromFixture;
+import static com.braintreepayments.api.test.VisaPaymentSummaryHelper.sampleVisaPaymentSummary;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutRetryingRequestUnitTest {
+
+    private static final String TOKENIZATION_KEY = "sandbox_tmxhyf7d_dcpspy2brwdjr3qn";
+
+    private StubHttpServer mServer;
+    private VisaCheckoutHttpClient mHttpClient;
+
+    @Before
+    public void setup() throws IOException, InvalidArgumentException {
+        mServer = new StubHttpServer();
+        mHttpClient = new VisaCheckoutHttpClient(Authorization.fromString(TOKENIZATION_KEY), mServer.getUrl());
+    }
+
+    @After
+    public void tearDown() {
+        mServer.shutdown();
+        VisaCheckoutTestHelper.resetVisaCheckout();
+    }
+
+    @Test
+    public void start_whenServerErrors_retriesWithSameIdempotencyKey() throws Exception {
+        mServer.enqueue(500, "")
+                .enqueue(503, "")
+                .enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"));
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+
+        newRequest(new VisaCheckoutRetryPolicy().maxAttempts(3).initialBackoffMillis(1), callback).start();
+
+        callback.await();
+        assertEquals("123456-12345-12345-a-adfa", callback.getPaymentMethodNonce().getNonce());
+        assertEquals(3, mServer.getRequests().size());
+
+        String idempotencyKey = VisaCheckoutRetryingRequest.idempotencyKey("stubbedCallId");
+        for (StubHttpServer.RecordedRequest request : mServer.getRequests()) {
+            assertEquals("/v1/payment_methods/visa_checkout_cards", request.getPath());
+            assertEquals(idempotencyKey, request.getHeader("Idempotency-Key"));
+        }
+    }
+
+    @Test
+    public void start_whenTraced_sendsTraceparentOnEveryAttempt() throws Exception {
+        mServer.enqueue(500, "")
+                .enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"));
+        VisaCheckoutTracing.setEnabled(true);
+        VisaCheckoutTracing.Trace trace = VisaCheckoutTracing.start("stubbedCallId");
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+
+        newRequest(new VisaCheckoutRetryPolicy().maxAttempts(2).initialBackoffMillis(1), callback).start();
+
+        callback.await();
+        assertEquals(2, mServer.getRequests().size());
+        for (StubHttpServer.RecordedRequest request : mServer.getRequests()) {
+            assertEquals(trace.getTraceparent(), request.getHeader("traceparent"));
+        }
+    }
+
+    @Test
+    public void start_whenAttemptsExhausted_postsLastError() throws Exception {
+        mServer.enqueue(500, "");
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+
+        newRequest(new VisaCheckoutRetryPolicy().maxAttempts(2).initialBackoffMillis(1), callback).start();
+
+        callback.await();
+        assertTrue(callback.getException() instanceof ServerException);
+        assertEquals(2, mServer.getRequests().size());
+    }
+
+    @Test
+    public void start_whenValidationError_doesNotRetry() throws Exception {
+        mServer.enqueue(422, "{\"error\":{\"message\":\"Invalid payment\"},\"fieldErrors\":[]}");
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+
+        newRequest(new VisaCheckoutRetryPolicy().maxAttempts(3).initialBackoffMillis(1), callback).start();
+
+        callback.await();
+        assertTrue(callback.getException() instanceof ErrorWithResponse);
+        assertEquals(1, mServer.getRequests().size());
+    }
+
+    @Test
+    public void start_withHedging_sendsSecondRequestWhenFirstIsSlow() throws Exception {
+        mServer.enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"), 1000)
+                .enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"));
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+
+        newRequest(new VisaCheckoutRetryPolicy().maxAttempts(2).hedgeDelayMillis(50), callback).start();
+
+        callback.await();
+        assertEquals("123456-12345-12345-a-adfa", callback.getPaymentMethodNonce().getNonce());
+        assertEquals(2, mServer.getRequests().size());
+        assertEquals(1, callback.getCallCount());
+    }
+
+    @Test
+    public void start_withHedging_lateAttemptDoesNotUseBuilderAfterCallback() throws Exception {
+        mServer.enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"), 500)
+                .enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"));
+        final List<String> parsedCallIds = new CopyOnWriteArrayList<>();
+        final CountDownLatch parsed = new CountDownLatch(2);
+        VisaCheckoutMetrics.setListener(new VisaCheckoutMetricsListener() {
+            @Override
+            public void onMetricEvent(VisaCheckoutMetricEvent event) {
+                if (event.getPhase() == VisaCheckoutPhase.RESPONSE_PARSING) {
+                    parsedCallIds.add(event.getCallId());
+                    parsed.countDown();
+                }
+            }
+        });
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(sampleVisaPaymentSummary());
+
+        new VisaCheckoutRetryingRequest(mHttpClient, VisaCheckoutTokenizationClient.versionedPath(visaCheckoutBuilder),
+                visaCheckoutBuilder, new VisaCheckoutRetryPolicy().maxAttempts(2).hedgeDelayMillis(50), callback)
+                .start();
+        callback.await();
+        // what the builder pool does once the callback released the builder
+        visaCheckoutBuilder.reset(null);
+
+        assertTrue(parsed.await(5, TimeUnit.SECONDS));
+        assertEquals(2, parsedCallIds.size());
+        for (String callId : parsedCallIds) {
+            assertEquals("stubbedCallId", callId);
+        }
+        assertEquals(1, callback.getCallCount());
+    }
+
+    @Test
+    public void cancel_abortsRequestInFlightWithoutCallingBack() throws Exception {
+        mServer.enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"), 500);
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+        VisaCheckoutRetryingRequest request = newRequest(new VisaCheckoutRetryPolicy().maxAttempts(3)
+                .initialBackoffMillis(1), callback);
+
+        request.start();
+        Thread.sleep(100);
+        request.cancel();
+
+        callback.await(1000);
+        assertEquals(0, callback.getCallCount());
+        assertEquals(1, mServer.getRequests().size());
+    }
+
+    @Test
+    public void cancel_whileStreamingSingleAttempt_runsOnCanceledOnceAttemptReturned() throws Exception {
+        mServer.enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"), 500);
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+        final CountDownLatch canceled = new CountDownLatch(1);
+        final AtomicInteger onCanceledRuns = new AtomicInteger();
+        VisaCheckoutRetryingRequest request = newRequest(new VisaCheckoutRetryPolicy().maxAttempts(1), callback);
+
+        request.start();
+        Thread.sleep(100);
+        request.cancel(new Runnable() {
+            @Override
+            public void run() {
+                onCanceledRuns.incrementAndGet();
+                canceled.countDown();
+            }
+        });
+
+        assertTrue(canceled.await(5, TimeUnit.SECONDS));
+        callback.await(1000);
+        assertEquals(1, onCanceledRuns.get());
+        assertEquals(0, callback.getCallCount());
+    }
+
+    @Test
+    public void cancel_beforeStart_runsOnCanceledWithoutSendingRequest() throws Exception {
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+        final AtomicInteger onCanceledRuns = new AtomicInteger();
+        VisaCheckoutRetryingRequest request = newRequest(new VisaCheckoutRetryPolicy().maxAttempts(3), callback);
+
+        request.cancel(new Runnable() {
+            @Override
+            public void run() {
+                onCanceledRuns.incrementAndGet();
+            }
+        });
+        request.start();
+
+        callback.await(500);
+        assertEquals(1, onCanceledRuns.get());
+        assertEquals(0, callback.getCallCount());
+        assertEquals(0, mServer.getRequests().size());
+    }
+
+    @Test
+    public void start_withStageExecutor_buildsAndParsesOnStageExecutor() throws Exception {
+        mServer.enqueue(201, stringFromFixture("payment_methods/visa_checkout_response.json"));
+        final AtomicInteger stageRuns = new AtomicInteger();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Executor stageExecutor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                stageRuns.incrementAndGet();
+                executorService.execute(runnable);
+            }
+        };
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(sampleVisaPaymentSummary());
+
+        try {
+            new VisaCheckoutRetryingRequest(mHttpClient, VisaCheckoutTokenizationClient.versionedPath(
+                    visaCheckoutBuilder), visaCheckoutBuilder, new VisaCheckoutRetryPolicy().maxAttempts(1),
+                    stageExecutor, callback).start();
+
+            callback.await();
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals("123456-12345-12345-a-adfa", callback.getPaymentMethodNonce().getNonce());
+        assertEquals(2, stageRuns.get());
+    }
+
+    @Test
+    public void isRetryable_retriesNetworkAndServerErrorsOnly() {
+        assertTrue(VisaCheckoutRetryingRequest.isRetryable(new SocketTimeoutException()));
+        assertTrue(VisaCheckoutRetryingRequest.isRetryable(new ServerException("")));
+        assertTrue(VisaCheckoutRetryingRequest.isRetryable(new DownForMaintenanceException("")));
+        assertTrue(VisaCheckoutRetryingRequest.isRetryable(new RateLimitException("")));
+        assertFalse(VisaCheckoutRetryingRequest.isRetryable(new UnexpectedException("")));
+        assertFalse(VisaCheckoutRetryingRequest.isRetryable(new JSONException("")));
+    }
+
+    @Test
+    public void idempotencyKey_isStablePerCallId() {
+        assertEquals(VisaCheckoutRetryingRequest.idempotencyKey("callId"),
+                VisaCheckoutRetryingRequest.idempotencyKey("callId"));
+        assertFalse(VisaCheckoutRetryingRequest.idempotencyKey("callId")
+                .equals(VisaCheckoutRetryingRequest.idempotencyKey("otherCallId")));
+    }
+
+    private VisaCheckoutRetryingRequest newRequest(VisaCheckoutRetryPolicy retryPolicy,
+            TestPaymentMethodNonceCallback callback) throws JSONException {
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(sampleVisaPaymentSummary());
+        return new VisaCheckoutRetryingRequest(mHttpClient,
+                VisaCheckoutTokenizationClient.versionedPath(visaCheckoutBuilder), visaCheckoutBuilder, retryPolicy,
+                callback);
+    }
+}
@@ -0,0 +1,53 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.VisaCheckoutStartupUnitTest.IsolatingClassLoader;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+
+import static com.braintreepayments.api.VisaCheckoutStartupUnitTest.VISA_CHECKOUT_SDK_CLASS;
+import static com.braintreepayments.api.VisaCheckoutStartupUnitTest.configureVisaCheckout;
+import static com.braintreepayments.api.VisaCheckoutStartupUnitTest.isVisaCheckoutSdkAvailable;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures cold starts in fresh class loaders, see {@link VisaCheckoutStartupUnitTest}. Timing depends on the machine,
+ * so it is only run with {@code ./gradlew :VisaCheckout:testReleaseUnitTest -PloadTests}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutStartupLoadTest {
+
+    private static final int ITERATIONS = 25;
+
+    @Test
+    public void checkingVisaCheckoutSdk_isFasterThanInitializingIt() throws Exception {
+        long[] lazyProbe = new long[ITERATIONS];
+        long[] eagerProbe = new long[ITERATIONS];
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            IsolatingClassLoader classLoader = new IsolatingClassLoader(getClass().getClassLoader());
+            long startNanos = System.nanoTime();
+            configureVisaCheckout(classLoader);
+            isVisaCheckoutSdkAvailable(classLoader);
+            lazyProbe[i] = System.nanoTime() - startNanos;
+
+            // the availability check as it was before, initializing the SDK
+            classLoader = new IsolatingClassLoader(getClass().getClassLoader());
+            startNanos = System.nanoTime();
+            configureVisaCheckout(classLoader);
+            Class.forName(VISA_CHECKOUT_SDK_CLASS, true, classLoader);
+            eagerProbe[i] = System.nanoTime() - startNanos;
+        }
+
+        assertTrue(median(lazyProbe) < median(eagerProbe));
+    }
+
+    private static long median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,140 @@
+package com.braintreepayments.api;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Loads the module into a fresh class loader for every test, so that each one pays the full class loading and
+ * initialization cost of a cold start. Run by {@code ./gradlew :VisaCheckout:startupTest} with the bytecode verifier
+ * enabled, since verification can load classes that are only referenced by method bodies.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutStartupUnitTest {
+
+    static final String VISA_CHECKOUT_SDK_CLASS = "com.visa.checkout.VisaCheckoutSdk";
+
+    @Test
+    public void configuringVisaCheckout_doesNotLoadVisaCheckoutSdk() throws Exception {
+        IsolatingClassLoader classLoader = new IsolatingClassLoader(getClass().getClassLoader());
+
+        configureVisaCheckout(classLoader);
+
+        assertEquals(new ArrayList<String>(), classLoader.getVisaCheckoutSdkClasses());
+        assertFalse(classLoader.isLoaded(VisaCheckoutSdkBridge.class.getName()));
+    }
+
+    @Test
+    public void isVisaCheckoutSDKAvailable_loadsVisaCheckoutSdk() throws Exception {
+        IsolatingClassLoader classLoader = new IsolatingClassLoader(getClass().getClassLoader());
+
+        assertTrue(isVisaCheckoutSdkAvailable(classLoader));
+
+        assertTrue(classLoader.getVisaCheckoutSdkClasses().contains(VISA_CHECKOUT_SDK_CLASS));
+    }
+
+    /**
+     * What an app typically does at startup, whether or not the user ever chooses Visa Checkout.
+     */
+    static void configureVisaCheckout(ClassLoader classLoader) throws Exception {
+        Class<?> visaCheckout = classLoader.loadClass(VisaCheckout.class.getName());
+        visaCheckout.getMethod("setLazyNonceParsing", boolean.class).invoke(null, false);
+        visaCheckout.getMethod("setNonceCacheTtl", long.class).invoke(null, 60000L);
+    }
+
+    static boolean isVisaCheckoutSdkAvailable(ClassLoader classLoader) throws Exception {
+        Method isVisaCheckoutSdkAvailable = classLoader.loadClass(VisaCheckout.class.getName())
+                .getDeclaredMethod("isVisaCheckoutSDKAvailable");
+        isVisaCheckoutSdkAvailable.setAccessible(true);
+        return (Boolean) isVisaCheckoutSdkAvailable.invoke(null);
+    }
+
+    /**
+     * Defines the classes of this module and of the Visa Checkout SDK itself instead of delegating to its parent, and
+     * records which Visa Checkout SDK classes were loaded.
+     */
+    static class IsolatingClassLoader extends ClassLoader {
+
+        private final List<String> mVisaCheckoutSdkClasses = new ArrayList<>();
+
+        IsolatingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!isIsolated(name)) {
+                return super.loadClass(name, resolve);
+            }
+
+            Class<?> loadedClass = findLoadedClass(name);
+            if (loadedClass != null) {
+                return loadedClass;
+            }
+
+            byte[] bytes = readClass(name);
+            if (bytes == null) {
+                return super.loadClass(name, resolve);
+            }
+
+            if (name.startsWith("com.visa.")) {
+                mVisaCheckoutSdkClasses.add(name);
+            }
+
+            loadedClass = defineClass(name, bytes, 0, bytes.length);
+            if (resolve) {
+                resolveClass(loadedClass);
+            }
+
+            return loadedClass;
+        }
+
+        synchronized List<String> getVisaCheckoutSdkClasses() {
+            return new ArrayList<>(mVisaCheckoutSdkClasses);
+        }
+
+        synchronized boolean isLoaded(String name) {
+            return findLoadedClass(name) != null;
+        }
+
+        private static boolean isIsolated(String name) {
+            return name.startsWith("com.visa.")
+                    || (name.startsWith("com.braintreepayments.api.VisaCheckout") && !name.endsWith("UnitTest")
+                    && !name.endsWith("LoadTest"));
+        }
+
+        private byte[] readClass(String name) throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            if (in == null) {
+                return null;
+            }
+
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.braintreepayments.api;
+
+public class VisaCheckoutTestHelper {
+
+    /**
+     * Restores the default of every static setting of {@link VisaCheckout} and drops the state kept in memory, so
+     * that unit tests do not depend on the order they run in. Persisted state, i.e. the offline queue and
+     * configuration snapshots, is kept.
+     */
+    public static void resetVisaCheckout() {
+        VisaCheckout.sVisaCheckoutSdkAvailable = null;
+        VisaCheckout.setRetryPolicy(null);
+        VisaCheckout.setTokenizationExecutor(null);
+        VisaCheckout.setCircuitBreakerPolicy(null);
+        VisaCheckout.setConfigurationChangedListener(null);
+        VisaCheckoutTokenizationClient.setLazyNonceParsing(false);
+        VisaCheckoutTokenizationClient.setCompression(false);
+        VisaCheckoutHttpClient.setCompressionEnabled(false);
+        VisaCheckout.sNonceCache.setTtl(0);
+        VisaCheckout.sNonceCache.clear();
+        VisaCheckout.sBuilderPool.clear();
+        VisaCheckout.sProfileCache.setMaxSize(VisaCheckout.DEFAULT_PROFILE_REGISTRY_SIZE);
+        VisaCheckout.sProfileCache.clear();
+        VisaCheckout.sProfileRegistry.setMaxSize(VisaCheckout.DEFAULT_PROFILE_REGISTRY_SIZE);
+        VisaCheckout.sProfileRegistry.clear();
+        VisaCheckoutAnalytics.setFlushInterval(VisaCheckout.DEFAULT_ANALYTICS_FLUSH_INTERVAL_MILLIS);
+        VisaCheckoutOfflineQueue.setEnabled(false);
+        VisaCheckoutOfflineQueue.setLimits(VisaCheckout.DEFAULT_OFFLINE_QUEUE_MAX_SIZE,
+                VisaCheckout.DEFAULT_OFFLINE_QUEUE_TTL_MILLIS);
+        VisaCheckoutOfflineQueue.setInstance(null);
+        VisaCheckoutOfflineQueue.setExecutor(null);
+        VisaCheckoutConfigurationSnapshot.setTtl(VisaCheckout.DEFAULT_CONFIGURATION_SNAPSHOT_TTL_MILLIS);
+        VisaCheckoutConfigurationSnapshot.setLoadExecutor(null);
+        VisaCheckoutTracing.setEnabled(false);
+        VisaCheckoutTracing.setSink(null);
+        VisaCheckoutMetrics.setListener(null);
+        VisaCheckoutMetrics.reset();
+    }
+}
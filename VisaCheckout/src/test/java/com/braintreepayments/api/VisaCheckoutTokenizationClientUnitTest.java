@@ -0,0 +1,226 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.exceptions.UnexpectedException;
+import com.braintreepayments.api.interfaces.ConfigurationListener;
+import com.braintreepayments.api.interfaces.HttpResponseCallback;
+import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.models.Configuration;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+import com.braintreepayments.api.models.VisaCheckoutLazyNonce;
+import com.braintreepayments.api.models.VisaCheckoutNonce;
+import com.braintreepayments.api.test.TestConfigurationBuilder;
+import com.braintreepayments.api.test.TestConfigurationBuilder.TestGraphQLConfigurationBuilder;
+import com.braintreepayments.api.test.TestPaymentMethodNonceCallback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.braintreepayments.api.test.FixturesHelper.stringFromFixture;
+import static com.braintreepayments.api.test.VisaPaymentSummaryHelper.sampleVisaPaymentSummary;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutTokenizationClientUnitTest {
+
+    @Test
+    public void tokenize_whenGraphQLEnabled_tokenizesWithGraphQL() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder()
+                .configuration(graphQLConfiguration(VisaCheckoutTokenizationClient.GRAPHQL_TOKENIZE_FEATURE))
+                .graphQLSuccessResponse(stringFromFixture("payment_methods/visa_checkout_graphql_response.json"))
+                .build();
+        PaymentMethodNonceCallback callback = mock(PaymentMethodNonceCallback.class);
+        ArgumentCaptor<PaymentMethodNonce> captor = ArgumentCaptor.forClass(PaymentMethodNonce.class);
+
+        VisaCheckoutTokenizationClient.tokenize(fragment, new VisaCheckoutBuilder(sampleVisaPaymentSummary()),
+                callback);
+
+        verify(callback).success(captor.capture());
+        VisaCheckoutNonce visaCheckoutNonce = (VisaCheckoutNonce) captor.getValue();
+        assertEquals("graphql-12345-12345-a-adfa", visaCheckoutNonce.getNonce());
+        assertEquals("11", visaCheckoutNonce.getLastTwo());
+        assertEquals("Visa", visaCheckoutNonce.getCardType());
+        assertEquals("callId", visaCheckoutNonce.getCallId());
+        assertEquals("billingFirstName", visaCheckoutNonce.getBillingAddress().getFirstName());
+        verify(fragment.getHttpClient(), never()).post(anyString(), anyString(), any(HttpResponseCallback.class));
+        verify(fragment).sendAnalyticsEvent(eq("visacheckout.graphql.tokenization.success"));
+    }
+
+    @Test
+    public void tokenize_whenGraphQLFails_fallsBackToRest() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder()
+                .configuration(graphQLConfiguration(VisaCheckoutTokenizationClient.GRAPHQL_TOKENIZE_FEATURE))
+                .graphQLErrorResponse(new UnexpectedException("Cannot query field tokenizeVisaCheckoutCard"))
+                .successResponse(stringFromFixture("payment_methods/visa_checkout_response.json"))
+                .build();
+        PaymentMethodNonceCallback callback = mock(PaymentMethodNonceCallback.class);
+        ArgumentCaptor<PaymentMethodNonce> captor = ArgumentCaptor.forClass(PaymentMethodNonce.class);
+
+        VisaCheckoutTokenizationClient.tokenize(fragment, new VisaCheckoutBuilder(sampleVisaPaymentSummary()),
+                callback);
+
+        verify(callback).success(captor.capture());
+        assertEquals("123456-12345-12345-a-adfa", captor.getValue().getNonce());
+        verify(fragment).sendAnalyticsEvent(eq("visacheckout.graphql.tokenization.fallback"));
+    }
+
+    @Test
+    public void tokenize_whenGraphQLFeatureNotEnabled_tokenizesWithRest() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder()
+                .configuration(graphQLConfiguration("tokenize_credit_cards"))
+                .successResponse(stringFromFixture("payment_methods/visa_checkout_response.json"))
+                .build();
+        PaymentMethodNonceCallback callback = mock(PaymentMethodNonceCallback.class);
+        ArgumentCaptor<PaymentMethodNonce> captor = ArgumentCaptor.forClass(PaymentMethodNonce.class);
+
+        VisaCheckoutTokenizationClient.tokenize(fragment, new VisaCheckoutBuilder(sampleVisaPaymentSummary()),
+                callback);
+
+        verify(callback).success(captor.capture());
+        assertEquals("123456-12345-12345-a-adfa", captor.getValue().getNonce());
+        verify(fragment.getGraphQLHttpClient(), never()).post(anyString(), any(HttpResponseCallback.class));
+    }
+
+    @Test
+    public void tokenize_withLazyNonceParsing_returnsVisaCheckoutLazyNonce() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder()
+                .configuration(graphQLConfiguration("tokenize_credit_cards"))
+                .successResponse(stringFromFixture("payment_methods/visa_checkout_response.json"))
+                .build();
+        PaymentMethodNonceCallback callback = mock(PaymentMethodNonceCallback.class);
+        ArgumentCaptor<PaymentMethodNonce> captor = ArgumentCaptor.forClass(PaymentMethodNonce.class);
+
+        VisaCheckoutTokenizationClient.setLazyNonceParsing(true);
+        try {
+            VisaCheckoutTokenizationClient.tokenize(fragment, new VisaCheckoutBuilder(sampleVisaPaymentSummary()),
+                    callback);
+        } finally {
+            VisaCheckoutTokenizationClient.setLazyNonceParsing(false);
+        }
+
+        verify(callback).success(captor.capture());
+        assertTrue(captor.getValue() instanceof VisaCheckoutLazyNonce);
+        assertEquals("123456-12345-12345-a-adfa", captor.getValue().getNonce());
+        assertEquals("billingFirstName", ((VisaCheckoutNonce) captor.getValue()).getBillingAddress().getFirstName());
+    }
+
+    @Test
+    public void tokenize_withStageExecutor_buildsAndParsesOnStageExecutor() throws Exception {
+        BraintreeFragment fragment = new MockFragmentBuilder()
+                .configuration(graphQLConfiguration(VisaCheckoutTokenizationClient.GRAPHQL_TOKENIZE_FEATURE))
+                .graphQLSuccessResponse(stringFromFixture("payment_methods/visa_checkout_graphql_response.json"))
+                .build();
+        final AtomicInteger stageRuns = new AtomicInteger();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Executor stageExecutor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                stageRuns.incrementAndGet();
+                executorService.execute(runnable);
+            }
+        };
+        TestPaymentMethodNonceCallback callback = new TestPaymentMethodNonceCallback();
+
+        try {
+            VisaCheckoutTokenizationClient.tokenize(fragment, new VisaCheckoutBuilder(sampleVisaPaymentSummary()),
+                    null, stageExecutor, callback, null);
+
+            callback.await();
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals("graphql-12345-12345-a-adfa", callback.getPaymentMethodNonce().getNonce());
+        assertEquals(2, stageRuns.get());
+        verify(fragment).sendAnalyticsEvent(eq("visacheckout.graphql.tokenization.success"));
+    }
+
+    @Test
+    public void parseGraphQLResponse_mapsResponseToVisaCheckoutNonce() throws JSONException {
+        VisaCheckoutNonce visaCheckoutNonce = VisaCheckoutTokenizationClient.parseGraphQLResponse(
+                stringFromFixture("payment_methods/visa_checkout_graphql_response.json"), "otherCallId");
+
+        assertEquals("graphql-12345-12345-a-adfa", visaCheckoutNonce.getNonce());
+        assertEquals("ending in ••11", visaCheckoutNonce.getDescription());
+        assertEquals("Visa", visaCheckoutNonce.getCardType());
+        assertEquals("11", visaCheckoutNonce.getLastTwo());
+        assertEquals("callId", visaCheckoutNonce.getCallId());
+        assertEquals("billingFirstName", visaCheckoutNonce.getBillingAddress().getFirstName());
+        assertEquals("shippingPostalCode", visaCheckoutNonce.getShippingAddress().getPostalCode());
+        assertEquals("userEmail", visaCheckoutNonce.getUserData().getUserEmail());
+        assertEquals("Yes", visaCheckoutNonce.getBinData().getHealthcare());
+    }
+
+    @Test
+    public void parseGraphQLResponse_withNullFields_leavesThemOut() throws JSONException {
+        JSONObject response = new JSONObject(stringFromFixture("payment_methods/visa_checkout_graphql_response.json"));
+        JSONObject tokenizeResponse = response.getJSONObject("data").getJSONObject("tokenizeVisaCheckoutCard");
+        tokenizeResponse.put("shippingAddress", JSONObject.NULL);
+        tokenizeResponse.put("callId", JSONObject.NULL);
+
+        VisaCheckoutNonce visaCheckoutNonce = VisaCheckoutTokenizationClient.parseGraphQLResponse(
+                response.toString(), "otherCallId");
+
+        assertEquals("graphql-12345-12345-a-adfa", visaCheckoutNonce.getNonce());
+        assertEquals("otherCallId", visaCheckoutNonce.getCallId());
+        assertEquals("billingFirstName", visaCheckoutNonce.getBillingAddress().getFirstName());
+    }
+
+    @Test
+    public void tokenize_whenCanceledBeforeConfiguration_runsOnCanceledInsteadOfCallback() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder()
+                .configuration(graphQLConfiguration("tokenize_credit_cards"))
+                .build();
+        doNothing().when(fragment).waitForConfiguration(any(ConfigurationListener.class));
+        PaymentMethodNonceCallback callback = mock(PaymentMethodNonceCallback.class);
+        Runnable onCanceled = mock(Runnable.class);
+
+        VisaCheckoutTokenizationClient.tokenize(fragment, new VisaCheckoutBuilder(sampleVisaPaymentSummary()), null,
+                null, callback, onCanceled).cancel();
+
+        verify(onCanceled).run();
+        verify(callback, never()).success(any(PaymentMethodNonce.class));
+        verify(callback, never()).failure(any(Exception.class));
+    }
+
+    @Test
+    public void tokenize_whenCanceledAfterRequestWasSent_callsCallbackInsteadOfOnCanceled() throws JSONException {
+        BraintreeFragment fragment = new MockFragmentBuilder()
+                .configuration(graphQLConfiguration("tokenize_credit_cards"))
+                .successResponse(stringFromFixture("payment_methods/visa_checkout_response.json"))
+                .build();
+        PaymentMethodNonceCallback callback = mock(PaymentMethodNonceCallback.class);
+        Runnable onCanceled = mock(Runnable.class);
+
+        VisaCheckoutTokenizationClient.tokenize(fragment, new VisaCheckoutBuilder(sampleVisaPaymentSummary()), null,
+                null, callback, onCanceled).cancel();
+
+        verify(callback).success(any(PaymentMethodNonce.class));
+        verify(onCanceled, never()).run();
+    }
+
+    private static Configuration graphQLConfiguration(String... features) {
+        return new TestConfigurationBuilder()
+                .graphQL(new TestGraphQLConfigurationBuilder()
+                        .url("graphql_url")
+                        .features(features))
+                .buildConfiguration();
+    }
+}
@@ -0,0 +1,111 @@
+package com.braintreepayments.api;
+
+import com.braintreepayments.api.interfaces.VisaCheckoutSpanSink;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+import com.braintreepayments.api.models.VisaCheckoutSpan;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutTracingUnitTest {
+
+    private final List<VisaCheckoutSpan> mSpans = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        VisaCheckoutTracing.setEnabled(true);
+        VisaCheckoutTracing.setSink(new VisaCheckoutSpanSink() {
+            @Override
+            public void onSpanFinished(VisaCheckoutSpan span) {
+                mSpans.add(span);
+            }
+        });
+    }
+
+    @After
+    public void teardown() {
+        VisaCheckoutTestHelper.resetVisaCheckout();
+    }
+
+    @Test
+    public void traceId_isStablePerCallId() {
+        assertEquals(VisaCheckoutTracing.traceId("callId"), VisaCheckoutTracing.traceId("callId"));
+        assertFalse(VisaCheckoutTracing.traceId("callId").equals(VisaCheckoutTracing.traceId("otherCallId")));
+        assertFalse(VisaCheckoutTracing.traceId(null).equals(VisaCheckoutTracing.traceId(null)));
+        assertTrue(VisaCheckoutTracing.traceId("callId").matches("[0-9a-f]{32}"));
+    }
+
+    @Test
+    public void start_whenDisabled_returnsNull() {
+        VisaCheckoutTracing.setEnabled(false);
+
+        assertNull(VisaCheckoutTracing.start("callId"));
+        assertNull(VisaCheckoutTracing.get("callId"));
+    }
+
+    @Test
+    public void getTraceparent_containsTraceIdAndRootSpanId() {
+        VisaCheckoutTracing.Trace trace = VisaCheckoutTracing.start("callId");
+
+        assertEquals("00-" + VisaCheckoutTracing.traceId("callId") + "-" + trace.getSpanId() + "-01",
+                trace.getTraceparent());
+        assertTrue(trace.getSpanId().matches("[0-9a-f]{16}"));
+    }
+
+    @Test
+    public void phasesOfTracedPayment_areExportedAsChildSpans() {
+        VisaCheckoutTracing.Trace trace = VisaCheckoutTracing.start("callId");
+
+        VisaCheckoutMetrics.record(VisaCheckoutPhase.NETWORK, "callId", VisaCheckoutMetrics.start(), false);
+        VisaCheckoutMetrics.record(VisaCheckoutPhase.NETWORK, "otherCallId", VisaCheckoutMetrics.start(), true);
+        VisaCheckoutMetrics.record(VisaCheckoutPhase.TOKENIZE, "callId", VisaCheckoutMetrics.start(), true);
+
+        assertEquals(1, mSpans.size());
+        VisaCheckoutSpan span = mSpans.get(0);
+        assertEquals(trace.getTraceId(), span.getTraceId());
+        assertEquals(trace.getSpanId(), span.getParentSpanId());
+        assertEquals("visacheckout.network", span.getName());
+        assertEquals("callId", span.getCallId());
+        assertFalse(span.isSuccess());
+    }
+
+    @Test
+    public void finish_exportsRootSpanAndEndsTrace() {
+        VisaCheckoutTracing.Trace trace = VisaCheckoutTracing.start("callId");
+        assertSame(trace, VisaCheckoutTracing.get("callId"));
+
+        VisaCheckoutTracing.finish(trace, true);
+
+        assertNull(VisaCheckoutTracing.get("callId"));
+        assertEquals(1, mSpans.size());
+        VisaCheckoutSpan span = mSpans.get(0);
+        assertEquals(VisaCheckoutTracing.ROOT_SPAN_NAME, span.getName());
+        assertEquals(trace.getSpanId(), span.getSpanId());
+        assertNull(span.getParentSpanId());
+        assertTrue(span.isSuccess());
+        assertTrue(span.getDurationNanos() >= 0);
+    }
+
+    @Test
+    public void finish_ofReplacedTrace_keepsNewerTrace() {
+        VisaCheckoutTracing.Trace first = VisaCheckoutTracing.start("callId");
+        VisaCheckoutTracing.Trace second = VisaCheckoutTracing.start("callId");
+
+        VisaCheckoutTracing.finish(first, false);
+
+        assertSame(second, VisaCheckoutTracing.get("callId"));
+    }
+}
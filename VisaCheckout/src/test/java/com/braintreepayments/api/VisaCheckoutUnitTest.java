@@ -1,16 +1,32 @@
 package com.braintreepayments.api;
 
-import android.os.Parcel;
+import android.os.CancellationSignal;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.test.core.app.ApplicationProvider;
 
 import com.braintreepayments.api.exceptions.ConfigurationException;
+import com.braintreepayments.api.exceptions.InvalidArgumentException;
+import com.braintreepayments.api.exceptions.VisaCheckoutCircuitOpenException;
+import com.braintreepayments.api.exceptions.VisaCheckoutQueuedException;
+import com.braintreepayments.api.exceptions.VisaCheckoutUnsupportedCardBrandException;
 import com.braintreepayments.api.interfaces.BraintreeErrorListener;
 import com.braintreepayments.api.interfaces.BraintreeResponseListener;
+import com.braintreepayments.api.interfaces.ConfigurationListener;
 import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.interfaces.VisaCheckoutBatchListener;
+import com.braintreepayments.api.interfaces.VisaCheckoutConfigurationChangedListener;
+import com.braintreepayments.api.interfaces.VisaCheckoutMetricsListener;
+import com.braintreepayments.api.models.Authorization;
 import com.braintreepayments.api.models.Configuration;
 import com.braintreepayments.api.models.PaymentMethodBuilder;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+import com.braintreepayments.api.models.VisaCheckoutBuilder;
+import com.braintreepayments.api.models.VisaCheckoutCircuitBreakerPolicy;
 import com.braintreepayments.api.models.VisaCheckoutConfiguration;
+import com.braintreepayments.api.models.VisaCheckoutMetricEvent;
 import com.braintreepayments.api.models.VisaCheckoutNonce;
+import com.braintreepayments.api.models.VisaCheckoutPhase;
+import com.braintreepayments.api.models.VisaCheckoutTokenizationResult;
 import com.braintreepayments.api.test.TestActivity;
 import com.braintreepayments.api.test.TestConfigurationBuilder;
 import com.visa.checkout.Profile;
@@ -20,11 +36,13 @@ import com.visa.checkout.VisaPaymentSummary;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
@@ -32,26 +50,47 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
 
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.crypto.KeyGenerator;
 
 import static com.braintreepayments.api.test.FixturesHelper.stringFromFixture;
+import static com.braintreepayments.api.test.VisaPaymentSummaryHelper.sampleVisaPaymentSummary;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
 
 @RunWith(RobolectricTestRunner.class)
 @PowerMockIgnore({ "org.mockito.*", "org.robolectric.*", "android.*", "androidx.*", "org.json.*",
-        "com.visa.*" })
+        "com.visa.*", "javax.crypto.*" })
 @PrepareForTest({ TokenizationClient.class, VisaCheckoutConfiguration.class, VisaCheckout.class })
 public class VisaCheckoutUnitTest {
 
@@ -64,6 +103,8 @@ public class VisaCheckoutUnitTest {
 
     @Before
     public void setup() throws JSONException {
+        VisaCheckout.clearNonceCache();
+
         JSONObject visaConfiguration = new JSONObject(stringFromFixture("configuration/with_visa_checkout.json"));
         mConfigurationWithVisaCheckout = Configuration.fromJson(visaConfiguration.toString());
 
@@ -82,6 +123,12 @@ public class VisaCheckoutUnitTest {
         });
     }
 
+    @After
+    public void teardown() {
+        VisaCheckoutTestHelper.resetVisaCheckout();
+        VisaCheckout.clearConfigurationSnapshots(ApplicationProvider.getApplicationContext());
+    }
+
     @Test
     public void createProfileBuilder_whenNotEnabled_throwsConfigurationException() {
         BraintreeFragment braintreeFragment = new MockFragmentBuilder()
@@ -150,6 +197,175 @@ public class VisaCheckoutUnitTest {
         lock.await();
     }
 
+    @Test
+    public void prewarm_preparesProfileBuilderWithoutWaitingForConfigurationAgain() {
+        final Configuration configuration = new TestConfigurationBuilder()
+                .visaCheckout(new TestConfigurationBuilder.TestVisaCheckoutConfigurationBuilder()
+                        .apikey("gwApiKey")
+                        .supportedCardTypes(CardBrand.VISA, CardBrand.MASTERCARD)
+                        .externalClientId("gwExternalClientId"))
+                .buildConfiguration();
+        BraintreeFragment braintreeFragment = new MockFragmentBuilder()
+                .configuration(configuration)
+                .build();
+        BraintreeResponseListener<ProfileBuilder> listener = mock(BraintreeResponseListener.class);
+
+        VisaCheckout.prewarm(braintreeFragment);
+        VisaCheckout.createProfileBuilder(braintreeFragment, listener);
+
+        verify(braintreeFragment, times(1)).waitForConfiguration(any(ConfigurationListener.class));
+        verify(listener).onResponse(any(ProfileBuilder.class));
+    }
+
+    @Test
+    public void prewarm_checksSdkOnceOnSharedBackgroundExecutor() {
+        final List<Runnable> queuedWork = new ArrayList<>();
+        VisaCheckoutConfigurationSnapshot.setLoadExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                queuedWork.add(runnable);
+            }
+        });
+        BraintreeFragment braintreeFragment = new MockFragmentBuilder()
+                .configuration(mConfigurationWithVisaCheckout)
+                .build();
+
+        VisaCheckout.prewarm(Collections.<BraintreeFragment>emptyList());
+        VisaCheckout.prewarm(Collections.<BraintreeFragment>emptyList());
+        assertEquals(1, queuedWork.size());
+
+        queuedWork.get(0).run();
+        VisaCheckout.prewarm(braintreeFragment);
+
+        assertEquals(1, queuedWork.size());
+    }
+
+    @Test
+    public void createProfileBuilder_afterPrewarm_returnsNewProfileBuilderEachTime() {
+        BraintreeFragment braintreeFragment = new MockFragmentBuilder()
+                .configuration(mConfigurationWithVisaCheckout)
+                .build();
+        BraintreeResponseListener<ProfileBuilder> listener = mock(BraintreeResponseListener.class);
+        ArgumentCaptor<ProfileBuilder> captor = ArgumentCaptor.forClass(ProfileBuilder.class);
+
+        VisaCheckout.prewarm(braintreeFragment);
+        VisaCheckout.createProfileBuilder(braintreeFragment, listener);
+        VisaCheckout.createProfileBuilder(braintreeFragment, listener);
+
+        verify(listener, times(2)).onResponse(captor.capture());
+        assertNotSame(captor.getAllValues().get(0), captor.getAllValues().get(1));
+    }
+
+    @Test
+    public void createProfileBuilder_afterPrewarmingSeveralMerchants_doesNotWaitForConfiguration()
+            throws InvalidArgumentException {
+        BraintreeFragment firstMerchant = new MockFragmentBuilder()
+                .authorization(Authorization.fromString("sandbox_tmxhyf7d_dcpspy2brwdjr3qn"))
+                .configuration(stringFromFixture("configuration/with_visa_checkout.json"))
+                .build();
+        BraintreeFragment secondMerchant = new MockFragmentBuilder()
+                .authorization(Authorization.fromString("production_t2wns2y2_dfy45jdj3dxkmz5m"))
+                .configuration(stringFromFixture("configuration/with_visa_checkout.json"))
+                .build();
+        BraintreeResponseListener<ProfileBuilder> listener = mock(BraintreeResponseListener.class);
+
+        VisaCheckout.prewarm(Arrays.asList(firstMerchant, secondMerchant));
+        BraintreeFragment switchedFragment = new MockFragmentBuilder()
+                .authorization(Authorization.fromString("sandbox_tmxhyf7d_dcpspy2brwdjr3qn"))
+                .configuration((Configuration) null)
+                .build();
+        doNothing().when(switchedFragment).waitForConfiguration(any(ConfigurationListener.class));
+        VisaCheckout.createProfileBuilder(switchedFragment, listener);
+
+        verify(listener).onResponse(any(ProfileBuilder.class));
+    }
+
+    @Test
+    public void createProfileBuilder_whenConfigurationDiffersFromPrewarmedProfile_notifiesConfigurationChangedListener()
+            throws Exception {
+        VisaCheckoutConfigurationChangedListener changedListener = mock(VisaCheckoutConfigurationChangedListener.class);
+        VisaCheckout.setConfigurationChangedListener(changedListener);
+        Authorization authorization = Authorization.fromString("sandbox_tmxhyf7d_dcpspy2brwdjr3qn");
+        VisaCheckout.prewarm(new MockFragmentBuilder()
+                .authorization(authorization)
+                .configuration(stringFromFixture("configuration/with_visa_checkout.json"))
+                .build());
+        BraintreeFragment switchedFragment = new MockFragmentBuilder()
+                .authorization(authorization)
+                .configuration((Configuration) null)
+                .build();
+        doNothing().when(switchedFragment).waitForConfiguration(any(ConfigurationListener.class));
+        BraintreeResponseListener<ProfileBuilder> listener = mock(BraintreeResponseListener.class);
+
+        VisaCheckout.createProfileBuilder(switchedFragment, listener);
+        verify(listener).onResponse(any(ProfileBuilder.class));
+        ArgumentCaptor<ConfigurationListener> captor = ArgumentCaptor.forClass(ConfigurationListener.class);
+        verify(switchedFragment).waitForConfiguration(captor.capture());
+        captor.getValue().onConfigurationFetched(new TestConfigurationBuilder()
+                .visaCheckout(new TestConfigurationBuilder.TestVisaCheckoutConfigurationBuilder()
+                        .apikey("changedApiKey")
+                        .supportedCardTypes(CardBrand.VISA)
+                        .externalClientId("gwExternalClientId"))
+                .<Configuration>buildConfiguration());
+
+        verify(changedListener).onConfigurationChanged(any(ProfileBuilder.class));
+    }
+
+    @Test
+    public void createProfileBuilder_withConfigurationSnapshot_respondsBeforeConfigurationIsFetched()
+            throws Exception {
+        VisaCheckoutConfigurationChangedListener changedListener = mock(VisaCheckoutConfigurationChangedListener.class);
+        VisaCheckout.setConfigurationChangedListener(changedListener);
+        VisaCheckout.setConfigurationSnapshotTtl(60000);
+        BraintreeFragment braintreeFragment = coldStartFragmentWithConfigurationSnapshot();
+        BraintreeResponseListener<ProfileBuilder> listener = mock(BraintreeResponseListener.class);
+
+        VisaCheckout.createProfileBuilder(braintreeFragment, listener);
+
+        verify(listener).onResponse(any(ProfileBuilder.class));
+        ArgumentCaptor<ConfigurationListener> captor = ArgumentCaptor.forClass(ConfigurationListener.class);
+        verify(braintreeFragment).waitForConfiguration(captor.capture());
+
+        captor.getValue().onConfigurationFetched(
+                Configuration.fromJson(stringFromFixture("configuration/with_visa_checkout.json")));
+
+        verify(changedListener, never()).onConfigurationChanged(any(ProfileBuilder.class));
+    }
+
+    @Test
+    public void createProfileBuilder_whenConfigurationDiffersFromSnapshot_notifiesConfigurationChangedListener()
+            throws Exception {
+        VisaCheckoutConfigurationChangedListener changedListener = mock(VisaCheckoutConfigurationChangedListener.class);
+        VisaCheckout.setConfigurationChangedListener(changedListener);
+        VisaCheckout.setConfigurationSnapshotTtl(60000);
+        BraintreeFragment braintreeFragment = coldStartFragmentWithConfigurationSnapshot();
+        BraintreeResponseListener<ProfileBuilder> listener = mock(BraintreeResponseListener.class);
+
+        VisaCheckout.createProfileBuilder(braintreeFragment, listener);
+        ArgumentCaptor<ConfigurationListener> captor = ArgumentCaptor.forClass(ConfigurationListener.class);
+        verify(braintreeFragment).waitForConfiguration(captor.capture());
+        captor.getValue().onConfigurationFetched(new TestConfigurationBuilder()
+                .visaCheckout(new TestConfigurationBuilder.TestVisaCheckoutConfigurationBuilder()
+                        .apikey("changedApiKey")
+                        .supportedCardTypes(CardBrand.VISA)
+                        .externalClientId("gwExternalClientId"))
+                .<Configuration>buildConfiguration());
+
+        verify(listener).onResponse(any(ProfileBuilder.class));
+        verify(changedListener).onConfigurationChanged(any(ProfileBuilder.class));
+    }
+
+    @Test
+    public void createProfileBuilder_whenConfigurationSnapshotsDisabled_waitsForConfiguration() throws Exception {
+        BraintreeFragment braintreeFragment = coldStartFragmentWithConfigurationSnapshot();
+        BraintreeResponseListener<ProfileBuilder> listener = mock(BraintreeResponseListener.class);
+
+        VisaCheckout.createProfileBuilder(braintreeFragment, listener);
+
+        verify(braintreeFragment).waitForConfiguration(any(ConfigurationListener.class));
+        verify(listener, never()).onResponse(any(ProfileBuilder.class));
+    }
+
     @Test
     public void tokenize_whenSuccessful_postsVisaPaymentMethodNonce() throws Exception {
         mockStatic(TokenizationClient.class);
@@ -241,17 +457,639 @@ public class VisaCheckoutUnitTest {
         verify(mBraintreeFragment).sendAnalyticsEvent(eq("visacheckout.tokenize.failed"));
     }
 
-    private VisaPaymentSummary sampleVisaPaymentSummary() throws JSONException {
-        JSONObject summaryJson = new JSONObject()
-                .put("encPaymentData", "stubbedEncPaymentData")
-                .put("encKey", "stubbedEncKey")
-                .put("callid", "stubbedCallId");
+    @Test
+    public void tokenize_whenCardBrandNotAccepted_postsExceptionWithoutSendingRequest() throws Exception {
+        mockStatic(TokenizationClient.class);
+        BraintreeFragment braintreeFragment = new MockFragmentBuilder()
+                .configuration(new TestConfigurationBuilder()
+                        .visaCheckout(new TestConfigurationBuilder.TestVisaCheckoutConfigurationBuilder()
+                                .apikey("gwApiKey")
+                                .supportedCardTypes(CardBrand.VISA, CardBrand.MASTERCARD)
+                                .externalClientId("gwExternalClientId"))
+                        .build())
+                .build();
+        ArgumentCaptor<Exception> exceptionCaptor = ArgumentCaptor.forClass(Exception.class);
+
+        VisaCheckout.tokenize(braintreeFragment, sampleVisaPaymentSummary("discoverCallId", CardBrand.DISCOVER));
+
+        verifyStatic(never());
+        TokenizationClient.tokenize(any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        verify(braintreeFragment).postCallback(exceptionCaptor.capture());
+        VisaCheckoutUnsupportedCardBrandException exception =
+                (VisaCheckoutUnsupportedCardBrandException) exceptionCaptor.getValue();
+        assertEquals(CardBrand.DISCOVER, exception.getCardBrand());
+    }
+
+    @Test
+    public void tokenize_whenCircuitOpen_postsExceptionWithoutSendingRequest() throws Exception {
+        VisaCheckout.setCircuitBreakerPolicy(new VisaCheckoutCircuitBreakerPolicy()
+                .minimumRequests(2)
+                .failureRateThreshold(1));
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((PaymentMethodNonceCallback) invocation.getArguments()[2]).failure(new IOException("timeout"));
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        ArgumentCaptor<Exception> exceptionCaptor = ArgumentCaptor.forClass(Exception.class);
+
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("firstCallId"));
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("secondCallId"));
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("thirdCallId"));
+
+        verifyStatic(times(2));
+        TokenizationClient.tokenize(any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        verify(mBraintreeFragment, times(3)).postCallback(exceptionCaptor.capture());
+        VisaCheckoutCircuitOpenException exception =
+                (VisaCheckoutCircuitOpenException) exceptionCaptor.getAllValues().get(2);
+        assertTrue(exception.getRetryAfterMillis() > 0);
+    }
+
+    @Test
+    public void tokenize_whenCardBrandUnknown_sendsRequest() throws Exception {
+        mockStatic(TokenizationClient.class);
+
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("unknownBrandCallId", "UNKNOWN"));
+
+        verifyStatic();
+        TokenizationClient.tokenize(any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+    }
+
+    @Test
+    public void tokenize_whenConnectivityErrorAndOfflineQueueEnabled_queuesPayment() throws Exception {
+        VisaCheckoutOfflineQueue queue = enableOfflineQueue();
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((PaymentMethodNonceCallback) invocation.getArguments()[2]).failure(new IOException("offline"));
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        ArgumentCaptor<Exception> exceptionCaptor = ArgumentCaptor.forClass(Exception.class);
+
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("queuedCallId"));
+        ShadowLooper.idleMainLooper();
+
+        verify(mBraintreeFragment).postCallback(exceptionCaptor.capture());
+        VisaCheckoutQueuedException exception = (VisaCheckoutQueuedException) exceptionCaptor.getValue();
+        assertEquals("queuedCallId", exception.getCallId());
+        assertEquals("offline", exception.getCause().getMessage());
+        assertEquals(1, queue.pending().size());
+    }
+
+    @Test
+    public void tokenize_whenConnectivityErrorAndOfflineQueueEnabled_queuesPaymentOnOfflineQueueExecutor()
+            throws Exception {
+        VisaCheckoutOfflineQueue queue = enableOfflineQueue();
+        final List<Runnable> queuedWork = new ArrayList<>();
+        VisaCheckoutOfflineQueue.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                queuedWork.add(runnable);
+            }
+        });
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((PaymentMethodNonceCallback) invocation.getArguments()[2]).failure(new IOException("offline"));
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("queuedCallId"));
+
+        verify(mBraintreeFragment, never()).postCallback(any(Exception.class));
+        assertTrue(queue.pending().isEmpty());
+
+        queuedWork.get(0).run();
+        ShadowLooper.idleMainLooper();
+
+        verify(mBraintreeFragment).postCallback(any(VisaCheckoutQueuedException.class));
+        assertEquals(1, queue.pending().size());
+    }
+
+    @Test
+    public void replayOfflineQueue_postsNonceOnce() throws Exception {
+        VisaCheckoutOfflineQueue queue = enableOfflineQueue();
+        queue.add("queuedCallId", "stubbedEncKey", "stubbedEncPaymentData");
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ((PaymentMethodNonceCallback) invocation.getArguments()[2]).success(VisaCheckoutNonce.fromJson(
+                        stringFromFixture("payment_methods/visa_checkout_response.json")));
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+
+        VisaCheckout.replayOfflineQueue(mBraintreeFragment);
+        VisaCheckout.replayOfflineQueue(mBraintreeFragment);
+
+        verify(mBraintreeFragment, times(1)).postCallback(any(VisaCheckoutNonce.class));
+        assertTrue(queue.pending().isEmpty());
+    }
+
+    @Test
+    public void tokenize_whenPaymentIsQueued_removesItFromQueue() throws Exception {
+        VisaCheckoutOfflineQueue queue = enableOfflineQueue();
+        queue.add("queuedCallId", "stubbedEncKey", "stubbedEncPaymentData");
+        mockStatic(TokenizationClient.class);
+
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("queuedCallId"));
+
+        assertTrue(queue.pending().isEmpty());
+    }
+
+    @Test
+    public void tokenize_whenSamePaymentAlreadyInFlight_doesNotSendSecondRequest() throws Exception {
+        final List<PaymentMethodNonceCallback> pendingCallbacks = new ArrayList<>();
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                pendingCallbacks.add((PaymentMethodNonceCallback) invocation.getArguments()[2]);
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        VisaPaymentSummary visaPaymentSummary = sampleVisaPaymentSummary("inFlightCallId");
+
+        VisaCheckout.tokenize(mBraintreeFragment, visaPaymentSummary);
+        VisaCheckout.tokenize(mBraintreeFragment, visaPaymentSummary);
+
+        assertEquals(1, pendingCallbacks.size());
+
+        VisaCheckoutNonce visaCheckoutNonce = VisaCheckoutNonce.fromJson(
+                stringFromFixture("payment_methods/visa_checkout_response.json"));
+        pendingCallbacks.get(0).success(visaCheckoutNonce);
+
+        verify(mBraintreeFragment, times(2)).postCallback(visaCheckoutNonce);
+        verify(mBraintreeFragment, times(1)).sendAnalyticsEvent(eq("visacheckout.tokenize.succeeded"));
+    }
+
+    @Test
+    public void tokenize_whenSamePaymentTokenizedRecentlyAndCacheDisabled_sendsNewRequest() throws Exception {
+        final List<PaymentMethodNonceCallback> pendingCallbacks = new ArrayList<>();
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                pendingCallbacks.add((PaymentMethodNonceCallback) invocation.getArguments()[2]);
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        VisaPaymentSummary visaPaymentSummary = sampleVisaPaymentSummary("uncachedCallId");
+
+        VisaCheckout.tokenize(mBraintreeFragment, visaPaymentSummary);
+        pendingCallbacks.get(0).success(VisaCheckoutNonce.fromJson(
+                stringFromFixture("payment_methods/visa_checkout_response.json")));
+        VisaCheckout.tokenize(mBraintreeFragment, visaPaymentSummary);
+
+        assertEquals(2, pendingCallbacks.size());
+        pendingCallbacks.get(1).failure(new Exception("Mock Failure"));
+    }
+
+    @Test
+    public void tokenize_whenSamePaymentTokenizedRecently_postsCachedNonce() throws Exception {
+        VisaCheckout.setNonceCacheTtl(60000);
+        final List<PaymentMethodNonceCallback> pendingCallbacks = new ArrayList<>();
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                pendingCallbacks.add((PaymentMethodNonceCallback) invocation.getArguments()[2]);
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        VisaPaymentSummary visaPaymentSummary = sampleVisaPaymentSummary("cachedCallId");
+        VisaCheckoutNonce visaCheckoutNonce = VisaCheckoutNonce.fromJson(
+                stringFromFixture("payment_methods/visa_checkout_response.json"));
+
+        VisaCheckout.tokenize(mBraintreeFragment, visaPaymentSummary);
+        pendingCallbacks.get(0).success(visaCheckoutNonce);
+        VisaCheckout.tokenize(mBraintreeFragment, visaPaymentSummary);
+
+        assertEquals(1, pendingCallbacks.size());
+        verify(mBraintreeFragment, times(2)).postCallback(visaCheckoutNonce);
+        verify(mBraintreeFragment).sendAnalyticsEvent(eq("visacheckout.tokenize.cached"));
+    }
+
+    @Test
+    public void tokenize_afterNonceInvalidated_sendsNewRequest() throws Exception {
+        VisaCheckout.setNonceCacheTtl(60000);
+        final List<PaymentMethodNonceCallback> pendingCallbacks = new ArrayList<>();
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                pendingCallbacks.add((PaymentMethodNonceCallback) invocation.getArguments()[2]);
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        VisaPaymentSummary visaPaymentSummary = sampleVisaPaymentSummary("invalidatedCallId");
+
+        VisaCheckout.tokenize(mBraintreeFragment, visaPaymentSummary);
+        pendingCallbacks.get(0).success(VisaCheckoutNonce.fromJson(
+                stringFromFixture("payment_methods/visa_checkout_response.json")));
+        VisaCheckout.invalidateNonce("invalidatedCallId");
+        VisaCheckout.tokenize(mBraintreeFragment, visaPaymentSummary);
+
+        assertEquals(2, pendingCallbacks.size());
+        pendingCallbacks.get(1).failure(new Exception("Mock Failure"));
+    }
+
+    @Test
+    public void tokenize_withDeadline_whenDeadlinePasses_postsTimeoutExceptionOnly() throws Exception {
+        final List<PaymentMethodNonceCallback> pendingCallbacks = new ArrayList<>();
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                pendingCallbacks.add((PaymentMethodNonceCallback) invocation.getArguments()[2]);
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("deadlineCallId"), 100);
+        ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+
+        verify(mBraintreeFragment).postCallback(any(TimeoutException.class));
+
+        pendingCallbacks.get(0).success(VisaCheckoutNonce.fromJson(
+                stringFromFixture("payment_methods/visa_checkout_response.json")));
+
+        verify(mBraintreeFragment, never()).postCallback(any(PaymentMethodNonce.class));
+    }
+
+    @Test
+    public void tokenize_withDeadline_whenCompletedInTime_postsNonceOnly() throws Exception {
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ((PaymentMethodNonceCallback) invocation.getArguments()[2]).success(VisaCheckoutNonce.fromJson(
+                        stringFromFixture("payment_methods/visa_checkout_response.json")));
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("inTimeCallId"), 100);
+        ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+
+        verify(mBraintreeFragment).postCallback(any(PaymentMethodNonce.class));
+        verify(mBraintreeFragment, never()).postCallback(any(Exception.class));
+    }
+
+    @Test
+    public void tokenize_withDeadline_whenCanceled_neverPostsCallback() throws Exception {
+        final List<PaymentMethodNonceCallback> pendingCallbacks = new ArrayList<>();
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                pendingCallbacks.add((PaymentMethodNonceCallback) invocation.getArguments()[2]);
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+
+        CancellationSignal cancellationSignal = VisaCheckout.tokenize(mBraintreeFragment,
+                sampleVisaPaymentSummary("canceledCallId"), 100);
+        cancellationSignal.cancel();
+        ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+        pendingCallbacks.get(0).failure(new Exception("Mock Failure"));
+
+        verify(mBraintreeFragment, never()).postCallback(any(Exception.class));
+        verify(mBraintreeFragment, never()).postCallback(any(PaymentMethodNonce.class));
+    }
+
+    @Test
+    public void tokenize_whenCanceledBeforeConfiguration_returnsBuilderToPool() throws Exception {
+        VisaCheckout.sBuilderPool.clear();
+        doNothing().when(mBraintreeFragment).waitForConfiguration(any(ConfigurationListener.class));
+        PaymentMethodNonceCallback callback = mock(PaymentMethodNonceCallback.class);
+
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("canceledCallId"), callback).cancel();
+
+        assertEquals(1, VisaCheckout.sBuilderPool.size());
+        verify(callback, never()).success(any(PaymentMethodNonce.class));
+        verify(callback, never()).failure(any(Exception.class));
+    }
+
+    @Test
+    public void tokenize_withDeadline_whenDeadlinePassesBeforeConfiguration_returnsBuilderToPool() throws Exception {
+        VisaCheckout.sBuilderPool.clear();
+        doNothing().when(mBraintreeFragment).waitForConfiguration(any(ConfigurationListener.class));
+
+        VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("expiredCallId"), 100);
+        ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, VisaCheckout.sBuilderPool.size());
+    }
+
+    @Test
+    public void createProfileBuilder_withDeadline_whenConfigurationAvailable_returnsProfileBuilder() {
+        BraintreeResponseListener<ProfileBuilder> listener = mock(BraintreeResponseListener.class);
+
+        VisaCheckout.createProfileBuilder(mBraintreeFragment, 100, listener);
+        ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+
+        verify(listener).onResponse(any(ProfileBuilder.class));
+        verify(mBraintreeFragment, never()).postCallback(any(Exception.class));
+    }
+
+    @Test
+    public void tokenize_withList_deliversResultsInOrderAndCompletes() throws Exception {
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                VisaCheckoutBuilder visaCheckoutBuilder = (VisaCheckoutBuilder) invocation.getArguments()[1];
+                PaymentMethodNonceCallback paymentMethodNonceCallback = (PaymentMethodNonceCallback)invocation
+                        .getArguments()[2];
+
+                if ("failingCallId".equals(visaCheckoutBuilder.getCallId())) {
+                    paymentMethodNonceCallback.failure(new Exception("Mock Failure"));
+                } else {
+                    paymentMethodNonceCallback.success(VisaCheckoutNonce.fromJson(
+                            stringFromFixture("payment_methods/visa_checkout_response.json")));
+                }
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        VisaCheckoutBatchListener listener = mock(VisaCheckoutBatchListener.class);
+        ArgumentCaptor<List> resultsCaptor = ArgumentCaptor.forClass(List.class);
+
+        VisaCheckout.tokenize(mBraintreeFragment, Arrays.asList(sampleVisaPaymentSummary("firstCallId"),
+                sampleVisaPaymentSummary("failingCallId"), sampleVisaPaymentSummary("thirdCallId")), listener);
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onResult(eq(0), any(VisaCheckoutTokenizationResult.class));
+        inOrder.verify(listener).onResult(eq(1), any(VisaCheckoutTokenizationResult.class));
+        inOrder.verify(listener).onResult(eq(2), any(VisaCheckoutTokenizationResult.class));
+        inOrder.verify(listener).onComplete(resultsCaptor.capture());
+
+        List<VisaCheckoutTokenizationResult> results = resultsCaptor.getValue();
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("Mock Failure", results.get(1).getError().getMessage());
+        assertEquals("thirdCallId", results.get(2).getVisaPaymentSummary().getCallId());
+        verify(mBraintreeFragment, times(2)).sendAnalyticsEvent(eq("visacheckout.tokenize.succeeded"));
+        verify(mBraintreeFragment).sendAnalyticsEvent(eq("visacheckout.tokenize.failed"));
+    }
+
+    @Test
+    public void tokenize_withList_limitsConcurrentRequests() throws Exception {
+        final List<PaymentMethodNonceCallback> pendingCallbacks = new ArrayList<>();
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                pendingCallbacks.add((PaymentMethodNonceCallback) invocation.getArguments()[2]);
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        VisaCheckoutBatchListener listener = mock(VisaCheckoutBatchListener.class);
+
+        VisaCheckout.tokenize(mBraintreeFragment, Arrays.asList(sampleVisaPaymentSummary("limitedCallId1"),
+                sampleVisaPaymentSummary("limitedCallId2"), sampleVisaPaymentSummary("limitedCallId3")), 2, listener);
+
+        assertEquals(2, pendingCallbacks.size());
+
+        pendingCallbacks.get(1).failure(new Exception("Mock Failure"));
+
+        assertEquals(3, pendingCallbacks.size());
+        verify(listener, never()).onResult(anyInt(), any(VisaCheckoutTokenizationResult.class));
+
+        pendingCallbacks.get(0).failure(new Exception("Mock Failure"));
+        pendingCallbacks.get(2).failure(new Exception("Mock Failure"));
+
+        verify(listener).onComplete(any(List.class));
+    }
+
+    @Test
+    public void tokenize_withLongListOfSynchronousResults_completesWithoutRecursing() throws Exception {
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((PaymentMethodNonceCallback) invocation.getArguments()[2]).failure(new Exception("Mock Failure"));
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        List<VisaPaymentSummary> visaPaymentSummaries = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            visaPaymentSummaries.add(sampleVisaPaymentSummary("batchCallId" + i));
+        }
+        VisaCheckoutBatchListener listener = mock(VisaCheckoutBatchListener.class);
+        ArgumentCaptor<List> resultsCaptor = ArgumentCaptor.forClass(List.class);
+
+        VisaCheckout.tokenize(mBraintreeFragment, visaPaymentSummaries, 1, listener);
+
+        verify(listener).onComplete(resultsCaptor.capture());
+        assertEquals(5000, resultsCaptor.getValue().size());
+    }
+
+    @Test
+    public void tokenize_withEmptyList_completesImmediately() {
+        VisaCheckoutBatchListener listener = mock(VisaCheckoutBatchListener.class);
+
+        VisaCheckout.tokenize(mBraintreeFragment, Collections.<VisaPaymentSummary>emptyList(), listener);
+
+        verify(listener).onComplete(Collections.<VisaCheckoutTokenizationResult>emptyList());
+    }
+
+    @Test
+    public void tokenize_withMetricsListener_reportsPhases() throws Exception {
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                PaymentMethodNonceCallback paymentMethodNonceCallback = (PaymentMethodNonceCallback)invocation
+                        .getArguments()[2];
+
+                paymentMethodNonceCallback.success(VisaCheckoutNonce.fromJson(
+                        stringFromFixture("payment_methods/visa_checkout_response.json")));
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        VisaCheckoutMetricsListener listener = mock(VisaCheckoutMetricsListener.class);
+        ArgumentCaptor<VisaCheckoutMetricEvent> captor = ArgumentCaptor.forClass(VisaCheckoutMetricEvent.class);
+        VisaCheckout.resetLatencyHistograms();
+        VisaCheckout.setMetricsListener(listener);
+
+        try {
+            VisaCheckout.tokenize(mBraintreeFragment, sampleVisaPaymentSummary("metricsCallId"));
+        } finally {
+            VisaCheckout.setMetricsListener(null);
+        }
+
+        verify(listener, times(2)).onMetricEvent(captor.capture());
+        assertEquals(VisaCheckoutPhase.NETWORK, captor.getAllValues().get(0).getPhase());
+        assertEquals(VisaCheckoutPhase.TOKENIZE, captor.getAllValues().get(1).getPhase());
+        assertEquals("metricsCallId", captor.getAllValues().get(1).getCallId());
+        assertTrue(captor.getAllValues().get(1).isSuccess());
+        assertEquals(1, VisaCheckout.getLatencySnapshot(VisaCheckoutPhase.TOKENIZE).getCount());
+    }
+
+    @Test
+    public void createProfileBuilderAsync_completesWithProfileBuilder() {
+        VisaCheckoutFuture<ProfileBuilder> future = VisaCheckout.createProfileBuilderAsync(mBraintreeFragment);
+
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void createProfileBuilderAsync_whenNotEnabled_failsWithoutPostingToFragment() throws Exception {
+        BraintreeFragment braintreeFragment = new MockFragmentBuilder()
+                .build();
+
+        VisaCheckoutFuture<ProfileBuilder> future = VisaCheckout.createProfileBuilderAsync(braintreeFragment);
+
+        try {
+            future.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConfigurationException);
+        }
+        verify(braintreeFragment, never()).postCallback(any(Exception.class));
+    }
+
+    @Test
+    public void tokenizeAsync_completesWithNonce() throws Exception {
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                PaymentMethodNonceCallback paymentMethodNonceCallback = (PaymentMethodNonceCallback)invocation
+                        .getArguments()[2];
+
+                paymentMethodNonceCallback.success(VisaCheckoutNonce.fromJson(
+                        stringFromFixture("payment_methods/visa_checkout_response.json")));
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+
+        VisaCheckoutFuture<VisaCheckoutNonce> future = VisaCheckout.tokenizeAsync(mBraintreeFragment,
+                sampleVisaPaymentSummary("asyncCallId"));
+
+        assertEquals("123456-12345-12345-a-adfa", future.get().getNonce());
+        verify(mBraintreeFragment, never()).postCallback(any(PaymentMethodNonce.class));
+    }
+
+    @Test
+    public void tokenizeAsync_withExecutor_completesOnExecutor() throws Exception {
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ((PaymentMethodNonceCallback) invocation.getArguments()[2]).success(VisaCheckoutNonce.fromJson(
+                        stringFromFixture("payment_methods/visa_checkout_response.json")));
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+        final List<Runnable> queuedWork = new ArrayList<>();
+
+        VisaCheckoutFuture<VisaCheckoutNonce> future = VisaCheckout.tokenizeAsync(mBraintreeFragment,
+                sampleVisaPaymentSummary("executorCallId"), new Executor() {
+                    @Override
+                    public void execute(Runnable runnable) {
+                        queuedWork.add(runnable);
+                    }
+                });
+
+        assertFalse(future.isDone());
+
+        queuedWork.get(0).run();
+
+        assertEquals("123456-12345-12345-a-adfa", future.get().getNonce());
+    }
+
+    @Test
+    public void tokenizeAsync_whenCanceled_detachesFromRequest() throws Exception {
+        final List<PaymentMethodNonceCallback> pendingCallbacks = new ArrayList<>();
+        mockStatic(TokenizationClient.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                pendingCallbacks.add((PaymentMethodNonceCallback) invocation.getArguments()[2]);
+                return null;
+            }
+        }).when(TokenizationClient.class, "tokenize", any(BraintreeFragment.class), any(PaymentMethodBuilder.class),
+                any(PaymentMethodNonceCallback.class));
+
+        VisaCheckoutFuture<VisaCheckoutNonce> future = VisaCheckout.tokenizeAsync(mBraintreeFragment,
+                sampleVisaPaymentSummary("canceledAsyncCallId"));
+        future.cancel(true);
+        pendingCallbacks.get(0).success(VisaCheckoutNonce.fromJson(
+                stringFromFixture("payment_methods/visa_checkout_response.json")));
+
+        assertTrue(future.isCancelled());
+    }
 
-        Parcel in = Parcel.obtain();
-        in.writeString("SUCCESS");
-        in.writeString(summaryJson.toString());
-        in.setDataPosition(0);
+    private VisaCheckoutOfflineQueue enableOfflineQueue() throws NoSuchAlgorithmException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        VisaCheckoutOfflineQueue queue = new VisaCheckoutOfflineQueue(mActivity,
+                new VisaCheckoutQueueCipher(keyGenerator.generateKey()));
+        queue.clear();
+        VisaCheckoutOfflineQueue.setInstance(queue);
+        VisaCheckoutOfflineQueue.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        });
+        VisaCheckout.setOfflineQueueEnabled(true);
+
+        return queue;
+    }
+
+    /**
+     * @return a {@link BraintreeFragment} whose configuration was not fetched yet and does not arrive until the
+     * captured {@link ConfigurationListener} is called, with a configuration snapshot saved for its authorization.
+     * Snapshots are read on the calling thread.
+     */
+    private BraintreeFragment coldStartFragmentWithConfigurationSnapshot() throws InvalidArgumentException {
+        VisaCheckoutConfigurationSnapshot.setLoadExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        });
+        Authorization authorization = Authorization.fromString("sandbox_tmxhyf7d_dcpspy2brwdjr3qn");
+        VisaCheckoutConfigurationSnapshot.save(ApplicationProvider.getApplicationContext(),
+                VisaCheckoutProfileRegistry.key(authorization), mConfigurationWithVisaCheckout);
+
+        BraintreeFragment braintreeFragment = new MockFragmentBuilder()
+                .authorization(authorization)
+                .configuration((Configuration) null)
+                .build();
+        doNothing().when(braintreeFragment).waitForConfiguration(any(ConfigurationListener.class));
 
-        return VisaPaymentSummary.CREATOR.createFromParcel(in);
+        return braintreeFragment;
     }
 }
@@ -1,7 +1,5 @@
 package com.braintreepayments.api.models;
 
-import android.os.Parcel;
-
 import com.visa.checkout.VisaPaymentSummary;
 
 import org.json.JSONException;
@@ -12,7 +10,15 @@ import org.robolectric.RobolectricTestRunner;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static com.braintreepayments.api.test.VisaPaymentSummaryHelper.sampleVisaPaymentSummary;
+import static com.braintreepayments.api.test.VisaPaymentSummaryHelper.visaPaymentSummary;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
 
 @RunWith(RobolectricTestRunner.class)
 public class VisaCheckoutBuilderUnitTest {
@@ -34,17 +40,7 @@ public class VisaCheckoutBuilderUnitTest {
         JSONObject base = new JSONObject();
         JSONObject paymentMethodNonceJson = new JSONObject();
 
-        JSONObject summaryJson = new JSONObject()
-                .put("encPaymentData", "stubbedEncPaymentData")
-                .put("encKey", "stubbedEncKey")
-                .put("callid", "stubbedCallId");
-
-        Parcel in = Parcel.obtain();
-        in.writeString("SUCCESS");
-        in.writeString(summaryJson.toString());
-        in.setDataPosition(0);
-
-        VisaPaymentSummary visaPaymentSummary = VisaPaymentSummary.CREATOR.createFromParcel(in);
+        VisaPaymentSummary visaPaymentSummary = sampleVisaPaymentSummary();
 
         JSONObject expectedBase = new JSONObject();
         JSONObject expectedPaymentMethodNonce = new JSONObject();
@@ -59,6 +55,123 @@ public class VisaCheckoutBuilderUnitTest {
         JSONAssert.assertEquals(expectedBase, base, JSONCompareMode.STRICT);
     }
 
+    @Test
+    public void build_matchesJSONObjectSerialization() throws JSONException {
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(visaPaymentSummary("call/Id\"1",
+                "enc\\Key\n\u0001", "abc+/def==\t\u2028"));
+
+        String body = visaCheckoutBuilder.build();
+
+        JSONObject expectedPaymentMethodNonce = new JSONObject()
+                .put("callId", "call/Id\"1")
+                .put("encryptedKey", "enc\\Key\n\u0001")
+                .put("encryptedPaymentData", "abc+/def==\t\u2028");
+        JSONObject expectedBase = new JSONObject()
+                .put("_meta", new JSONObject(body).getJSONObject("_meta"))
+                .put("visaCheckoutCard", expectedPaymentMethodNonce);
+        JSONAssert.assertEquals(expectedBase, new JSONObject(body), JSONCompareMode.STRICT);
+    }
+
+    @Test
+    public void build_withNullVisaPaymentSummary_matchesJSONObjectSerialization() throws JSONException {
+        String body = new VisaCheckoutBuilder(null).build();
+
+        JSONObject expectedBase = new JSONObject()
+                .put("_meta", new JSONObject(body).getJSONObject("_meta"))
+                .put("visaCheckoutCard", new JSONObject());
+        JSONAssert.assertEquals(expectedBase, new JSONObject(body), JSONCompareMode.STRICT);
+    }
+
+    @Test
+    public void build_writesMetadataAndOptions() throws JSONException {
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(sampleVisaPaymentSummary())
+                .validate(true);
+        visaCheckoutBuilder.setSessionId("stubbedSessionId");
+
+        JSONObject body = new JSONObject(visaCheckoutBuilder.build());
+
+        assertEquals("stubbedSessionId", body.getJSONObject("_meta").getString("sessionId"));
+        assertEquals("android", body.getJSONObject("_meta").getString("platform"));
+        JSONObject visaCheckoutCard = body.getJSONObject("visaCheckoutCard");
+        assertTrue(visaCheckoutCard.getJSONObject("options").getBoolean("validate"));
+        assertEquals("stubbedEncPaymentData", visaCheckoutCard.getString("encryptedPaymentData"));
+    }
+
+    @Test
+    public void writeTo_withFields_addsTopLevelFields() throws IOException, JSONException {
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(sampleVisaPaymentSummary());
+        StringWriter writer = new StringWriter();
+
+        visaCheckoutBuilder.writeTo(writer, new JSONObject().put("authorizationFingerprint", "fingerprint"));
+
+        JSONObject expectedBase = new JSONObject(visaCheckoutBuilder.build())
+                .put("authorizationFingerprint", "fingerprint");
+        JSONAssert.assertEquals(expectedBase, new JSONObject(writer.toString()), JSONCompareMode.STRICT);
+    }
+
+    @Test
+    public void writeTo_writesSameBodyAsBuild() throws IOException, JSONException {
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(visaPaymentSummary("stubbedCallId",
+                "stubbedEncKey", "stubbedEncPaymentData"));
+        StringWriter writer = new StringWriter();
+
+        visaCheckoutBuilder.writeTo(writer);
+
+        assertEquals(visaCheckoutBuilder.build(), writer.toString());
+    }
+
+    @Test
+    public void buildGraphQL_withVisaPaymentSummary_buildsTokenizeMutation() throws JSONException {
+        JSONObject base = new JSONObject();
+        JSONObject variables = new JSONObject().put("input", new JSONObject());
+
+        JSONObject expectedVisaCheckoutCard = new JSONObject()
+                .put("callId", "stubbedCallId")
+                .put("encryptedKey", "stubbedEncKey")
+                .put("encryptedPaymentData", "stubbedEncPaymentData");
+
+        new VisaCheckoutBuilder(sampleVisaPaymentSummary()).buildGraphQL(null, base, variables);
+
+        JSONAssert.assertEquals(expectedVisaCheckoutCard,
+                variables.getJSONObject("input").getJSONObject("visaCheckoutCard"), JSONCompareMode.STRICT);
+        assertEquals("TokenizeVisaCheckoutCard", base.getString("operationName"));
+        String query = base.getString("query");
+        assertTrue(query.startsWith("mutation TokenizeVisaCheckoutCard("));
+        assertTrue(query.contains("billingAddress"));
+        assertTrue(query.contains("shippingAddress"));
+        assertTrue(query.contains("userData"));
+        assertTrue(query.contains("binData"));
+    }
+
+    @Test
+    public void reset_replacesPaymentData() throws JSONException {
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(visaPaymentSummary("firstCallId",
+                "firstEncKey", "firstEncPaymentData"));
+        visaCheckoutBuilder.setSessionId("firstSessionId");
+        visaCheckoutBuilder.build();
+
+        String body = visaCheckoutBuilder.reset(visaPaymentSummary("secondCallId", "secondEncKey",
+                "secondEncPaymentData")).build();
+
+        assertEquals("secondCallId", visaCheckoutBuilder.getCallId());
+        assertEquals(body, new VisaCheckoutBuilder(visaPaymentSummary("secondCallId", "secondEncKey",
+                "secondEncPaymentData")).build());
+        assertFalse(body.contains("first"));
+    }
+
+    @Test
+    public void reset_withNull_clearsPaymentData() throws JSONException {
+        VisaCheckoutBuilder visaCheckoutBuilder = new VisaCheckoutBuilder(visaPaymentSummary("callId", "encKey",
+                "encPaymentData"));
+        visaCheckoutBuilder.setSessionId("sessionId");
+
+        String body = visaCheckoutBuilder.reset(null).build();
+
+        assertNull(visaCheckoutBuilder.getCallId());
+        assertEquals(0, new JSONObject(body).getJSONObject("visaCheckoutCard").length());
+        assertFalse(new JSONObject(body).getJSONObject("_meta").has("sessionId"));
+    }
+
     @Test
     public void getApiPath_returnsCorrectApiPath() {
         assertEquals("visa_checkout_cards", new VisaCheckoutBuilder(null).getApiPath());
@@ -0,0 +1,121 @@
+package com.braintreepayments.api.models;
+
+import android.os.Parcel;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static com.braintreepayments.api.test.FixturesHelper.stringFromFixture;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutLazyNonceUnitTest {
+
+    @Test
+    public void fromJson_readsSameValuesAsVisaCheckoutNonce() throws JSONException {
+        String response = stringFromFixture("payment_methods/visa_checkout_response.json");
+        VisaCheckoutNonce expected = VisaCheckoutNonce.fromJson(response);
+
+        VisaCheckoutNonce visaCheckoutNonce = VisaCheckoutLazyNonce.fromJson(response);
+
+        assertEquals(expected.getNonce(), visaCheckoutNonce.getNonce());
+        assertEquals(expected.getDescription(), visaCheckoutNonce.getDescription());
+        assertEquals(expected.isDefault(), visaCheckoutNonce.isDefault());
+        assertEquals(expected.getTypeLabel(), visaCheckoutNonce.getTypeLabel());
+        assertEquals(expected.getLastTwo(), visaCheckoutNonce.getLastTwo());
+        assertEquals(expected.getCardType(), visaCheckoutNonce.getCardType());
+        assertEquals(expected.getCallId(), visaCheckoutNonce.getCallId());
+        assertEquals("billingFirstName", visaCheckoutNonce.getBillingAddress().getFirstName());
+        assertEquals("shippingLocality", visaCheckoutNonce.getShippingAddress().getLocality());
+        assertEquals("userEmail", visaCheckoutNonce.getUserData().getUserEmail());
+        assertEquals("123", visaCheckoutNonce.getBinData().getProductId());
+    }
+
+    @Test
+    public void fromJson_acceptsCardWithoutWrapper() throws JSONException {
+        JSONObject card = new JSONObject(stringFromFixture("payment_methods/visa_checkout_response.json"))
+                .getJSONArray("visaCheckoutCards")
+                .getJSONObject(0);
+
+        VisaCheckoutNonce visaCheckoutNonce = VisaCheckoutLazyNonce.fromJson(card.toString());
+
+        assertEquals("123456-12345-12345-a-adfa", visaCheckoutNonce.getNonce());
+        assertEquals("billingFirstName", visaCheckoutNonce.getBillingAddress().getFirstName());
+        assertEquals("shippingLocality", visaCheckoutNonce.getShippingAddress().getLocality());
+        assertEquals("userEmail", visaCheckoutNonce.getUserData().getUserEmail());
+    }
+
+    @Test
+    public void fromJson_withoutDescription_throwsJSONException() throws JSONException {
+        JSONObject response = new JSONObject(stringFromFixture("payment_methods/visa_checkout_response.json"));
+        response.getJSONArray("visaCheckoutCards").getJSONObject(0).remove("description");
+
+        try {
+            VisaCheckoutLazyNonce.fromJson(response.toString());
+            fail("Expected JSONException");
+        } catch (JSONException ignored) {}
+    }
+
+    @Test
+    public void fromJson_withoutDetails_throwsJSONException() throws JSONException {
+        JSONObject response = new JSONObject(stringFromFixture("payment_methods/visa_checkout_response.json"));
+        response.getJSONArray("visaCheckoutCards").getJSONObject(0).remove("details");
+
+        try {
+            VisaCheckoutLazyNonce.fromJson(response.toString());
+            fail("Expected JSONException");
+        } catch (JSONException ignored) {}
+    }
+
+    @Test
+    public void fromJson_withoutUserData_throwsJSONException() throws JSONException {
+        JSONObject response = new JSONObject(stringFromFixture("payment_methods/visa_checkout_response.json"));
+        response.getJSONArray("visaCheckoutCards").getJSONObject(0).remove("userData");
+
+        try {
+            VisaCheckoutLazyNonce.fromJson(response.toString());
+            fail("Expected JSONException");
+        } catch (JSONException ignored) {}
+    }
+
+    @Test
+    public void fromJson_withoutBinData_readsNullBinData() throws JSONException {
+        JSONObject response = new JSONObject(stringFromFixture("payment_methods/visa_checkout_response.json"));
+        response.getJSONArray("visaCheckoutCards").getJSONObject(0).remove("binData");
+        VisaCheckoutNonce expected = VisaCheckoutNonce.fromJson(response.toString());
+
+        VisaCheckoutNonce visaCheckoutNonce = VisaCheckoutLazyNonce.fromJson(response.toString());
+
+        assertEquals(expected.getBinData().getProductId(), visaCheckoutNonce.getBinData().getProductId());
+    }
+
+    @Test
+    public void fromJson_withInvalidJson_throwsJSONException() {
+        try {
+            VisaCheckoutLazyNonce.fromJson("{\"visaCheckoutCards\": [");
+            fail("Expected JSONException");
+        } catch (JSONException ignored) {}
+    }
+
+    @Test
+    public void writeToParcel_includesLazilyDecodedFields() throws JSONException {
+        VisaCheckoutNonce visaCheckoutNonce = VisaCheckoutLazyNonce.fromJson(
+                stringFromFixture("payment_methods/visa_checkout_response.json"));
+
+        Parcel parcel = Parcel.obtain();
+        visaCheckoutNonce.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        VisaCheckoutNonce restored = VisaCheckoutNonce.CREATOR.createFromParcel(parcel);
+
+        assertEquals("123456-12345-12345-a-adfa", restored.getNonce());
+        assertEquals("11", restored.getLastTwo());
+        assertEquals("billingFirstName", restored.getBillingAddress().getFirstName());
+        assertEquals("userEmail", restored.getUserData().getUserEmail());
+        assertFalse(restored instanceof VisaCheckoutLazyNonce);
+    }
+}
@@ -0,0 +1,46 @@
+package com.braintreepayments.api.models;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisaCheckoutRetryPolicyUnitTest {
+
+    @Test
+    public void getBackoffMillis_withoutJitter_growsExponentiallyUpToMax() {
+        VisaCheckoutRetryPolicy retryPolicy = new VisaCheckoutRetryPolicy()
+                .initialBackoffMillis(100)
+                .backoffMultiplier(2)
+                .maxBackoffMillis(300)
+                .jitter(0);
+        Random random = new Random(0);
+
+        assertEquals(100, retryPolicy.getBackoffMillis(1, random));
+        assertEquals(200, retryPolicy.getBackoffMillis(2, random));
+        assertEquals(300, retryPolicy.getBackoffMillis(3, random));
+    }
+
+    @Test
+    public void getBackoffMillis_withJitter_staysWithinJitterRange() {
+        VisaCheckoutRetryPolicy retryPolicy = new VisaCheckoutRetryPolicy()
+                .initialBackoffMillis(100)
+                .jitter(0.5);
+        Random random = new Random(0);
+
+        for (int i = 0; i < 100; i++) {
+            long backoff = retryPolicy.getBackoffMillis(1, random);
+            assertTrue(backoff >= 50 && backoff <= 100);
+        }
+    }
+
+    @Test
+    public void maxAttempts_isAtLeastOne() {
+        assertEquals(1, new VisaCheckoutRetryPolicy().maxAttempts(0).getMaxAttempts());
+    }
+}
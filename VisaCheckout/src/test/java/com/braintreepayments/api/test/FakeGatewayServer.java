@@ -0,0 +1,157 @@
+package com.braintreepayments.api.test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.braintreepayments.api.test.FixturesHelper.stringFromFixture;
+
+/**
+ * In-process stand-in for the gateway's {@code visa_checkout_cards} endpoint, for load tests. Unlike
+ * {@link StubHttpServer}, which replays queued responses, every request is answered from a profile: a random latency
+ * between a minimum and a maximum, an optional share of slow responses and an optional share of error responses.
+ * Successful responses carry a unique nonce. Randomness is seeded, so a profile produces the same sequence of delays
+ * and errors on every run.
+ */
+public class FakeGatewayServer {
+
+    private static final String ENDPOINT = "visa_checkout_cards";
+    private static final String FIXTURE_NONCE = "123456-12345-12345-a-adfa";
+    private static final String ERROR_RESPONSE = "{\"error\":{\"message\":\"Fake gateway error\"}}";
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final String mSuccessResponse;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    private Random mRandom = new Random(0);
+    private volatile long mMinLatencyMillis;
+    private volatile long mMaxLatencyMillis;
+    private volatile double mSlowResponseRate;
+    private volatile long mSlowResponseMillis;
+    private volatile double mErrorRate;
+    private volatile int mErrorStatusCode = 500;
+
+    public FakeGatewayServer() throws IOException {
+        mSuccessResponse = stringFromFixture("payment_methods/visa_checkout_response.json");
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                FakeGatewayServer.this.handle(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    /**
+     * Delays every response by a uniformly distributed duration between {@code minMillis} and {@code maxMillis}.
+     */
+    public FakeGatewayServer latency(long minMillis, long maxMillis) {
+        mMinLatencyMillis = minMillis;
+        mMaxLatencyMillis = Math.max(minMillis, maxMillis);
+        return this;
+    }
+
+    /**
+     * Delays a share of the responses by {@code millis} in addition to the regular latency, to model a slow tail.
+     */
+    public FakeGatewayServer slowResponses(double rate, long millis) {
+        mSlowResponseRate = rate;
+        mSlowResponseMillis = millis;
+        return this;
+    }
+
+    /**
+     * Answers a share of the requests with {@code statusCode} and an error body instead of a nonce.
+     */
+    public FakeGatewayServer errors(double rate, int statusCode) {
+        mErrorRate = rate;
+        mErrorStatusCode = statusCode;
+        return this;
+    }
+
+    public synchronized FakeGatewayServer seed(long seed) {
+        mRandom = new Random(seed);
+        return this;
+    }
+
+    /**
+     * @return the number of tokenization requests received.
+     */
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public void shutdown() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        drain(exchange.getRequestBody());
+        if (!"POST".equals(exchange.getRequestMethod()) || !exchange.getRequestURI().getPath().endsWith(ENDPOINT)) {
+            respond(exchange, 404, ERROR_RESPONSE);
+            return;
+        }
+
+        int requestNumber = mRequestCount.incrementAndGet();
+
+        long delayMillis;
+        boolean error;
+        synchronized (this) {
+            delayMillis = mMinLatencyMillis
+                    + (long) (mRandom.nextDouble() * (mMaxLatencyMillis - mMinLatencyMillis));
+            if (mRandom.nextDouble() < mSlowResponseRate) {
+                delayMillis += mSlowResponseMillis;
+            }
+            error = mRandom.nextDouble() < mErrorRate;
+        }
+
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (error) {
+            respond(exchange, mErrorStatusCode, ERROR_RESPONSE);
+        } else {
+            respond(exchange, 201, mSuccessResponse.replace(FIXTURE_NONCE, "fake-nonce-" + requestNumber));
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) != -1) {
+            // discard the request body
+        }
+        in.close();
+    }
+}
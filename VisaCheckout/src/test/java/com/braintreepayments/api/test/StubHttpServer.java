@@ -0,0 +1,185 @@
+package com.braintreepayments.api.test;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local HTTP server that replies with queued responses and records the requests it receives. Once the queue is
+ * empty the last response is repeated. Response bodies are gzip encoded for requests that accept gzip, and gzip
+ * encoded request bodies can be refused with {@link #refuseCompressedRequests()}.
+ */
+public class StubHttpServer {
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final Queue<Response> mResponses = new ConcurrentLinkedQueue<>();
+    private final List<RecordedRequest> mRequests = new CopyOnWriteArrayList<>();
+    private volatile Response mLastResponse = new Response(404, "", 0);
+    private volatile boolean mRefuseCompressedRequests;
+
+    public StubHttpServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StubHttpServer.this.handle(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    public StubHttpServer enqueue(int statusCode, String body) {
+        return enqueue(statusCode, body, 0);
+    }
+
+    public StubHttpServer enqueue(int statusCode, String body, long delayMillis) {
+        mResponses.add(new Response(statusCode, body, delayMillis));
+        return this;
+    }
+
+    /**
+     * Replies {@code 415 Unsupported Media Type} to requests with a gzip encoded body.
+     */
+    public StubHttpServer refuseCompressedRequests() {
+        mRefuseCompressedRequests = true;
+        return this;
+    }
+
+    public List<RecordedRequest> getRequests() {
+        return mRequests;
+    }
+
+    public void shutdown() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        mRequests.add(new RecordedRequest(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                exchange.getRequestHeaders(), readFully(exchange.getRequestBody())));
+
+        if (mRefuseCompressedRequests && "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            exchange.sendResponseHeaders(415, -1);
+            exchange.close();
+            return;
+        }
+
+        Response response = mResponses.poll();
+        if (response == null) {
+            response = mLastResponse;
+        } else {
+            mLastResponse = response;
+        }
+
+        if (response.mDelayMillis > 0) {
+            try {
+                Thread.sleep(response.mDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        byte[] body = response.mBody.getBytes("UTF-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (body.length > 0 && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(body);
+            gzip.close();
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.sendResponseHeaders(response.mStatusCode, body.length == 0 ? -1 : body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static class Response {
+        private final int mStatusCode;
+        private final String mBody;
+        private final long mDelayMillis;
+
+        Response(int statusCode, String body, long delayMillis) {
+            mStatusCode = statusCode;
+            mBody = body;
+            mDelayMillis = delayMillis;
+        }
+    }
+
+    public static class RecordedRequest {
+        private final String mMethod;
+        private final String mPath;
+        private final Headers mHeaders;
+        private final byte[] mBody;
+
+        RecordedRequest(String method, String path, Headers headers, byte[] body) {
+            mMethod = method;
+            mPath = path;
+            mHeaders = headers;
+            mBody = body;
+        }
+
+        public String getMethod() {
+            return mMethod;
+        }
+
+        public String getPath() {
+            return mPath;
+        }
+
+        public String getHeader(String name) {
+            return mHeaders.getFirst(name);
+        }
+
+        public byte[] getBody() {
+            return mBody;
+        }
+
+        /**
+         * @return the body as a string, decompressed if it was sent gzip encoded.
+         */
+        public String getDecodedBody() throws IOException {
+            InputStream in = new ByteArrayInputStream(mBody);
+            if ("gzip".equals(getHeader("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+
+            return new String(readFully(in), "UTF-8");
+        }
+    }
+}
@@ -43,6 +43,13 @@ public class TestConfigurationBuilder extends JSONBuilder {
         return this;
     }
 
+    public TestConfigurationBuilder graphQL(TestGraphQLConfigurationBuilder graphQLConfigurationBuilder) {
+        try {
+            put(new JSONObject(graphQLConfigurationBuilder.build()));
+        } catch (JSONException ignored) {}
+        return this;
+    }
+
     @SuppressWarnings("unchecked")
     public <T> T buildConfiguration() {
         try {
@@ -82,4 +89,25 @@ public class TestConfigurationBuilder extends JSONBuilder {
             return this;
         }
     }
+
+    public static class TestGraphQLConfigurationBuilder extends JSONBuilder {
+
+        public TestGraphQLConfigurationBuilder() {
+            super();
+        }
+
+        protected TestGraphQLConfigurationBuilder(JSONObject json) {
+            super(json);
+        }
+
+        public TestGraphQLConfigurationBuilder url(String url) {
+            put(url);
+            return this;
+        }
+
+        public TestGraphQLConfigurationBuilder features(String... features) {
+            put(new JSONArray(Arrays.asList(features)));
+            return this;
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package com.braintreepayments.api.test;
+
+import com.braintreepayments.api.interfaces.PaymentMethodNonceCallback;
+import com.braintreepayments.api.models.PaymentMethodNonce;
+
+import org.robolectric.shadows.ShadowLooper;
+
+/**
+ * {@link PaymentMethodNonceCallback} that records its result and can wait for callbacks posted to the main thread.
+ */
+public class TestPaymentMethodNonceCallback implements PaymentMethodNonceCallback {
+
+    private volatile PaymentMethodNonce mPaymentMethodNonce;
+    private volatile Exception mException;
+    private volatile int mCallCount;
+
+    @Override
+    public void success(PaymentMethodNonce paymentMethodNonce) {
+        mPaymentMethodNonce = paymentMethodNonce;
+        mCallCount++;
+    }
+
+    @Override
+    public void failure(Exception exception) {
+        mException = exception;
+        mCallCount++;
+    }
+
+    public TestPaymentMethodNonceCallback await() throws InterruptedException {
+        return await(5000);
+    }
+
+    public TestPaymentMethodNonceCallback await(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (mCallCount == 0 && System.currentTimeMillis() < deadline) {
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            Thread.sleep(5);
+        }
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        return this;
+    }
+
+    public PaymentMethodNonce getPaymentMethodNonce() {
+        return mPaymentMethodNonce;
+    }
+
+    public Exception getException() {
+        return mException;
+    }
+
+    public int getCallCount() {
+        return mCallCount;
+    }
+}
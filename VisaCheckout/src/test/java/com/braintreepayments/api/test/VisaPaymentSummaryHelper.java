@@ -0,0 +1,48 @@
+package com.braintreepayments.api.test;
+
+import android.os.Parcel;
+
+import com.visa.checkout.VisaPaymentSummary;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Creates {@link VisaPaymentSummary}s the way the Visa Checkout SDK returns them, by reading them from a
+ * {@link Parcel}.
+ */
+public class VisaPaymentSummaryHelper {
+
+    public static VisaPaymentSummary sampleVisaPaymentSummary() throws JSONException {
+        return sampleVisaPaymentSummary("stubbedCallId");
+    }
+
+    public static VisaPaymentSummary sampleVisaPaymentSummary(String callId) throws JSONException {
+        return sampleVisaPaymentSummary(callId, null);
+    }
+
+    public static VisaPaymentSummary sampleVisaPaymentSummary(String callId, String cardBrand) throws JSONException {
+        return visaPaymentSummary(new JSONObject()
+                .put("encPaymentData", "stubbedEncPaymentData")
+                .put("encKey", "stubbedEncKey")
+                .put("callid", callId)
+                .putOpt("cardBrand", cardBrand));
+    }
+
+    public static VisaPaymentSummary visaPaymentSummary(String callId, String encKey, String encPaymentData)
+            throws JSONException {
+        return visaPaymentSummary(new JSONObject()
+                .put("encPaymentData", encPaymentData)
+                .put("encKey", encKey)
+                .put("callid", callId));
+    }
+
+    private static VisaPaymentSummary visaPaymentSummary(JSONObject summaryJson) {
+        Parcel in = Parcel.obtain();
+        in.writeString("SUCCESS");
+        in.writeString(summaryJson.toString());
+        in.setDataPosition(0);
+
+        return VisaPaymentSummary.CREATOR.createFromParcel(in);
+    }
+}